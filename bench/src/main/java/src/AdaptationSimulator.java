@@ -0,0 +1,504 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Runs ExpertSystem against thousands of synthetic clients on simulated
+ * time: no VLC, no FFmpeg, no sleeping. Each client follows a bandwidth
+ * trace, plays from a small buffer that drains when the stream is faster
+ * than its link, and reports telemetry through the same Client setters the
+ * RC parser uses. Hours of viewing take seconds, and the same seed always
+ * gives the same decisions.
+ *
+ * For every scenario it reports how long the controller took to settle after
+ * each change in conditions, how often it reversed direction (per hour of
+ * the shared stream in global mode, per client-hour in perClient mode), and
+ * how many seconds viewers spent buffering per client-hour. Runs over their
+ * scenario's budget fail, so the default run guards the adaptation logic
+ * against regressions. Budgets are set with some margin over the current
+ * rules at the default size and length only: global oscillations count a
+ * fixed number of condition changes per run, and a smaller audience has a
+ * different spread of links, so other sizes just report.
+ *
+ *   java -cp target/benchmarks.jar src.AdaptationSimulator
+ *   java -cp target/benchmarks.jar src.AdaptationSimulator clients=5000 hours=6 scenario=stepDown
+ *   java -cp target/benchmarks.jar src.AdaptationSimulator scenario=trace trace=bw.txt
+ *
+ * Options (key=value): clients, hours, seed, scenario (steady, stepDown,
+ * randomWalk, dips, trace, all), mode (global, perClient, all), trigger
+ * (periodic, events, all), trace (file of "seconds kbps" lines).
+ */
+public class AdaptationSimulator {
+
+    // Same controller settings as Main
+    private static final int MIN_KBPS = 500;
+    private static final int MAX_KBPS = 2000;
+    private static final int INCREMENT_KBPS = 500;
+    private static final int ITERATION_MS = 5000;
+    private static final long DEBOUNCE_MS = 250;
+
+    // Simulation step; clients reply to "stats" every STATS_INTERVAL_MS
+    private static final long STEP_MS = 250;
+    private static final long STATS_INTERVAL_MS = 5000;
+
+    // Client player model: seconds of media buffered ahead of playback
+    private static final double BUFFER_S = 3.0;
+    private static final double RESUME_S = 1.0;
+    // Live playback can only get back ahead by playing slightly slow
+    private static final double CATCH_UP_PER_S = 0.05;
+    // Joining another group costs this much buffer (IGMP join, wait for a keyframe)
+    private static final double SWITCH_GAP_S = 0.5;
+    private static final double FPS = 25;
+    private static final int PACKET_BITS = 1316 * 8;
+
+    // A decision followed by this long without another counts as settled
+    private static final long SETTLE_MS = 120_000;
+
+    // The run the budgets are calibrated for
+    private static final int BUDGET_CLIENTS = 2000;
+    private static final double BUDGET_HOURS = 3;
+
+    // ----------------------------------------------------------------------
+    // Entry point
+    // ----------------------------------------------------------------------
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int clients = Integer.parseInt(opts.getOrDefault("clients", Integer.toString(BUDGET_CLIENTS)));
+        double hours = Double.parseDouble(opts.getOrDefault("hours", Double.toString(BUDGET_HOURS)));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "4930"));
+        Path trace = opts.containsKey("trace") ? Path.of(opts.get("trace")) : null;
+
+        List<String> scenarios = pick(opts.getOrDefault("scenario", "all"),
+                trace != null ? List.of("steady", "stepDown", "randomWalk", "dips", "trace")
+                              : List.of("steady", "stepDown", "randomWalk", "dips"));
+        List<String> modes = pick(opts.getOrDefault("mode", "all"), List.of("global", "perClient"));
+        List<String> triggers = pick(opts.getOrDefault("trigger", "all"), List.of("periodic", "events"));
+
+        long durationMs = (long) (hours * 3_600_000);
+        boolean budgeted = clients == BUDGET_CLIENTS && hours == BUDGET_HOURS;
+        System.out.printf("%d clients, %.1f h simulated, seed %d%n", clients, hours, seed);
+        if (!budgeted) {
+            System.out.printf("Budgets are only checked at %d clients and %.1f h%n", BUDGET_CLIENTS, BUDGET_HOURS);
+        }
+        System.out.println();
+        System.out.printf("%-11s %-9s %-8s %9s %9s %6s %7s %8s %10s %8s %8s  %s%n",
+                "scenario", "mode", "trigger", "conv avg", "conv max", "never", "osc/h",
+                "changes", "buf s/c-h", "avg kbps", "wall ms", "");
+
+        boolean failed = false;
+        for (String scenario : scenarios) {
+            for (String mode : modes) {
+                for (String trigger : triggers) {
+                    Scenario s = Scenario.build(scenario, clients, durationMs, seed, trace);
+                    boolean perClient = mode.equals("perClient");
+                    Result r = run(s, perClient, trigger.equals("events"));
+                    String verdict = budgeted ? r.verdict(s, perClient) : "";
+                    failed |= !verdict.isEmpty();
+                    System.out.printf("%-11s %-9s %-8s %8.1fs %8.1fs %6d %7.1f %8d %10.1f %8.0f %8d  %s%n",
+                            scenario, mode, trigger,
+                            r.convergeAvgMs / 1000.0, r.convergeMaxMs / 1000.0, r.neverSettled,
+                            r.oscillationsPerHour, r.changes, r.bufferingPerClientHour, r.avgKbps,
+                            r.wallMs, verdict);
+                }
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static List<String> pick(String choice, List<String> all) {
+        if (choice.equals("all")) return all;
+        if (!all.contains(choice)) {
+            System.err.println("Unknown choice " + choice + ", expected one of " + all + " or all");
+            System.exit(2);
+        }
+        return List.of(choice);
+    }
+
+    // ----------------------------------------------------------------------
+    // One run
+    // ----------------------------------------------------------------------
+    static Result run(Scenario s, boolean perClient, boolean events) {
+        long wallStart = System.nanoTime();
+        SimClock clock = new SimClock();
+
+        int[] ladder = new int[(MAX_KBPS - MIN_KBPS) / INCREMENT_KBPS + 1];
+        for (int i = 0; i < ladder.length; i++) ladder[i] = MIN_KBPS + i * INCREMENT_KBPS;
+
+        RecordingVideoStreamer streamer = perClient
+                ? new RecordingVideoStreamer(clock, Rendition.ladder("230.0.0.0", 4446, ladder))
+                : new RecordingVideoStreamer(clock, MIN_KBPS);
+
+        SimClient[] clients = new SimClient[s.traces.length];
+        Map<Client, SimClient> byClient = new HashMap<>();
+        for (int i = 0; i < clients.length; i++) {
+            Client c = new Client("10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255), clock);
+            // Stagger stats replies across the interval like the batched poller
+            clients[i] = new SimClient(c, s.traces[i], (i * STATS_INTERVAL_MS) / clients.length);
+            byClient.put(c, clients[i]);
+            streamer.addClient(c);
+        }
+
+        ExpertSystem expert = new ExpertSystem(streamer, MIN_KBPS, MIN_KBPS, MAX_KBPS,
+                INCREMENT_KBPS, ITERATION_MS);
+        expert.setClock(clock);
+        if (perClient) {
+            expert.setTuner((c, r) -> byClient.get(c).tuned(clock.millis(), r.getBitrateKbps()));
+        }
+
+        // The same wakeup EVENTS mode installs, driven on simulated time
+        long[] wokenAt = {-1};
+        if (events) {
+            streamer.getTelemetry().setWakeup(() -> {
+                if (wokenAt[0] < 0) wokenAt[0] = clock.millis();
+            });
+        }
+
+        AsyncLog.Level level = AsyncLog.global().getLevel();
+        AsyncLog.global().setLevel(AsyncLog.Level.OFF);
+        try {
+            long nextTick = 0;
+            for (long t = 0; t < s.durationMs; t += STEP_MS) {
+                clock.now = t;
+                int globalKbps = streamer.getBitrate();
+                for (SimClient sc : clients) {
+                    int kbps = perClient ? ladder[sc.client.getRendition()] : globalKbps;
+                    sc.step(t, kbps);
+                }
+
+                if (t >= nextTick) {
+                    wokenAt[0] = -1;
+                    expert.runOnce(true);
+                    nextTick += ITERATION_MS;
+                } else if (wokenAt[0] >= 0 && t - wokenAt[0] >= DEBOUNCE_MS) {
+                    wokenAt[0] = -1;
+                    expert.runOnce(false);
+                }
+            }
+        } finally {
+            AsyncLog.global().setLevel(level);
+        }
+
+        Result r = new Result();
+        r.wallMs = (System.nanoTime() - wallStart) / 1_000_000;
+
+        double stalled = 0, deliveredKbSeconds = 0;
+        for (SimClient sc : clients) {
+            stalled += sc.stalledS;
+            deliveredKbSeconds += sc.playedKb;
+        }
+        double hours = s.durationMs / 3_600_000.0;
+        double clientHours = clients.length * hours;
+        r.bufferingPerClientHour = stalled / clientHours;
+        r.avgKbps = deliveredKbSeconds / (clients.length * (s.durationMs / 1000.0));
+
+        List<Long> settle = new ArrayList<>();
+        if (perClient) {
+            for (SimClient sc : clients) {
+                r.changes += sc.changes;
+                r.oscillations += sc.reversals;
+                convergence(sc.changeTimesMs, sc.changes, s.eventsMs, s.durationMs, settle);
+            }
+        } else {
+            long[] times = new long[streamer.decisions()];
+            int lastDirection = 0;
+            int previous = MIN_KBPS;
+            for (int i = 0; i < times.length; i++) {
+                times[i] = streamer.decisionTimeMs(i);
+                int direction = Integer.signum(streamer.decisionKbps(i) - previous);
+                if (direction != 0 && lastDirection != 0 && direction != lastDirection) r.oscillations++;
+                if (direction != 0) lastDirection = direction;
+                previous = streamer.decisionKbps(i);
+            }
+            r.changes = times.length;
+            convergence(times, times.length, s.eventsMs, s.durationMs, settle);
+        }
+
+        r.oscillationsPerHour = r.oscillations / (perClient ? clientHours : hours);
+
+        long sum = 0;
+        int settled = 0;
+        for (long ms : settle) {
+            if (ms < 0) {
+                r.neverSettled++;
+            } else {
+                sum += ms;
+                settled++;
+                r.convergeMaxMs = Math.max(r.convergeMaxMs, ms);
+            }
+        }
+        r.convergeAvgMs = settled == 0 ? 0 : sum / settled;
+        return r;
+    }
+
+    /**
+     * For each change in conditions, the time from it until the last
+     * decision before a quiet spell of SETTLE_MS; 0 if nothing changed
+     * before the next event, -1 if decisions never quietened down.
+     */
+    static void convergence(long[] times, int n, long[] eventsMs, long endMs, List<Long> out) {
+        int i = 0;
+        for (int e = 0; e < eventsMs.length; e++) {
+            long from = eventsMs[e];
+            long until = e + 1 < eventsMs.length ? eventsMs[e + 1] : endMs;
+            while (i < n && times[i] < from) i++;
+
+            long result = 0;
+            if (i < n && times[i] < until) {
+                result = -1;
+                for (int j = i; j < n && times[j] < until; j++) {
+                    long next = j + 1 < n ? times[j + 1] : Long.MAX_VALUE;
+                    long quietUntil = Math.min(next, until);
+                    if (quietUntil - times[j] >= SETTLE_MS) {
+                        result = times[j] - from;
+                        break;
+                    }
+                }
+            }
+            out.add(result);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Simulated time
+    // ----------------------------------------------------------------------
+    static final class SimClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long millis() {
+            return now;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // One viewer
+    // ----------------------------------------------------------------------
+    static final class SimClient {
+        final Client client;
+        final BandwidthTrace trace;
+        private long nextReport;
+
+        private double bufferS = BUFFER_S;
+        private boolean stalled = false;
+        private double lostPackets = 0;
+        private double droppedFrames = 0;
+        private int deliveredKbps = 0;
+
+        double stalledS = 0;
+        double playedKb = 0;
+
+        // Rendition switches, for per-client convergence and oscillation
+        long[] changeTimesMs = new long[8];
+        int changes = 0;
+        int reversals = 0;
+        private int lastKbps = MIN_KBPS;
+        private int lastDirection = 0;
+
+        SimClient(Client client, BandwidthTrace trace, long reportPhaseMs) {
+            this.client = client;
+            this.trace = trace;
+            this.nextReport = reportPhaseMs;
+        }
+
+        void step(long nowMs, int streamKbps) {
+            double dt = STEP_MS / 1000.0;
+            int available = trace.kbpsAt(nowMs);
+            deliveredKbps = Math.min(streamKbps, available);
+            double ratio = (double) deliveredKbps / streamKbps;
+
+            if (ratio < 1) {
+                lostPackets += (streamKbps - available) * 1000.0 * dt / PACKET_BITS;
+                droppedFrames += (1 - ratio) * FPS * dt;
+            }
+
+            if (stalled) {
+                stalledS += dt;
+                bufferS += ratio * dt;
+                if (bufferS >= RESUME_S) {
+                    stalled = false;
+                    // VLC prints state changes as they happen, not only in stats
+                    client.markUpdated();
+                    client.setIsBuffering(false);
+                }
+            } else {
+                playedKb += streamKbps * dt;
+                bufferS += ratio < 1 ? (ratio - 1) * dt : CATCH_UP_PER_S * dt;
+                bufferS = Math.min(BUFFER_S, bufferS);
+                if (bufferS <= 0) {
+                    bufferS = 0;
+                    stalled = true;
+                    client.markUpdated();
+                    client.setIsBuffering(true);
+                }
+            }
+
+            if (nowMs >= nextReport) {
+                nextReport += STATS_INTERVAL_MS;
+                report();
+            }
+        }
+
+        // One "stats" reply, in the order the parser applies it
+        private void report() {
+            client.markUpdated();
+            client.setIsBuffering(stalled);
+            client.setCachePercent((int) Math.round(bufferS / BUFFER_S * 100));
+            client.setInputBitrateKbps(deliveredKbps);
+            client.setDroppedFrames((int) droppedFrames);
+            client.setLostPackets((int) lostPackets);
+            client.recordSample();
+        }
+
+        void tuned(long nowMs, int kbps) {
+            bufferS -= SWITCH_GAP_S;
+
+            if (changes == changeTimesMs.length) {
+                changeTimesMs = Arrays.copyOf(changeTimesMs, changes * 2);
+            }
+            changeTimesMs[changes++] = nowMs;
+
+            int direction = Integer.signum(kbps - lastKbps);
+            if (direction != 0 && lastDirection != 0 && direction != lastDirection) reversals++;
+            if (direction != 0) lastDirection = direction;
+            lastKbps = kbps;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Conditions to simulate
+    // ----------------------------------------------------------------------
+    static final class Scenario {
+        final String name;
+        final long durationMs;
+        // Times at which conditions change, starting at 0
+        final long[] eventsMs;
+        final BandwidthTrace[] traces;
+
+        // Budgets per mode; buffering in s/client-hour, oscillations as in Result
+        final double maxBufferingGlobal, maxOscillationsGlobal;
+        final double maxBufferingPerClient, maxOscillationsPerClient;
+
+        private Scenario(String name, long durationMs, long[] eventsMs, BandwidthTrace[] traces,
+                         double maxBufferingGlobal, double maxOscillationsGlobal,
+                         double maxBufferingPerClient, double maxOscillationsPerClient) {
+            this.name = name;
+            this.durationMs = durationMs;
+            this.eventsMs = eventsMs;
+            this.traces = traces;
+            this.maxBufferingGlobal = maxBufferingGlobal;
+            this.maxOscillationsGlobal = maxOscillationsGlobal;
+            this.maxBufferingPerClient = maxBufferingPerClient;
+            this.maxOscillationsPerClient = maxOscillationsPerClient;
+        }
+
+        static Scenario build(String name, int clients, long durationMs, long seed, Path traceFile)
+                throws IOException {
+            SplittableRandom random = new SplittableRandom(seed);
+            BandwidthTrace[] traces = new BandwidthTrace[clients];
+
+            switch (name) {
+                case "steady": {
+                    // Fixed links spread from below the lowest rung to above the top
+                    for (int i = 0; i < clients; i++) {
+                        traces[i] = BandwidthTrace.constant(800 + random.nextInt(3200));
+                    }
+                    // Global mode settles where most viewers are fine; the slowest
+                    // fifth of links keeps stalling, which the global rules accept
+                    return new Scenario(name, durationMs, new long[] {0}, traces, 250, 2, 5, 20);
+                }
+                case "stepDown": {
+                    // 40% of links collapse a third of the way in and recover at two thirds
+                    long down = durationMs / 3, up = 2 * durationMs / 3;
+                    for (int i = 0; i < clients; i++) {
+                        int kbps = 2500 + random.nextInt(1500);
+                        traces[i] = random.nextInt(100) < 40
+                                ? BandwidthTrace.steps(new long[] {0, down, up}, new int[] {kbps, 700, kbps})
+                                : BandwidthTrace.constant(kbps);
+                    }
+                    return new Scenario(name, durationMs, new long[] {0, down, up}, traces, 200, 6, 5, 5);
+                }
+                case "randomWalk": {
+                    // Every link wanders by up to 10% every 10 s
+                    for (int i = 0; i < clients; i++) {
+                        traces[i] = BandwidthTrace.randomWalk(random.nextLong(),
+                                1000 + random.nextInt(2500), 400, 4000, 0.10, 10_000);
+                    }
+                    return new Scenario(name, durationMs, new long[] {0}, traces, 600, 2, 90, 30);
+                }
+                case "dips": {
+                    // A fifth of the links lose most of their bandwidth for 30 s every 10 min
+                    int n = (int) (durationMs / 600_000);
+                    long[] events = new long[1 + 2 * n];
+                    for (int k = 0; k < n; k++) {
+                        events[1 + 2 * k] = (k + 1) * 600_000L - 30_000;
+                        events[2 + 2 * k] = (k + 1) * 600_000L;
+                    }
+                    for (int i = 0; i < clients; i++) {
+                        int kbps = 2500 + random.nextInt(1500);
+                        if (random.nextInt(100) < 20) {
+                            // Odd steps are the dips
+                            int[] kbpsAt = new int[events.length];
+                            for (int k = 0; k < kbpsAt.length; k++) kbpsAt[k] = k % 2 == 1 ? 600 : kbps;
+                            traces[i] = BandwidthTrace.steps(events, kbpsAt);
+                        } else {
+                            traces[i] = BandwidthTrace.constant(kbps);
+                        }
+                    }
+                    return new Scenario(name, durationMs, events, traces, 40, 2, 10, 5);
+                }
+                case "trace": {
+                    // Every client replays the file from its own random offset
+                    for (int i = 0; i < clients; i++) {
+                        traces[i] = BandwidthTrace.fromFile(traceFile, random.nextLong(0, 3_600_000));
+                    }
+                    // No budget: it depends entirely on the file
+                    return new Scenario(name, durationMs, new long[] {0}, traces,
+                            Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown scenario: " + name);
+            }
+        }
+    }
+
+    static final class Result {
+        long convergeAvgMs;
+        long convergeMaxMs;
+        int neverSettled;
+        int oscillations;
+        double oscillationsPerHour;
+        int changes;
+        double bufferingPerClientHour;
+        double avgKbps;
+        long wallMs;
+
+        // Empty if within budget
+        String verdict(Scenario s, boolean perClient) {
+            double maxBuffering = perClient ? s.maxBufferingPerClient : s.maxBufferingGlobal;
+            double maxOscillations = perClient ? s.maxOscillationsPerClient : s.maxOscillationsGlobal;
+            if (bufferingPerClientHour > maxBuffering) {
+                return "FAIL buffering > " + maxBuffering + " s/client-hour";
+            }
+            if (oscillationsPerHour > maxOscillations) {
+                return "FAIL oscillations > " + maxOscillations + "/h";
+            }
+            return "";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Available bandwidth of one simulated client over simulated time. Traces
+ * are queried with non-decreasing times, so stateful ones (the random walk)
+ * can generate as they go and stay deterministic for a given seed.
+ */
+interface BandwidthTrace {
+
+    int kbpsAt(long ms);
+
+    static BandwidthTrace constant(int kbps) {
+        return ms -> kbps;
+    }
+
+    // kbps[i] from atMs[i] on; kbps[0] before the first step
+    static BandwidthTrace steps(long[] atMs, int[] kbps) {
+        return ms -> {
+            int v = kbps[0];
+            for (int i = 0; i < atMs.length && ms >= atMs[i]; i++) v = kbps[i];
+            return v;
+        };
+    }
+
+    // Multiplies by a random factor in [1 - jitter, 1 + jitter] every stepMs
+    static BandwidthTrace randomWalk(long seed, int start, int min, int max, double jitter, long stepMs) {
+        SplittableRandom random = new SplittableRandom(seed);
+        return new BandwidthTrace() {
+            private double kbps = start;
+            private long nextStep = stepMs;
+
+            @Override
+            public int kbpsAt(long ms) {
+                while (ms >= nextStep) {
+                    kbps *= 1 + jitter * (2 * random.nextDouble() - 1);
+                    kbps = Math.max(min, Math.min(max, kbps));
+                    nextStep += stepMs;
+                }
+                return (int) kbps;
+            }
+        };
+    }
+
+    /**
+     * Loads "seconds kbps" pairs, one per line (whitespace or comma separated,
+     * '#' comments allowed). The trace loops, starting offsetMs into it, so
+     * clients sharing a file don't all see the same dip at once.
+     */
+    static BandwidthTrace fromFile(Path file, long offsetMs) throws IOException {
+        List<long[]> points = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            String s = line.strip();
+            if (s.isEmpty() || s.startsWith("#")) continue;
+            String[] parts = s.split("[\\s,]+");
+            if (parts.length < 2) throw new IOException("Bad trace line: " + line);
+            try {
+                points.add(new long[] {
+                        (long) (Double.parseDouble(parts[0]) * 1000), Long.parseLong(parts[1])});
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad trace line: " + line);
+            }
+        }
+        if (points.isEmpty()) throw new IOException("Empty trace: " + file);
+
+        long[] atMs = new long[points.size()];
+        int[] kbps = new int[points.size()];
+        for (int i = 0; i < atMs.length; i++) {
+            atMs[i] = points.get(i)[0] - points.get(0)[0];
+            kbps[i] = (int) points.get(i)[1];
+        }
+        // One sample's worth past the last point before looping
+        long period = atMs.length > 1 ? atMs[atMs.length - 1] + (atMs[1] - atMs[0]) : 1000;
+
+        return new BandwidthTrace() {
+            private int i = 0;
+            private long lapStart = -1;
+
+            @Override
+            public int kbpsAt(long ms) {
+                long t = (ms + offsetMs) % period;
+                long lap = (ms + offsetMs) / period;
+                if (lap != lapStart) {
+                    lapStart = lap;
+                    i = 0;
+                }
+                while (i + 1 < atMs.length && atMs[i + 1] <= t) i++;
+                return kbps[i];
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package src;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Client telemetry updates as VlcMonitor makes them (one stats reply's worth
+ * of setters), alone and while other threads update and read the same
+ * Client the way the expert loop and a second RC reader would.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientTelemetryBenchmark {
+
+    private Client client;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        client = new Client("10.0.30.1");
+    }
+
+    private void applyStatsReply() {
+        int t = tick++;
+        client.markUpdated();
+        client.setIsBuffering((t & 15) == 0);
+        client.setCachePercent(t % 101);
+        client.setDroppedFrames(t >> 4);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    public void updateAlone() {
+        applyStatsReply();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void update(Blackhole bh) {
+        applyStatsReply();
+        bh.consume(tick);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void read(Blackhole bh) {
+        bh.consume(client.isHealthy());
+        bh.consume(client.isStruggling());
+        bh.consume(client.getLastUpdateMs());
+    }
+}
@@ -0,0 +1,67 @@
+package src;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One ExpertSystem inference step over a stubbed streamer, with the global
+ * rules (restart/seamless) and with per-client ladder assignment
+ * (multigroup). Console output is discarded but still formatted, since
+ * printing the client table is part of every step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpertSystemBenchmark {
+
+    @Param({"10", "100", "10000"})
+    public int clients;
+
+    @Param({"global", "perClient"})
+    public String mode;
+
+    private ExpertSystem expert;
+    private AsyncLog.Level level;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        level = AsyncLog.global().getLevel();
+        AsyncLog.global().setLevel(AsyncLog.Level.OFF);
+
+        boolean perClient = mode.equals("perClient");
+        VideoStreamer streamer = perClient
+                ? new StubVideoStreamer(Rendition.ladder("230.0.0.0", 4446, 1000, 2000, 3000, 4000, 5000))
+                : new StubVideoStreamer();
+        StubVideoStreamer.addClients(streamer, clients);
+
+        // 1 ms iterations: every client is out of its grace period a few ms from now
+        expert = new ExpertSystem(streamer, 3000, 1000, 5000, 500, 1);
+        if (perClient) expert.setTuner((c, r) -> { });
+        Thread.sleep(10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        AsyncLog.global().setLevel(level);
+    }
+
+    @Benchmark
+    public void runOnce() {
+        expert.runOnce();
+    }
+}
@@ -0,0 +1,58 @@
+package src;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One /metrics scrape: rendering every registered family as Prometheus
+ * text. This replaced the per-cycle client table, so it is paid per scrape
+ * instead of every 5 s cycle; only the per-rendition client count walks the
+ * client list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @Param({"10", "100", "10000"})
+    public int clients;
+
+    @Param({"false", "true"})
+    public boolean multiGroup;
+
+    private Metrics metrics;
+
+    @Setup
+    public void setup() {
+        VideoStreamer streamer = multiGroup
+                ? new StubVideoStreamer(Rendition.ladder("230.0.0.0", 4446, 500, 1000, 1500, 2000))
+                : new StubVideoStreamer();
+        StubVideoStreamer.addClients(streamer, clients);
+
+        ExpertSystem expert = new ExpertSystem(streamer, 500, 500, 2000, 500, 5000);
+        metrics = new Metrics();
+        streamer.registerMetrics(metrics);
+        expert.registerMetrics(metrics);
+        new VlcMonitor(List.of(), streamer).registerMetrics(metrics);
+    }
+
+    @Benchmark
+    public String scrape() {
+        return metrics.toPrometheus();
+    }
+}
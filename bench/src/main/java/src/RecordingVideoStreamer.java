@@ -0,0 +1,67 @@
+package src;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * VideoStreamer for the simulator: no FFmpeg, no sockets. Every bitrate the
+ * ExpertSystem sets is recorded with the simulated time it was set at.
+ */
+class RecordingVideoStreamer extends VideoStreamer {
+
+    private final Clock clock;
+    private int bitrateKbps;
+
+    private long[] timesMs = new long[64];
+    private int[] rates = new int[64];
+    private int decisions = 0;
+
+    RecordingVideoStreamer(Clock clock, int initialKbps) {
+        super("sim.ts");
+        this.clock = clock;
+        this.bitrateKbps = initialKbps;
+    }
+
+    RecordingVideoStreamer(Clock clock, List<Rendition> renditions) {
+        super("sim.ts", renditions);
+        this.clock = clock;
+        this.bitrateKbps = renditions.get(0).getBitrateKbps();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void setBitrate(int kbps) {
+        if (decisions == timesMs.length) {
+            timesMs = Arrays.copyOf(timesMs, decisions * 2);
+            rates = Arrays.copyOf(rates, decisions * 2);
+        }
+        timesMs[decisions] = clock.millis();
+        rates[decisions] = kbps;
+        decisions++;
+        bitrateKbps = kbps;
+    }
+
+    @Override
+    public int getBitrate() {
+        return bitrateKbps;
+    }
+
+    int decisions() {
+        return decisions;
+    }
+
+    long decisionTimeMs(int i) {
+        return timesMs[i];
+    }
+
+    int decisionKbps(int i) {
+        return rates[i];
+    }
+}
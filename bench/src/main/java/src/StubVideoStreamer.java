@@ -0,0 +1,50 @@
+package src;
+
+import java.util.List;
+
+/**
+ * VideoStreamer that never launches FFmpeg or opens a socket. Bitrate
+ * changes are only recorded, so the control plane can be benchmarked alone.
+ */
+class StubVideoStreamer extends VideoStreamer {
+
+    private int bitrateKbps = 0;
+
+    StubVideoStreamer() {
+        super("stub.ts");
+    }
+
+    StubVideoStreamer(List<Rendition> renditions) {
+        super("stub.ts", renditions);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void setBitrate(int kbps) {
+        bitrateKbps = kbps;
+    }
+
+    @Override
+    public int getBitrate() {
+        return bitrateKbps;
+    }
+
+    // A mix of healthy, low-cache and buffering viewers, all just updated
+    static void addClients(VideoStreamer streamer, int count) {
+        for (int i = 0; i < count; i++) {
+            Client c = new Client("10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255));
+            if (i % 7 == 0) c.setIsBuffering(true);
+            if (i % 5 == 0) c.setCachePercent(30);
+            c.setDroppedFrames(i % 3);
+            c.markUpdated();
+            streamer.addClient(c);
+        }
+    }
+}
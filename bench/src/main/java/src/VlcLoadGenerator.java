@@ -0,0 +1,511 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * VlcLoadGenerator stands in for many VLC instances at once so VlcMonitor can
+ * be tested at scale without starting real players. Each endpoint listens
+ * like VLC's RC interface: "stats" is answered from a template with
+ * plausible, changing numbers, and between polls every session prints the
+ * passive "cache:" / "buffering" / "playing" lines VLC does. Sessions can
+ * also be dropped at random to exercise disconnect handling and rediscovery,
+ * or stall - stay connected but never send another byte, like a hung player
+ * or a peer whose network went away without a FIN - to exercise heartbeats,
+ * and every endpoint can announce itself with VlcBeacon like a client agent.
+ *
+ * Endpoints are either consecutive ports on one address (works everywhere)
+ * or consecutive loopback addresses on one port (Linux routes all of
+ * 127.0.0.0/8 to lo; macOS needs aliases). Listeners and sessions run on
+ * virtual threads, passive output on one timer thread.
+ *
+ *   java -cp target/cis4930-project-1.0-SNAPSHOT.jar src.VlcLoadGenerator count=100
+ *
+ * Options (key=value): count, host (127.0.0.1), port (first port, 25050),
+ * spread (ports or addresses), template (file with {placeholders}),
+ * bitrate (kb/s), congestedPct (chance a reply shows loss), passiveMs,
+ * bufferingPct (chance a passive tick starts buffering), disconnectMs (mean
+ * time between drops per session, 0 for never), stallMs (the same for
+ * stalls), seed, beacon (group
+ * host:port, "default" for VlcBeacon's, or unset for none), beaconMs,
+ * inputs (comma-separated stream URLs, dealt out to endpoints in turn; what
+ * "status" reports until an "add").
+ */
+public class VlcLoadGenerator {
+
+    /**
+     * Roughly what VLC 3 prints for "stats". Placeholders: {inputKiB},
+     * {inputKbps}, {demuxKiB}, {demuxKbps}, {lostPackets}, {decoded},
+     * {displayed}, {lostPictures}.
+     */
+    public static final String DEFAULT_TEMPLATE = """
+            +----[ begin of statistical info ]
+            +-[Incoming]
+            | input bytes read : {inputKiB} KiB
+            | input bitrate    : {inputKbps} kb/s
+            | demux bytes read : {demuxKiB} KiB
+            | demux bitrate    : {demuxKbps} kb/s
+            | demux corrupted  :        0
+            | discontinuities  :        0
+            | lost packets     : {lostPackets}
+            |
+            +-[Video Decoding]
+            | video decoded    : {decoded}
+            | frames displayed : {displayed}
+            | lost frames      :        0
+            | lost pictures    : {lostPictures}
+            |
+            +----[ end of statistical info ]
+            """;
+
+    /**
+     * How the fake players behave. Defaults are a healthy viewer at 1.5 Mb/s
+     * that occasionally loses packets or buffers.
+     */
+    public static class Profile {
+        public String template = DEFAULT_TEMPLATE;
+        public int bitrateKbps = 1500;
+        public int congestedPct = 5;
+        public long passiveMs = 2000;
+        public int bufferingPct = 2;
+        public long disconnectMs = 0;
+        public long stallMs = 0;
+        public long seed = 4930;
+        // Where each endpoint announces itself, null for no beacons
+        public InetSocketAddress beaconGroup = null;
+        public long beaconMs = VlcBeacon.DEFAULT_INTERVAL_MS;
+        // What the players are watching, one per endpoint in turn
+        public List<String> inputs = List.of("udp://@230.0.0.0:4446");
+    }
+
+    private final List<InetSocketAddress> endpoints;
+    private final Profile profile;
+
+    private volatile boolean running = false;
+    private final List<ServerSocket> listeners = new ArrayList<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    // One per source address, so each beacon comes from its endpoint's IP
+    private final Map<InetAddress, VlcBeacon.Announcer> announcers = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LoadGenTimer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong statsServed = new AtomicLong();
+    private final AtomicLong passiveLines = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+
+    public VlcLoadGenerator(List<InetSocketAddress> endpoints, Profile profile) {
+        this.endpoints = List.copyOf(endpoints);
+        this.profile = profile;
+    }
+
+    /**
+     * `count` endpoints starting at host:port, on consecutive ports or, with
+     * spreadAddresses, consecutive IPv4 addresses sharing the port.
+     */
+    public static List<InetSocketAddress> endpoints(String host, int port, int count, boolean spreadAddresses)
+            throws IOException {
+        List<InetSocketAddress> out = new ArrayList<>(count);
+        if (!spreadAddresses) {
+            for (int i = 0; i < count; i++) out.add(new InetSocketAddress(host, port + i));
+            return out;
+        }
+
+        byte[] base = InetAddress.getByName(host).getAddress();
+        if (base.length != 4) throw new IOException("Address spreading needs an IPv4 host: " + host);
+        int first = ((base[0] & 255) << 24) | ((base[1] & 255) << 16) | ((base[2] & 255) << 8) | (base[3] & 255);
+        for (int i = 0; i < count; i++) {
+            int a = first + i;
+            String ip = (a >>> 24) + "." + (a >>> 16 & 255) + "." + (a >>> 8 & 255) + "." + (a & 255);
+            out.add(new InetSocketAddress(ip, port));
+        }
+        return out;
+    }
+
+    // ----------------------------------------------------------------------
+    // Lifecycle
+    // ----------------------------------------------------------------------
+
+    /**
+     * Binds every endpoint, then starts accepting. Throws if any endpoint
+     * can't be bound, after closing the ones that were.
+     */
+    public void start() throws IOException {
+        running = true;
+        try {
+            for (InetSocketAddress endpoint : endpoints) {
+                ServerSocket server = new ServerSocket();
+                server.setReuseAddress(true);
+                server.bind(endpoint, 50);
+                listeners.add(server);
+            }
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+
+        for (int i = 0; i < listeners.size(); i++) {
+            ServerSocket server = listeners.get(i);
+            int index = i;
+            Thread.ofVirtual().name("LoadGenAccept-" + i).start(() -> acceptLoop(server, index));
+        }
+
+        if (profile.beaconGroup != null) startBeacons();
+    }
+
+    // Every endpoint beacons once per interval, staggered across it
+    private void startBeacons() throws IOException {
+        for (int i = 0; i < endpoints.size(); i++) {
+            InetSocketAddress endpoint = endpoints.get(i);
+            VlcBeacon.Announcer announcer = announcers.get(endpoint.getAddress());
+            if (announcer == null) {
+                announcer = new VlcBeacon.Announcer(profile.beaconGroup, endpoint.getAddress(), 1);
+                announcers.put(endpoint.getAddress(), announcer);
+            }
+
+            VlcBeacon.Announcer out = announcer;
+            long offset = i * profile.beaconMs / endpoints.size();
+            timer.scheduleAtFixedRate(() -> {
+                try {
+                    out.announce(endpoint.getPort(), null);
+                } catch (IOException ignored) {
+                    // Stopping, or no route; the next one may get through
+                }
+            }, offset, profile.beaconMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (ServerSocket server : listeners) {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (Session s : sessions) s.close();
+        timer.shutdownNow();
+        for (VlcBeacon.Announcer announcer : announcers.values()) {
+            try {
+                announcer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public List<InetSocketAddress> getEndpoints() {
+        return endpoints;
+    }
+
+    public int connectedSessions() {
+        return sessions.size();
+    }
+
+    public long acceptedCount() {
+        return accepted.get();
+    }
+
+    public long statsServedCount() {
+        return statsServed.get();
+    }
+
+    public long passiveLineCount() {
+        return passiveLines.get();
+    }
+
+    public long disconnectCount() {
+        return disconnects.get();
+    }
+
+    public long stallCount() {
+        return stalls.get();
+    }
+
+    private void acceptLoop(ServerSocket server, int index) {
+        long connections = 0;
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                accepted.incrementAndGet();
+
+                // Each session gets its own stream of numbers, repeatable per seed
+                Session s = new Session(socket, new SplittableRandom(profile.seed * 1_000_003L + index * 7919L + connections++),
+                        profile.inputs.get(index % profile.inputs.size()));
+                sessions.add(s);
+                s.start();
+            } catch (IOException e) {
+                if (running) System.err.println("[LOADGEN] Accept failed on " + server.getLocalSocketAddress() + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // One RC session
+    // ----------------------------------------------------------------------
+    private final class Session {
+        private final Socket socket;
+        // One per thread that uses it: the reader answers stats, the timer prints
+        private final SplittableRandom random;
+        private final SplittableRandom passiveRandom;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private OutputStream out;
+        private ScheduledFuture<?> passive;
+        private volatile boolean closed = false;
+        // Reads and discards commands from now on, and prints nothing
+        private volatile boolean stalled = false;
+
+        // Counters as VLC keeps them since the input started
+        private long inputKiB = 0;
+        private long demuxKiB = 0;
+        private long lostPackets = 0;
+        private long decoded = 0;
+        private long lostPictures = 0;
+        private long lastStatsNanos = System.nanoTime();
+        private int cache = 100;
+        private boolean buffering = false;
+        private volatile String input;
+
+        Session(Socket socket, SplittableRandom random, String input) {
+            this.socket = socket;
+            this.input = input;
+            this.random = random;
+            this.passiveRandom = random.split();
+        }
+
+        void start() {
+            try {
+                out = socket.getOutputStream();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            Thread.ofVirtual().name("LoadGenSession-" + socket.getLocalPort()).start(this::readLoop);
+
+            if (profile.passiveMs > 0) {
+                long first = 1 + random.nextLong(profile.passiveMs);
+                passive = timer.scheduleAtFixedRate(this::passiveTick, first, profile.passiveMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void readLoop() {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.strip();
+                    if (stalled) continue;
+                    if (command.equals("stats")) {
+                        write(statsReply());
+                        statsServed.incrementAndGet();
+                    } else if (command.startsWith("add ")) {
+                        input = command.substring(4);
+                        write("status change: ( new input: " + input + " )\r\n"
+                                + "status change: ( play state: 3 ): playing\r\n");
+                    } else if (command.equals("status")) {
+                        write("( new input: " + input + " )\r\n"
+                                + "( audio volume: 256 )\r\n"
+                                + "( state playing )\r\n");
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+            close();
+        }
+
+        // Cache drifts, sometimes buffering starts or ends, sometimes the link drops or hangs
+        private void passiveTick() {
+            if (closed || stalled) return;
+
+            SplittableRandom random = passiveRandom;
+            if (profile.disconnectMs > 0 && random.nextDouble() < (double) profile.passiveMs / profile.disconnectMs) {
+                disconnects.incrementAndGet();
+                close();
+                return;
+            }
+            if (profile.stallMs > 0 && random.nextDouble() < (double) profile.passiveMs / profile.stallMs) {
+                stalls.incrementAndGet();
+                stalled = true;
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            if (buffering) {
+                cache = Math.min(100, cache + 20 + random.nextInt(30));
+                if (cache >= 100) {
+                    buffering = false;
+                    sb.append("status change: ( play state: 3 ): playing\r\n");
+                } else {
+                    sb.append("buffering ").append(cache).append("%\r\n");
+                }
+            } else if (random.nextInt(100) < profile.bufferingPct) {
+                buffering = true;
+                cache = random.nextInt(40);
+                sb.append("buffering ").append(cache).append("%\r\n");
+            } else {
+                cache = Math.max(40, Math.min(100, cache + random.nextInt(21) - 10));
+            }
+            sb.append("cache: ").append(cache).append("%\r\n");
+
+            String text = sb.toString();
+            passiveLines.addAndGet(text.chars().filter(ch -> ch == '\n').count());
+            write(text);
+        }
+
+        private String statsReply() {
+            long now = System.nanoTime();
+            double seconds = Math.max(0.001, (now - lastStatsNanos) / 1e9);
+            lastStatsNanos = now;
+
+            boolean congested = random.nextInt(100) < profile.congestedPct;
+            double jitter = 0.9 + 0.2 * random.nextDouble();
+            int inputKbps = (int) (profile.bitrateKbps * jitter * (congested ? 0.7 : 1.0));
+            int demuxKbps = (int) (inputKbps * 0.98);
+
+            inputKiB += (long) (inputKbps * seconds / 8.192);
+            demuxKiB += (long) (demuxKbps * seconds / 8.192);
+            decoded += (long) (25 * seconds);
+            if (congested) {
+                lostPackets += 5 + random.nextInt(45);
+                lostPictures += 4 + random.nextInt(16);
+            }
+
+            Map<String, Long> values = new HashMap<>();
+            values.put("inputKiB", inputKiB);
+            values.put("inputKbps", (long) inputKbps);
+            values.put("demuxKiB", demuxKiB);
+            values.put("demuxKbps", (long) demuxKbps);
+            values.put("lostPackets", lostPackets);
+            values.put("decoded", decoded);
+            values.put("displayed", decoded - lostPictures);
+            values.put("lostPictures", lostPictures);
+            return fill(profile.template, values);
+        }
+
+        private void write(String text) {
+            if (closed) return;
+            writeLock.lock();
+            try {
+                out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            } catch (IOException e) {
+                close();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            sessions.remove(this);
+            if (passive != null) passive.cancel(false);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Replaces {name} with its value, right-aligned like VLC's columns; lines end in CRLF
+    static String fill(String template, Map<String, Long> values) {
+        StringBuilder sb = new StringBuilder(template.length() + 64);
+        int i = 0;
+        while (i < template.length()) {
+            char ch = template.charAt(i);
+            if (ch == '{') {
+                int close = template.indexOf('}', i);
+                Long v = close < 0 ? null : values.get(template.substring(i + 1, close));
+                if (v != null) {
+                    String s = Long.toString(v);
+                    for (int pad = s.length(); pad < 8; pad++) sb.append(' ');
+                    sb.append(s);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            if (ch == '\n') sb.append('\r');
+            sb.append(ch);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    // ----------------------------------------------------------------------
+    // Standalone
+    // ----------------------------------------------------------------------
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int count = Integer.parseInt(opts.getOrDefault("count", "100"));
+        String host = opts.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(opts.getOrDefault("port", "25050"));
+        boolean spreadAddresses = opts.getOrDefault("spread", "ports").equals("addresses");
+
+        Profile profile = new Profile();
+        if (opts.containsKey("template")) profile.template = Files.readString(Path.of(opts.get("template")));
+        profile.bitrateKbps = Integer.parseInt(opts.getOrDefault("bitrate", "" + profile.bitrateKbps));
+        profile.congestedPct = Integer.parseInt(opts.getOrDefault("congestedPct", "" + profile.congestedPct));
+        profile.passiveMs = Long.parseLong(opts.getOrDefault("passiveMs", "" + profile.passiveMs));
+        profile.bufferingPct = Integer.parseInt(opts.getOrDefault("bufferingPct", "" + profile.bufferingPct));
+        profile.disconnectMs = Long.parseLong(opts.getOrDefault("disconnectMs", "" + profile.disconnectMs));
+        profile.stallMs = Long.parseLong(opts.getOrDefault("stallMs", "" + profile.stallMs));
+        profile.seed = Long.parseLong(opts.getOrDefault("seed", "" + profile.seed));
+        profile.beaconGroup = VlcBeacon.parseGroup(opts.get("beacon"));
+        profile.beaconMs = Long.parseLong(opts.getOrDefault("beaconMs", "" + profile.beaconMs));
+        if (opts.containsKey("inputs")) profile.inputs = List.of(opts.get("inputs").split(","));
+
+        VlcLoadGenerator generator = new VlcLoadGenerator(endpoints(host, port, count, spreadAddresses), profile);
+        generator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(generator::stop, "LoadGenShutdown"));
+
+        InetSocketAddress firstEndpoint = generator.getEndpoints().get(0);
+        InetSocketAddress lastEndpoint = generator.getEndpoints().get(count - 1);
+        System.out.println("[LOADGEN] Ready: " + count + " endpoints, " + firstEndpoint + " to " + lastEndpoint);
+
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.println("[LOADGEN] sessions " + generator.connectedSessions()
+                    + ", stats served " + generator.statsServedCount()
+                    + ", passive lines " + generator.passiveLineCount()
+                    + ", disconnects " + generator.disconnectCount()
+                    + ", stalls " + generator.stallCount());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures VlcMonitor against 10, 100 and 1000 fake VLC instances served by
+ * VlcLoadGenerator on loopback ports. The generator runs as a child process,
+ * so the CPU time and heap measured here belong to the monitor alone.
+ *
+ * For each size, I/O mode and discovery mode it reports how long it took to
+ * find every endpoint, how quickly dropped sessions were found again, the
+ * "stats" round trip, the monitor's CPU (% of one core) and heap, and the
+ * discovery traffic (TCP probes and beacons per second) over a steady
+ * window of polling. With discovery=BEACON every fake player announces
+ * itself on a loopback multicast group. With stallMs some sessions hang
+ * without closing; the table then shows how many were cut off by the
+ * heartbeat deadline and the worst share of clients the expert system
+ * would have seen as missing telemetry at any second.
+ *
+ *   java -cp target/benchmarks.jar src.VlcMonitorLoadTest
+ *   java -cp target/benchmarks.jar src.VlcMonitorLoadTest clients=1000 io=all seconds=60
+ *
+ * Options (key=value): clients (a number or all), io (THREADS, NIO,
+ * VIRTUAL or all), discovery (SWEEP, BEACON or all), seconds (steady
+ * window), disconnectMs (mean time between drops per session, 0 for none),
+ * stallMs (mean time between hangs per session, 0 for none), heartbeatMs
+ * (the monitor's heartbeat timeout, default its own),
+ * unused (extra ports in the scan range with nothing listening, like the
+ * empty addresses of a subnet; defaults to clients), port (first port).
+ */
+public class VlcMonitorLoadTest {
+
+    private static final long DISCOVERY_TIMEOUT_MS = 120_000;
+    // Away from VlcBeacon's default port, so a server on this machine isn't disturbed
+    private static final InetSocketAddress BEACON_GROUP = new InetSocketAddress("239.255.49.30", 24930);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        String clientsOpt = opts.getOrDefault("clients", "all");
+        int[] sizes = clientsOpt.equals("all") ? new int[] {10, 100, 1000}
+                                               : new int[] {Integer.parseInt(clientsOpt)};
+        String ioOpt = opts.getOrDefault("io", "NIO");
+        List<VlcMonitor.IoMode> modes = ioOpt.equals("all") ? List.of(VlcMonitor.IoMode.values())
+                                                            : List.of(VlcMonitor.IoMode.valueOf(ioOpt));
+        String discoveryOpt = opts.getOrDefault("discovery", "all");
+        List<VlcMonitor.Discovery> discoveries = discoveryOpt.equals("all")
+                ? List.of(VlcMonitor.Discovery.values())
+                : List.of(VlcMonitor.Discovery.valueOf(discoveryOpt));
+        int seconds = Integer.parseInt(opts.getOrDefault("seconds", "30"));
+        long disconnectMs = Long.parseLong(opts.getOrDefault("disconnectMs", "60000"));
+        long stallMs = Long.parseLong(opts.getOrDefault("stallMs", "0"));
+        long heartbeatMs = Long.parseLong(opts.getOrDefault("heartbeatMs", "0"));
+        int port = Integer.parseInt(opts.getOrDefault("port", "25050"));
+        String unusedOpt = opts.get("unused");
+
+        System.out.printf("%ds steady window, sessions dropped every %s and stalled every %s on average, "
+                        + "%s unused ports per client in the scan range%n%n",
+                seconds, disconnectMs == 0 ? "never" : (disconnectMs / 1000) + "s",
+                stallMs == 0 ? "never" : (stallMs / 1000) + "s",
+                unusedOpt == null ? "1" : unusedOpt + " total");
+        System.out.printf("%7s %-7s %-6s %9s %9s %9s %6s %9s %9s %9s %9s %7s %7s %8s %8s %8s %8s %8s %8s%n",
+                "clients", "io", "disc", "all found", "disc p50", "disc max", "redisc", "redisc p50",
+                "rtt p50", "rtt p99", "rtt max", "polls", "cpu %", "heap MB", "KB/client",
+                "probes/s", "beacons/s", "timeouts", "miss max");
+
+        for (int n : sizes) {
+            for (VlcMonitor.IoMode mode : modes) {
+                for (VlcMonitor.Discovery discovery : discoveries) {
+                    int unused = unusedOpt == null ? n : Integer.parseInt(unusedOpt);
+                    run(n, unused, mode, discovery, seconds, disconnectMs, stallMs, heartbeatMs, port);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(int n, int unused, VlcMonitor.IoMode mode, VlcMonitor.Discovery discovery,
+                            int seconds, long disconnectMs, long stallMs, long heartbeatMs, int port)
+            throws Exception {
+        boolean beacons = discovery == VlcMonitor.Discovery.BEACON;
+        Process generator = startGenerator(n, port, disconnectMs, stallMs, beacons);
+        AsyncLog.Level level = AsyncLog.global().getLevel();
+        try {
+            // The generator listens on the first n; the rest refuse every probe
+            List<InetSocketAddress> endpoints = VlcLoadGenerator.endpoints("127.0.0.1", port, n + unused, false);
+
+            com.sun.management.OperatingSystemMXBean os =
+                    (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long heapBefore = settledHeap(memory);
+
+            VideoStreamer streamer = new VideoStreamer("bench.ts");
+            // What the expert system would count as missing telemetry
+            TelemetryAggregator aggregator = streamer.getTelemetry();
+            LatencyHistogram found = new LatencyHistogram();
+            LatencyHistogram rediscovery = new LatencyHistogram();
+            long[] startNanos = {0};
+            Map<String, Long> removedAt = new ConcurrentHashMap<>();
+            Map<String, Boolean> seen = new ConcurrentHashMap<>();
+
+            streamer.getClients().addListener(new ClientRegistry.Listener() {
+                @Override
+                public void clientAdded(Client c) {
+                    long now = System.nanoTime();
+                    Long removed = removedAt.remove(c.getIpAddress());
+                    if (removed != null) rediscovery.record(now - removed);
+                    else if (seen.putIfAbsent(c.getIpAddress(), true) == null) found.record(now - startNanos[0]);
+                }
+
+                @Override
+                public void clientRemoved(Client c) {
+                    removedAt.put(c.getIpAddress(), System.nanoTime());
+                }
+            });
+
+            VlcMonitor monitor = new VlcMonitor(endpoints, streamer);
+            monitor.setIoMode(mode, 2);
+            monitor.setPollMode(StatsPoller.Mode.BATCHED, 10);
+            monitor.setEchoLines(false);
+            // Sweep as often as SWEEP mode does, so the beacon column shows the gain
+            if (beacons) monitor.setDiscovery(discovery, BEACON_GROUP, 60_000);
+            if (heartbeatMs > 0) monitor.setHeartbeatTimeoutMs(heartbeatMs);
+            Metrics metrics = new Metrics();
+            monitor.registerMetrics(metrics);
+
+            // Connect/remove lines would only interleave with the table
+            AsyncLog.global().setLevel(AsyncLog.Level.WARN);
+            startNanos[0] = System.nanoTime();
+            monitor.start();
+
+            long deadline = System.currentTimeMillis() + DISCOVERY_TIMEOUT_MS;
+            while (seen.size() < n && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            long allFoundMs = (System.nanoTime() - startNanos[0]) / 1_000_000;
+
+            // Steady state: polls, passive lines and the odd reconnect
+            monitor.getPollRtt().reset();
+            long cpuStart = os.getProcessCpuTime();
+            long wallStart = System.nanoTime();
+            double probesStart = metrics.snapshot().get("vlc_discovery_probes_total");
+            double beaconsStart = metrics.snapshot().get("vlc_beacons_total");
+            double timeoutsStart = metrics.snapshot().get("vlc_heartbeat_timeouts_total");
+            int missingMax = 0;
+            for (int s = 0; s < seconds; s++) {
+                Thread.sleep(1000);
+                missingMax = Math.max(missingMax, aggregator.sample(System.currentTimeMillis()).percentMissing());
+            }
+            double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+            double cpuPercent = 100.0 * (os.getProcessCpuTime() - cpuStart) / (wallSeconds * 1e9);
+            double probesPerSecond = (metrics.snapshot().get("vlc_discovery_probes_total") - probesStart) / wallSeconds;
+            double beaconsPerSecond = (metrics.snapshot().get("vlc_beacons_total") - beaconsStart) / wallSeconds;
+            long timeouts = (long) (metrics.snapshot().get("vlc_heartbeat_timeouts_total") - timeoutsStart);
+
+            long heapUsed = settledHeap(memory) - heapBefore;
+            LatencyHistogram rtt = monitor.getPollRtt();
+
+            monitor.stop();
+            AsyncLog.global().setLevel(level);
+
+            System.out.printf("%7d %-7s %-6s %8dms %8.1fms %8.1fms %6d %8.1fms %8.2fms %8.2fms %8.2fms %7d %7.1f %8.1f %8.1f %8.1f %8.1f %8d %7d%%%s%n",
+                    n, mode, discovery, allFoundMs,
+                    found.percentileMicros(50) / 1000.0, found.maxMicros() / 1000.0,
+                    rediscovery.count(), rediscovery.percentileMicros(50) / 1000.0,
+                    rtt.percentileMicros(50) / 1000.0, rtt.percentileMicros(99) / 1000.0,
+                    rtt.maxMicros() / 1000.0, rtt.count(), cpuPercent,
+                    heapUsed / 1048576.0, heapUsed / 1024.0 / n, probesPerSecond, beaconsPerSecond,
+                    timeouts, missingMax,
+                    seen.size() < n ? "  (found " + seen.size() + ")" : "");
+        } finally {
+            AsyncLog.global().setLevel(level);
+            generator.destroy();
+            generator.waitFor();
+        }
+    }
+
+    // Heap in use after a few full collections, so the previous run's garbage is gone
+    private static long settledHeap(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+            Thread.sleep(50);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // Same classpath as this JVM; returns once every endpoint is listening
+    private static Process startGenerator(int n, int port, long disconnectMs, long stallMs, boolean beacons)
+            throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("src.VlcLoadGenerator");
+        cmd.add("count=" + n);
+        cmd.add("port=" + port);
+        cmd.add("disconnectMs=" + disconnectMs);
+        cmd.add("stallMs=" + stallMs);
+        if (beacons) cmd.add("beacon=" + BEACON_GROUP.getHostString() + ":" + BEACON_GROUP.getPort());
+
+        Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = out.readLine()) != null) {
+            if (line.startsWith("[LOADGEN] Ready")) break;
+        }
+        if (line == null) throw new IOException("Load generator exited before it was ready");
+
+        // Keep draining so its periodic status lines never block it
+        Thread drain = new Thread(() -> {
+            try {
+                while (out.readLine() != null) {
+                    // discard
+                }
+            } catch (IOException ignored) {
+            }
+        }, "LoadGenOutput");
+        drain.setDaemon(true);
+        drain.start();
+        return p;
+    }
+}
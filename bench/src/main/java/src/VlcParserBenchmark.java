@@ -0,0 +1,89 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One "stats" reply plus a few passive lines, parsed by the String-based
+ * VlcStatsParser and by the byte-level VlcTelemetryParser. Run with
+ * "-prof gc" to compare allocation per reply as well as time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VlcParserBenchmark {
+
+    // Roughly what VLC 3 prints for "stats", framing included
+    private static final String[] REPLY = {
+            "+----[ begin of statistical info ]",
+            "+-[Incoming]",
+            "| input bytes read :     1832 KiB",
+            "| input bitrate    :     1317 kb/s",
+            "| demux bytes read :     1790 KiB",
+            "| demux bitrate    :     1289 kb/s",
+            "| demux corrupted  :        0",
+            "| discontinuities  :        0",
+            "|",
+            "+-[Video Decoding]",
+            "| video decoded    :      452",
+            "| frames displayed :      447",
+            "| lost frames      :        0",
+            "| lost pictures    :        3",
+            "|",
+            "+----[ end of statistical info ]",
+            "buffering 54%",
+            "cache: 42%",
+            "status change: ( play state: 3 ): playing",
+    };
+
+    private byte[][] replyBytes;
+    private Client stringClient;
+    private Client byteClient;
+    private VlcStatsParser stringParser;
+    private VlcTelemetryParser byteParser;
+
+    @Setup
+    public void setup() {
+        replyBytes = new byte[REPLY.length][];
+        for (int i = 0; i < REPLY.length; i++) {
+            replyBytes[i] = REPLY[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        stringClient = new Client("10.0.30.1");
+        byteClient = new Client("10.0.30.2");
+        stringParser = new VlcStatsParser(stringClient);
+        byteParser = new VlcTelemetryParser(byteClient);
+    }
+
+    @Benchmark
+    public void stringParser(Blackhole bh) {
+        // The old path decoded a String per line before parsing
+        for (byte[] line : replyBytes) {
+            stringParser.parseLine(new String(line, StandardCharsets.ISO_8859_1));
+        }
+        bh.consume(stringClient.getDroppedFrames());
+    }
+
+    @Benchmark
+    public void byteParser(Blackhole bh) {
+        for (byte[] line : replyBytes) {
+            byteParser.parseLine(line, 0, line.length);
+        }
+        bh.consume(byteClient.getDroppedFrames());
+    }
+}
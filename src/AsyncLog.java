@@ -0,0 +1,404 @@
+package src;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log shared by every Logger. Callers only claim a slot in a
+ * bounded lock-free ring and return; one "LogWriter" thread formats events
+ * and hands them to the sinks (console, JSON-lines file). When the ring is
+ * full the event is dropped and counted rather than making the caller wait,
+ * so an RC reader or FFmpeg pipe never blocks on the console.
+ *
+ * Events below the level are rejected before anything is allocated, and each
+ * Logger is rate limited on its own (see setRateLimit), so one chatty client
+ * can't crowd the others out of the ring.
+ */
+public final class AsyncLog {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    // One logged line; suppressed counts lines the source's rate limit dropped just before it
+    public static final class Event {
+        public final long timeMs;
+        public final Level level;
+        public final String source;
+        public final String message;
+        public final long suppressed;
+
+        Event(long timeMs, Level level, String source, String message, long suppressed) {
+            this.timeMs = timeMs;
+            this.level = level;
+            this.source = source;
+            this.message = message;
+            this.suppressed = suppressed;
+        }
+    }
+
+    // Called on the writer thread only
+    public interface Sink {
+        void write(Event e) throws IOException;
+
+        // After each batch, once the ring is empty
+        void flush() throws IOException;
+
+        default void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static final AsyncLog GLOBAL = new AsyncLog(8192);
+
+    // Bounded MPSC ring: a slot's sequence says whether it is free for the
+    // producer at that position or full for the consumer
+    private final int mask;
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    // Only the writer advances head
+    private volatile long head = 0;
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private volatile Level level = Level.INFO;
+
+    // Per-source token bucket: sustained lines per second, and burst
+    private volatile long rateIntervalNanos = 1_000_000_000L / 50;
+    private volatile long rateBurstNanos = rateIntervalNanos * 200;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean writerParked = false;
+    private volatile boolean closed = false;
+
+    public AsyncLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequence.set(i, i);
+
+        sinks.add(new ConsoleSink());
+
+        writer = new Thread(this::drainLoop, "LogWriter");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "LogShutdown"));
+    }
+
+    // The log every Logger.get() writes to
+    public static AsyncLog global() {
+        return GLOBAL;
+    }
+
+    // ----------------------------------------------------------------------
+    // Configuration
+    // ----------------------------------------------------------------------
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isEnabled(Level l) {
+        return l != Level.OFF && l.compareTo(level) >= 0;
+    }
+
+    /**
+     * Lines per second each Logger may sustain, and how many it may write
+     * in a burst above that. Excess lines are counted, not queued.
+     */
+    public void setRateLimit(int perSecond, int burst) {
+        long interval = 1_000_000_000L / Math.max(1, perSecond);
+        rateIntervalNanos = interval;
+        rateBurstNanos = interval * Math.max(1, burst);
+    }
+
+    // Whether events are also printed to stdout/stderr (on by default)
+    public void setConsole(boolean enabled) {
+        sinks.removeIf(s -> s instanceof ConsoleSink);
+        if (enabled) sinks.add(0, new ConsoleSink());
+    }
+
+    /**
+     * Also writes every event to a JSON-lines file, one object per line.
+     * When the file reaches maxBytes it is renamed to "<name>.1" (replacing
+     * the previous one) and a new file is started.
+     */
+    public void addFileSink(Path file, long maxBytes) throws IOException {
+        sinks.add(new JsonLinesSink(file, maxBytes));
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.counter("log_events_total", "Log events written to the sinks", written::sum);
+        metrics.counter("log_dropped_total", "Log events dropped because the queue was full", dropped::sum);
+        metrics.counter("log_suppressed_total", "Log events dropped by a source's rate limit", suppressed::sum);
+        metrics.gauge("log_queue_depth", "Log events waiting for the writer", () -> tail.get() - head);
+    }
+
+    // ----------------------------------------------------------------------
+    // Producers (any thread)
+    // ----------------------------------------------------------------------
+    long rateIntervalNanos() {
+        return rateIntervalNanos;
+    }
+
+    long rateBurstNanos() {
+        return rateBurstNanos;
+    }
+
+    void countSuppressed() {
+        suppressed.increment();
+    }
+
+    /**
+     * Queues an event; returns false if the ring was full and it was dropped.
+     */
+    boolean offer(Event e) {
+        if (closed) return false;
+
+        long pos = tail.get();
+        while (true) {
+            int i = (int) pos & mask;
+            long diff = sequence.get(i) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+                pos = tail.get();
+            } else if (diff < 0) {
+                // The writer hasn't freed this slot yet: full
+                dropped.increment();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        int i = (int) pos & mask;
+        slots.set(i, e);
+        sequence.set(i, pos + 1);
+
+        if (writerParked) {
+            writerParked = false;
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Waits up to timeoutMs for everything queued so far to reach the sinks.
+     */
+    public void flush(long timeoutMs) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000;
+        while (head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(200_000);
+        }
+    }
+
+    // Drains what is queued, flushes and closes the sinks; later events are dropped
+    public void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Writer thread
+    // ----------------------------------------------------------------------
+    private void drainLoop() {
+        while (true) {
+            int n = drain();
+            if (n > 0) {
+                flushSinks();
+                continue;
+            }
+            if (closed) break;
+
+            // Recheck after advertising the park so a producer can't slip by
+            writerParked = true;
+            if (!ready()) LockSupport.parkNanos(this, 100_000_000);
+            writerParked = false;
+        }
+
+        drain();
+        for (Sink s : sinks) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                System.err.println("[LOG] Closing sink failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean ready() {
+        return sequence.get((int) head & mask) == head + 1;
+    }
+
+    private int drain() {
+        int n = 0;
+        long pos = head;
+        while (true) {
+            int i = (int) pos & mask;
+            if (sequence.get(i) != pos + 1) break;
+
+            Event e = slots.get(i);
+            slots.set(i, null);
+            sequence.set(i, pos + mask + 1);
+            head = ++pos;
+
+            for (Sink s : sinks) {
+                try {
+                    s.write(e);
+                } catch (IOException ex) {
+                    System.err.println("[LOG] Sink failed, removing it: " + ex.getMessage());
+                    sinks.remove(s);
+                }
+            }
+            written.increment();
+            n++;
+        }
+        return n;
+    }
+
+    private void flushSinks() {
+        for (Sink s : sinks) {
+            try {
+                s.flush();
+            } catch (IOException e) {
+                System.err.println("[LOG] Sink failed, removing it: " + e.getMessage());
+                sinks.remove(s);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Sinks
+    // ----------------------------------------------------------------------
+
+    // "[SOURCE] message" as before; WARN and ERROR go to stderr
+    private static final class ConsoleSink implements Sink {
+        private final StringBuilder out = new StringBuilder(8192);
+        private final StringBuilder err = new StringBuilder(1024);
+
+        @Override
+        public void write(Event e) {
+            StringBuilder sb = e.level.compareTo(Level.WARN) >= 0 ? err : out;
+            sb.append('[').append(e.source).append("] ").append(e.message);
+            if (e.suppressed > 0) sb.append("  (").append(e.suppressed).append(" lines suppressed)");
+            sb.append(System.lineSeparator());
+            if (sb.length() >= 8192) flush(sb, sb == err ? System.err : System.out);
+        }
+
+        @Override
+        public void flush() {
+            flush(out, System.out);
+            flush(err, System.err);
+        }
+
+        private static void flush(StringBuilder sb, PrintStream stream) {
+            if (sb.length() == 0) return;
+            stream.print(sb);
+            stream.flush();
+            sb.setLength(0);
+        }
+    }
+
+    // {"t":1700000000000,"level":"INFO","source":"VLC 10.0.30.5","msg":"...","suppressed":3}
+    private static final class JsonLinesSink implements Sink {
+        private final Path file;
+        private final long maxBytes;
+        private final StringBuilder line = new StringBuilder(256);
+        private BufferedWriter out;
+        private long bytes;
+
+        JsonLinesSink(Path file, long maxBytes) throws IOException {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            open();
+        }
+
+        private void open() throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            bytes = Files.size(file);
+        }
+
+        @Override
+        public void write(Event e) throws IOException {
+            line.setLength(0);
+            line.append("{\"t\":").append(e.timeMs)
+                .append(",\"level\":\"").append(e.level).append('"')
+                .append(",\"source\":");
+            quote(e.source);
+            line.append(",\"msg\":");
+            quote(e.message);
+            if (e.suppressed > 0) line.append(",\"suppressed\":").append(e.suppressed);
+            line.append("}\n");
+
+            out.append(line);
+            // Close enough for rotation; non-ASCII only makes files a bit bigger
+            bytes += line.length();
+            if (maxBytes > 0 && bytes >= maxBytes) rotate();
+        }
+
+        private void rotate() throws IOException {
+            out.close();
+            Files.move(file, file.resolveSibling(file.getFileName() + ".1"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+
+        private void quote(String s) {
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> line.append("\\\"");
+                    case '\\' -> line.append("\\\\");
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    case '\t' -> line.append("\\t");
+                    default -> {
+                        if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+                        else line.append(c);
+                    }
+                }
+            }
+            line.append('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package src;
+
+/**
+ * Estimates how fast one client can sustainably receive, from the input
+ * bitrate and lost-packet counter VLC reports in "stats".
+ *
+ * A multicast receiver takes whatever rate we send until its link runs
+ * out, so the measured rate is a floor while the client keeps up and the
+ * ceiling once it doesn't. While the client is clean (no new lost packets,
+ * not buffering, not dropping pictures) the estimate is the smoothed rate
+ * plus probing headroom; as soon as it loses packets or stalls it drops to
+ * just under what actually arrived.
+ */
+public class BandwidthEstimator {
+
+    // Room to grow assumed for a client that is keeping up
+    private static final double HEADROOM = 1.25;
+    // Safety margin under the measured rate for a congested client
+    private static final double BACKOFF = 0.9;
+
+    private int lastLostPackets = -1;
+    private int capacityKbps = 0;
+
+    /**
+     * Updates the estimate from a stats reply's snapshot and the history it
+     * was just recorded into. Returns the estimate in kb/s, 0 if the client
+     * has not reported an input bitrate yet.
+     */
+    public synchronized int update(TelemetrySnapshot t, TelemetryHistory h) {
+        int lost = t.getLostPackets();
+        int newLosses = lastLostPackets < 0 ? 0 : Math.max(0, lost - lastLostPackets);
+        lastLostPackets = lost;
+
+        double delivered = h.bitrateEwma();
+        if (delivered <= 0 && capacityKbps == 0) return 0;
+
+        int measured = t.getInputBitrateKbps();
+        // A lower rate on its own is not congestion: we may have just cut it
+        boolean congested = newLosses > 0
+                || t.isBuffering()
+                || t.getDroppedDelta() > 3;
+
+        if (congested) {
+            // What got through is the most it can take right now; a stalled
+            // reply falls back on the smoothed rate rather than reading as zero
+            double through = measured > 0 ? measured : delivered;
+            capacityKbps = Math.max(1, (int) (through * BACKOFF));
+        } else {
+            capacityKbps = (int) (Math.max(delivered, measured) * HEADROOM);
+        }
+        return capacityKbps;
+    }
+
+    public synchronized int getCapacityKbps() {
+        return capacityKbps;
+    }
+}
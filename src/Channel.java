@@ -0,0 +1,87 @@
+package src;
+
+/**
+ * One channel of a ChannelEngine: a playlist streamed by its own
+ * VideoStreamer on its own groups, adapted by its own ExpertSystem. Its
+ * viewers are the clients the engine routed to the streamer's registry.
+ *
+ * Whether it runs, and with how many encoders, is up to the engine; build
+ * the streamer and expert as for a single stream but don't start them.
+ */
+public class Channel {
+
+    private final String name;
+    private final VideoStreamer streamer;
+    private final ExpertSystem expert;
+
+    // Restart mode's warm standby, used when the engine has a slot to spare
+    private int standbyStepKbps = 0;
+    private int standbyMinKbps = 0;
+
+    // Scheduling state, only touched on the engine's thread
+    boolean on = false;
+    boolean standbyOn = false;
+    int encoders = 0;
+    int viewers = 0;
+    long lastViewerMs;
+    long startedMs;
+
+    public Channel(String name, VideoStreamer streamer, ExpertSystem expert) {
+        this.name = name;
+        this.streamer = streamer;
+        this.expert = expert;
+        streamer.setName(name);
+        expert.setName(name);
+    }
+
+    /**
+     * Asks for a warm standby (see VideoStreamer.setWarmStandby) whenever
+     * the engine's encoder slots allow it. Restart mode only.
+     */
+    public void setWarmStandby(int stepKbps, int minKbps) {
+        this.standbyStepKbps = Math.max(0, stepKbps);
+        this.standbyMinKbps = minKbps;
+    }
+
+    // Only worth a slot while restart mode is encoding live
+    boolean wantsStandby() {
+        return standbyStepKbps > 0 && streamer.isRestartMode() && streamer.getEncoderDemand() == 1;
+    }
+
+    void applyStandby(boolean enabled) {
+        if (enabled == standbyOn) return;
+        standbyOn = enabled;
+        streamer.setWarmStandby(enabled ? standbyStepKbps : 0, standbyMinKbps);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public VideoStreamer getStreamer() {
+        return streamer;
+    }
+
+    public ExpertSystem getExpert() {
+        return expert;
+    }
+
+    // Clients watching it, as of the engine's last pass
+    public int getViewers() {
+        return viewers;
+    }
+
+    // FFmpeg processes the engine granted it, the standby included
+    public int getEncoders() {
+        return encoders;
+    }
+
+    public boolean isOn() {
+        return on;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,326 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs several channels from one server: each Channel has its own
+ * playlist, groups, ladder and ExpertSystem, and they share one VlcMonitor
+ * and a fixed number of FFmpeg encoder slots.
+ *
+ * The monitor adds every client to the engine's registry. Once a second
+ * the engine routes each one to the channel whose group its VLC reported
+ * opening (see Client.getInput), or to the first channel if it hasn't
+ * said, and then hands out encoder slots by viewer count:
+ *
+ *   - channels are ranked by viewers; one started less than HOLD_MS ago
+ *     keeps its place, and ties go to the one already running, so slots
+ *     don't flap between channels with similar audiences
+ *   - in that order each channel gets the encoders it needs to stream
+ *     (one in restart mode, one per rung otherwise, none if it is served
+ *     from the segment cache), if that many are left; the rest are stopped
+ *   - a channel nobody has watched for idleMs is stopped even when slots
+ *     are free, and started again when a viewer tunes to it
+ *   - slots still left become warm standbys for watched restart-mode
+ *     channels, most watched first
+ *
+ * A stopped channel resumes where it stopped. The slots are a budget for
+ * steady-state encoders: a restart-mode cutover briefly runs one more, and
+ * segment cache transcodes run outside it.
+ */
+public class ChannelEngine {
+
+    private static final Logger LOG = Logger.get("CHANNELS");
+
+    private static final long TICK_MS = 1000;
+    // A newly started channel keeps its slots this long whatever the counts say
+    private static final long HOLD_MS = 30_000;
+
+    private final int encoderSlots;
+    private volatile long idleMs = 60_000;
+
+    private final List<Channel> channels = new ArrayList<>();
+    // "230.0.1.0:4446" -> channel publishing it, and its rendition index there
+    private final Map<String, Channel> byGroup = new HashMap<>();
+    private final Map<String, Integer> renditionByGroup = new HashMap<>();
+
+    // Everything the monitor sees; each client is also in one channel's registry
+    private final ClientRegistry clients = new ClientRegistry();
+    // Which channel each client is in; guarded by routeLock, which monitor
+    // threads (adds, removes) and the engine's ticks both take
+    private final Map<Client, Channel> routed = new HashMap<>();
+    // Placed in the first channel before their stream was known
+    private final Set<Client> guessed = new HashSet<>();
+    private final Object routeLock = new Object();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ChannelEngine");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = false;
+
+    private volatile int slotsUsed = 0;
+    private final LongAdder starts = new LongAdder();
+    private final LongAdder stops = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+
+    public ChannelEngine(int encoderSlots) {
+        this.encoderSlots = encoderSlots;
+
+        clients.addListener(new ClientRegistry.Listener() {
+            @Override
+            public void clientAdded(Client client) {
+                route(client);
+            }
+
+            @Override
+            public void clientRemoved(Client client) {
+                synchronized (routeLock) {
+                    guessed.remove(client);
+                    Channel c = routed.remove(client);
+                    if (c != null) c.getStreamer().removeClient(client);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a channel; the first one added also takes clients whose stream
+     * is unknown. Call before start().
+     */
+    public void add(Channel channel) {
+        List<String> urls = channel.getStreamer().getUrls();
+        for (String url : urls) {
+            Channel other = byGroup.get(groupOf(url));
+            if (other != null) {
+                throw new IllegalArgumentException(channel + " and " + other + " both publish " + url);
+            }
+        }
+        // Lowest bitrate first, as the streamer numbers its renditions
+        for (int i = 0; i < urls.size(); i++) {
+            byGroup.put(groupOf(urls.get(i)), channel);
+            renditionByGroup.put(groupOf(urls.get(i)), i);
+        }
+        channels.add(channel);
+    }
+
+    // How long a channel without viewers keeps running (60 s by default)
+    public void setIdleMs(long idleMs) {
+        this.idleMs = idleMs;
+    }
+
+    // For VlcMonitor: every client of every channel
+    public ClientRegistry getClients() {
+        return clients;
+    }
+
+    public List<Channel> getChannels() {
+        return List.copyOf(channels);
+    }
+
+    /**
+     * The engine's own metrics, and every channel's streamer and expert
+     * under a channel="name" label.
+     */
+    public void registerMetrics(Metrics metrics) {
+        metrics.gauge("encoder_slots", "FFmpeg encoders all channels may run at once", () -> encoderSlots);
+        metrics.gauge("encoder_slots_used", "Encoder slots granted to channels", () -> slotsUsed);
+        metrics.counter("channel_starts_total", "Channels started by the scheduler", starts::sum);
+        metrics.counter("channel_stops_total", "Channels stopped for lack of viewers or slots", stops::sum);
+        metrics.counter("channel_client_moves_total", "Clients that switched channel", moves::sum);
+        metrics.labelled("channel_viewers", "Clients watching each channel",
+                Metrics.Type.GAUGE, sink -> {
+                    for (Channel c : channels) sink.sample(Metrics.label("channel", c.getName()), c.getViewers());
+                });
+        metrics.labelled("channel_encoders", "Encoder slots granted to each channel",
+                Metrics.Type.GAUGE, sink -> {
+                    for (Channel c : channels) sink.sample(Metrics.label("channel", c.getName()), c.getEncoders());
+                });
+
+        for (Channel c : channels) {
+            Metrics scoped = metrics.scoped(Metrics.label("channel", c.getName()));
+            c.getStreamer().registerMetrics(scoped);
+            c.getExpert().registerMetrics(scoped);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Control
+    // ----------------------------------------------------------------------
+    public synchronized void start() {
+        if (running || channels.isEmpty()) return;
+        running = true;
+
+        // Every channel gets idleMs to find an audience
+        long now = System.currentTimeMillis();
+        for (Channel c : channels) {
+            c.lastViewerMs = now;
+            c.getExpert().Start();
+        }
+        LOG.info(channels.size() + " channels, " + encoderSlots + " encoder slots");
+
+        scheduler.scheduleWithFixedDelay(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Channel c : channels) {
+            c.getExpert().End();
+            c.getStreamer().stop();
+            c.on = false;
+        }
+    }
+
+    private void tick() {
+        try {
+            for (Client client : clients) route(client);
+            schedule(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next tick starts from scratch
+            LOG.error("Scheduling failed: " + e);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Routing
+    // ----------------------------------------------------------------------
+
+    // Puts the client in the registry of the channel it is watching
+    private void route(Client client) {
+        if (channels.isEmpty()) return;
+
+        String input = client.getInput();
+        String group = input != null ? groupOf(input) : null;
+        Channel target = group != null ? byGroup.get(group) : null;
+        if (target == null) target = channels.get(0);
+
+        Integer rendition = group != null ? renditionByGroup.get(group) : null;
+        if (rendition != null && target.getStreamer().isMultiGroup()) client.setRendition(rendition);
+
+        synchronized (routeLock) {
+            // Removed by the monitor since
+            if (!clients.contains(client)) return;
+            Channel current = routed.get(client);
+            // Learning where a new client really is doesn't count as a switch
+            boolean wasGuess = group != null && guessed.remove(client);
+            if (current == target) return;
+
+            if (current != null) {
+                current.getStreamer().removeClient(client);
+                if (!wasGuess) moves.increment();
+                LOG.debug(client.getIpAddress() + " moved from " + current + " to " + target);
+            }
+            if (group == null) guessed.add(client);
+            routed.put(client, target);
+            target.getStreamer().addClient(client);
+        }
+    }
+
+    /**
+     * "230.0.1.0:4446" for "udp://@230.0.1.0:4446", "udp://230.0.1.0:4446"
+     * or "rtp://@230.0.1.0:4446", so clients match however they opened it.
+     */
+    static String groupOf(String url) {
+        String s = url.strip();
+        int scheme = s.indexOf("://");
+        if (scheme >= 0) s = s.substring(scheme + 3);
+        if (s.startsWith("@")) s = s.substring(1);
+        int slash = s.indexOf('/');
+        if (slash >= 0) s = s.substring(0, slash);
+        return s.toLowerCase();
+    }
+
+    // ----------------------------------------------------------------------
+    // Scheduling
+    // ----------------------------------------------------------------------
+    private void schedule(long now) {
+        for (Channel c : channels) {
+            c.viewers = c.getStreamer().getClients().size();
+            if (c.viewers > 0) c.lastViewerMs = now;
+        }
+
+        // Held channels first, then by audience, running ones winning ties;
+        // the sort is stable, so equal channels stay in the order added
+        List<Channel> order = new ArrayList<>(channels);
+        order.sort(Comparator
+                .comparing((Channel c) -> !(c.on && now - c.startedMs < HOLD_MS))
+                .thenComparing(c -> -c.viewers)
+                .thenComparing(c -> !c.on));
+
+        int free = encoderSlots;
+        Map<Channel, Integer> granted = new HashMap<>();
+        for (Channel c : order) {
+            boolean wanted = c.viewers > 0 || now - c.lastViewerMs < idleMs;
+            int need = c.getStreamer().getEncoderDemand();
+            if (wanted && need <= free) {
+                granted.put(c, need);
+                free -= need;
+            }
+        }
+
+        List<Channel> standbys = new ArrayList<>();
+        for (Channel c : order) {
+            if (free > 0 && granted.containsKey(c) && c.viewers > 0 && c.wantsStandby()) {
+                standbys.add(c);
+                free--;
+            }
+        }
+
+        for (Channel c : order) {
+            Integer grant = granted.get(c);
+            if (grant == null && c.on) {
+                stopChannel(c, c.viewers == 0 ? "no viewers for " + (now - c.lastViewerMs) / 1000 + " s"
+                                              : "not enough encoder slots for it");
+            }
+        }
+        for (Channel c : order) {
+            Integer grant = granted.get(c);
+            if (grant == null) continue;
+
+            boolean standby = standbys.contains(c);
+            c.encoders = grant + (standby ? 1 : 0);
+            if (!c.on) {
+                // Standby before start() so the streamer brings it up itself
+                c.applyStandby(standby);
+                startChannel(c, now);
+            } else {
+                c.applyStandby(standby);
+            }
+        }
+        slotsUsed = encoderSlots - free;
+    }
+
+    private void startChannel(Channel c, long now) {
+        c.on = true;
+        c.startedMs = now;
+        starts.increment();
+        c.getStreamer().start();
+        LOG.info("Started " + c + " (" + c.viewers + " viewers, " + c.encoders + " encoders)");
+    }
+
+    private void stopChannel(Channel c, String why) {
+        c.on = false;
+        c.encoders = 0;
+        stops.increment();
+        c.getStreamer().stop();
+        c.applyStandby(false);
+        LOG.info("Stopped " + c + ": " + why);
+    }
+}
@@ -1,23 +1,61 @@
 package src;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public class Client {
 
     private final String ipAddress;
+    private final Clock clock;
+
+    // Telemetry extracted by VlcMonitor, replaced as a whole on every change
+    private volatile TelemetrySnapshot telemetry;
+
+    // Heartbeat, written on every RC line; kept out of the snapshot so a
+    // line that changes nothing neither allocates nor publishes
+    private volatile long lastUpdateMs;
+    private volatile boolean updated = false;
 
-    // Telemetry extracted by VlcMonitor
-    private int cachePercent = 100;
-    private boolean isBuffering = false;
-    private int droppedFrames = 0;
-    private int lastDroppedFrames = 0;
+    // Recent samples for trends and the capacity estimate built on them;
+    // both are updated once per stats reply
+    private final TelemetryHistory history = new TelemetryHistory();
+    private final BandwidthEstimator bandwidth = new BandwidthEstimator();
 
-    private boolean updated = false;
-    private long lastUpdateMs = System.currentTimeMillis();
+    private static final VarHandle TELEMETRY;
+
+    static {
+        try {
+            TELEMETRY = MethodHandles.lookup().findVarHandle(Client.class, "telemetry", TelemetrySnapshot.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     // Tracking how long the client has existed
-    private long firstSeen = System.currentTimeMillis();
+    private final long firstSeen;
+
+    // Rendition index the client is subscribed to (multi-group streaming)
+    private volatile int rendition = 0;
+
+    // Stream the client's VLC last reported opening, e.g. "udp://@230.0.1.0:4446";
+    // null until it does. Decides its channel, see ChannelEngine
+    private volatile String input;
+
+    // Running-total bookkeeping, owned by the aggregator it belongs to;
+    // null while it belongs to none
+    volatile TelemetryAggregator.Node aggNode;
 
     public Client(String ipAddress) {
+        this(ipAddress, Clock.SYSTEM);
+    }
+
+    // Timestamps and grace period follow `clock`, e.g. a simulator's
+    public Client(String ipAddress, Clock clock) {
         this.ipAddress = ipAddress;
+        this.clock = clock;
+        this.firstSeen = clock.millis();
+        this.lastUpdateMs = firstSeen;
+        this.telemetry = new TelemetrySnapshot();
     }
 
     public String getIpAddress() {
@@ -28,68 +66,177 @@ public class Client {
     // Telemetry setters
     // ----------------------------------------------------------------------
 
+    // Each setter swaps in a new snapshot with compare-and-set; the RC reader
+    // is normally the only writer, so the loop almost never repeats. Setting
+    // a value it already has changes nothing and reports nothing
+
     public void setCachePercent(int percent) {
-        this.cachePercent = Math.max(0, Math.min(100, percent));
+        int p = Math.max(0, Math.min(100, percent));
+
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withCachePercent(p);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
+
+        if (next != prev) published(prev, next);
     }
 
     public void setIsBuffering(boolean buffering) {
-        this.isBuffering = buffering;
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withBuffering(buffering);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
+
+        if (next != prev) published(prev, next);
     }
 
+    // The next three don't report: no running total counts them, and what
+    // they feed - the capacity estimate - is published by recordSample()
+    // once per stats reply instead of on every row of it
+
     public void setDroppedFrames(int count) {
-        this.lastDroppedFrames = this.droppedFrames;
-        this.droppedFrames = Math.max(0, count);
+        int n = Math.max(0, count);
+
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withDroppedFrames(n);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
     }
 
+    public void setInputBitrateKbps(int kbps) {
+        int k = Math.max(0, kbps);
+
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withInputBitrate(k);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
+    }
+
+    public void setLostPackets(int count) {
+        int n = Math.max(0, count);
+
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withLostPackets(n);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
+    }
+
+    /**
+     * Adds the current telemetry to the history, re-estimates capacity, and
+     * republishes the snapshot if the cache trend or estimate changed.
+     */
+    public void recordSample() {
+        TelemetrySnapshot current = telemetry;
+        boolean falling = history.record(clock.millis(), current);
+        int capacity = bandwidth.update(current, history);
+
+        TelemetrySnapshot prev, next;
+        do {
+            prev = telemetry;
+            next = prev.withTrends(falling, capacity);
+        } while (next != prev && !TELEMETRY.compareAndSet(this, prev, next));
+
+        if (next != prev) published(prev, next);
+    }
+
+    // Heartbeat on every RC line: two volatile writes, and the aggregator
+    // only hears of it when it had counted this client as missing
     public void markUpdated() {
+        lastUpdateMs = clock.millis();
         updated = true;
-        lastUpdateMs = System.currentTimeMillis();
+
+        TelemetryAggregator.Node n = aggNode;
+        if (n != null && n.missing) n.aggregator.heard(n);
     }
 
     public void resetUpdatedFlag() {
         updated = false;
     }
 
+    public boolean isUpdated() {
+        return updated;
+    }
+
+    private void published(TelemetrySnapshot prev, TelemetrySnapshot next) {
+        TelemetryAggregator.Node n = aggNode;
+        if (n != null) n.aggregator.changed(n, prev, next);
+    }
+
     // ----------------------------------------------------------------------
     // Getters
     // ----------------------------------------------------------------------
 
+    /**
+     * All telemetry as of one instant. Prefer this over the single getters
+     * when reading more than one value.
+     */
+    public TelemetrySnapshot getTelemetry() {
+        return telemetry;
+    }
+
     public int getCachePercent() {
-        return cachePercent;
+        return telemetry.getCachePercent();
     }
 
     public boolean isBuffering() {
-        return isBuffering;
+        return telemetry.isBuffering();
     }
 
     public int getDroppedFrames() {
-        return droppedFrames;
+        return telemetry.getDroppedFrames();
     }
 
     public int getDroppedDelta() {
-        return Math.max(0, droppedFrames - lastDroppedFrames);
+        return telemetry.getDroppedDelta();
     }
 
     public long getLastUpdateMs() {
         return lastUpdateMs;
     }
 
+    public TelemetryHistory getHistory() {
+        return history;
+    }
+
+    public BandwidthEstimator getBandwidth() {
+        return bandwidth;
+    }
+
+    public long getFirstSeenMs() {
+        return firstSeen;
+    }
+
+    public int getRendition() {
+        return rendition;
+    }
+
+    public void setRendition(int rendition) {
+        this.rendition = rendition;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public void setInput(String input) {
+        this.input = input;
+    }
+
     // ----------------------------------------------------------------------
     // Derived health logic
     // ----------------------------------------------------------------------
 
     public boolean isHealthy() {
-        // High cache, no buffering, minimal drops
-        return cachePercent >= 80 &&
-                !isBuffering &&
-                getDroppedDelta() == 0;
+        return telemetry.isHealthy();
     }
 
     public boolean isStruggling() {
-        // Buffering or low cache or rising drops
-        return isBuffering ||
-                cachePercent <= 40 ||
-                getDroppedDelta() > 3;
+        return telemetry.isStruggling();
     }
 
     // ----------------------------------------------------------------------
@@ -97,7 +244,7 @@ public class Client {
     // ----------------------------------------------------------------------
 
     public boolean inGracePeriod(int graceCycles, int iterationMs) {
-        long msAlive = System.currentTimeMillis() - firstSeen;
+        long msAlive = clock.millis() - firstSeen;
         return msAlive < (long) graceCycles * iterationMs;
     }
 }
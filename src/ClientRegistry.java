@@ -0,0 +1,87 @@
+package src;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ClientRegistry holds the connected clients keyed by IP address. Adds,
+ * removes and lookups are O(1) and never block readers; iteration walks the
+ * live map without copying and is weakly consistent, so a loop sees every
+ * client that stays connected for its duration and may or may not see ones
+ * that join or leave meanwhile.
+ *
+ * Listeners run on the thread that made the change, after it took effect.
+ */
+public class ClientRegistry implements Iterable<Client> {
+
+    public interface Listener {
+        void clientAdded(Client client);
+
+        void clientRemoved(Client client);
+    }
+
+    private final ConcurrentHashMap<String, Client> byIp = new ConcurrentHashMap<>();
+    private final Collection<Client> view = Collections.unmodifiableCollection(byIp.values());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a client. Returns false, and changes nothing, if a client
+     * with the same IP is already registered.
+     */
+    public boolean add(Client c) {
+        if (byIp.putIfAbsent(c.getIpAddress(), c) != null) return false;
+
+        for (Listener l : listeners) l.clientAdded(c);
+        return true;
+    }
+
+    /**
+     * Unregisters this exact client. A different Client that has since
+     * taken the same IP is left alone.
+     */
+    public boolean remove(Client c) {
+        if (!byIp.remove(c.getIpAddress(), c)) return false;
+
+        for (Listener l : listeners) l.clientRemoved(c);
+        return true;
+    }
+
+    public Client get(String ip) {
+        return byIp.get(ip);
+    }
+
+    public boolean contains(Client c) {
+        return byIp.get(c.getIpAddress()) == c;
+    }
+
+    public int size() {
+        return byIp.size();
+    }
+
+    public boolean isEmpty() {
+        return byIp.isEmpty();
+    }
+
+    @Override
+    public Iterator<Client> iterator() {
+        return view.iterator();
+    }
+
+    /**
+     * Read-only live view of the registered clients.
+     */
+    public Collection<Client> asCollection() {
+        return view;
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+}
@@ -0,0 +1,9 @@
+package src;
+
+/**
+ * Moves a client onto a different rendition. VlcMonitor implements this by
+ * telling the client's VLC instance to open the rendition's group.
+ */
+public interface ClientTuner {
+    void tune(Client client, Rendition rendition);
+}
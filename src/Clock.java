@@ -0,0 +1,15 @@
+package src;
+
+/**
+ * Source of the current time in milliseconds for the adaptation logic.
+ * Everything that decides when a client is stale, in its grace period or
+ * allowed to change reads time from a Clock, so a simulator can run the
+ * controller on time it advances itself.
+ */
+public interface Clock {
+
+    // Wall-clock time
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long millis();
+}
@@ -0,0 +1,106 @@
+package src;
+
+/**
+ * A rule built from a rule file: a conjunction of "metric op number"
+ * conditions, optionally required for several consecutive cycles and gated
+ * on the change cooldown, and one action. Conditions live in primitive
+ * arrays and are checked in order, stopping at the first that fails, so
+ * evaluation allocates nothing.
+ */
+public class ConditionRule implements Rule {
+
+    public enum Action { LOWER, RAISE, HOLD, LOG }
+
+    // Comparison operators, in the order of OPS
+    static final String[] OPS = {">", ">=", "<", "<=", "==", "!="};
+    private static final int GT = 0, GE = 1, LT = 2, LE = 3, EQ = 4, NE = 5;
+
+    private final String name;
+    private final RuleContext.Metric[] metrics;
+    private final int[] ops;
+    private final long[] values;
+    private final int cycles;
+    private final boolean cooldown;
+    private final Action action;
+    private final String message;
+
+    // Consecutive cycles the conditions have held; only used when cycles > 1
+    private int streak = 0;
+
+    public ConditionRule(String name, RuleContext.Metric[] metrics, int[] ops, long[] values,
+                         int cycles, boolean cooldown, Action action, String message) {
+        if (metrics.length != ops.length || ops.length != values.length) {
+            throw new IllegalArgumentException("Rule " + name + ": condition arrays differ in length");
+        }
+        this.name = name;
+        this.metrics = metrics.clone();
+        this.ops = ops.clone();
+        this.values = values.clone();
+        this.cycles = Math.max(1, cycles);
+        this.cooldown = cooldown;
+        this.action = action;
+        this.message = message;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean isTerminal() {
+        return action != Action.LOG;
+    }
+
+    @Override
+    public boolean evaluate(RuleContext ctx) {
+        boolean match = true;
+        for (int i = 0; i < metrics.length; i++) {
+            if (!test(ctx.metric(metrics[i]), ops[i], values[i])) {
+                match = false;
+                break;
+            }
+        }
+
+        if (cycles > 1) {
+            // A miss on any cycle breaks the streak; only ticks extend it
+            if (!match) streak = 0;
+            else if (ctx.isTick()) streak++;
+            if (streak < cycles) return false;
+        } else if (!match) {
+            return false;
+        }
+
+        // Between ticks a change must respect the cooldown even if the rule
+        // doesn't ask for it, or a burst of wakeups could repeat a revert
+        // faster than the periodic loop ever would
+        boolean gated = cooldown || (!ctx.isTick() && (action == Action.LOWER || action == Action.RAISE));
+        if (gated && !ctx.canChange()) return false;
+
+        streak = 0;
+        switch (action) {
+            case LOWER -> ctx.lower();
+            case RAISE -> ctx.raise();
+            case HOLD, LOG -> ctx.log(format(ctx));
+        }
+        return true;
+    }
+
+    private static boolean test(long v, int op, long value) {
+        switch (op) {
+            case GT: return v > value;
+            case GE: return v >= value;
+            case LT: return v < value;
+            case LE: return v <= value;
+            case EQ: return v == value;
+            case NE: return v != value;
+            default: return false;
+        }
+    }
+
+    // Only runs when the rule fires, so building a String here is fine
+    private String format(RuleContext ctx) {
+        if (message == null) return "[EXPERT] " + name;
+        return message.replace("{bitrate}", Integer.toString(ctx.bitrate()));
+    }
+}
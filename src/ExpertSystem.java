@@ -1,8 +1,14 @@
 package src;
 
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import src.RuleContext.Metric;
 
 class BitrateChange {
     int bitrate;
@@ -13,15 +19,47 @@ class BitrateChange {
     }
 }
 
+// Per-client controller state used when every rendition has its own group
+class ClientAssignment {
+    int healthyStreak = 0;
+    long lastChange = 0;
+    // Healthy cycles needed before stepping up; doubles after a failed step up
+    int probeAfter = ExpertSystem.PROBE_MIN_CYCLES;
+    // Stepped up at lastUp and hasn't been judged yet
+    boolean probing = false;
+    long lastUp = 0;
+}
+
 /**
  * ExpertSystem runs a periodic inference step over all clients
  * and adjusts the global bitrate based on rule-based logic.
+ *
+ * When the streamer publishes a multi-group ladder there is no global
+ * bitrate; instead each client is moved up or down the ladder on its own
+ * telemetry, so one struggling viewer doesn't degrade everyone else.
+ *
+ * In EVENTS mode a client that starts buffering or loses cache wakes the
+ * loop straight away instead of waiting out the iteration; the tick still
+ * runs when nothing happens. An early step changes the bitrate only once
+ * the cooldown has passed, and a raise that had to be undone makes the next
+ * one wait longer, so reacting sooner doesn't mean oscillating more.
+ *
+ * Nothing is printed per cycle; what the loop does is published through
+ * registerMetrics(): step latency, bitrate and client moves, rule fires.
  */
 public class ExpertSystem {
 
+    // "EXPERT", or "EXPERT <channel>" once named
+    private Logger log = Logger.get("EXPERT");
+
+    // What starts an inference step:
+    //   PERIODIC - every iterationMs
+    //   EVENTS   - every iterationMs, or debounceMs after a client gets worse
+    public enum TriggerMode { PERIODIC, EVENTS }
+
     private final VideoStreamer streamer;
 
-    private int bitrate;
+    private volatile int bitrate;
     private final int minBitrate;
     private final int maxBitrate;
     private final int increment;
@@ -30,17 +68,55 @@ public class ExpertSystem {
     private volatile boolean running = false;
     private Thread loopThread;
 
+    private Clock clock = Clock.SYSTEM;
+
+    private TriggerMode triggerMode = TriggerMode.PERIODIC;
+    private long debounceMs = 0;
+    // Set by the aggregator's wakeup hook, cleared by the loop before a step
+    private volatile boolean woken = false;
+
     // For controlling oscillation
     private final Queue<BitrateChange> history = new LinkedList<>();
     private long lastChange = 0;
 
-    // Streak tracking
-    private int healthyStreak = 0;
-    private int noBufferingStreak = 0;
+    // Global adaptation rules; streaks live in the rules themselves
+    private volatile RulePlan rules;
+    private final Context context = new Context();
+
+    // Duration of every inference step
+    private final LatencyHistogram stepLatency = new LatencyHistogram();
+    private final LongAdder bitrateChanges = new LongAdder();
+    private final LongAdder clientMoves = new LongAdder();
+    // Global changes and client moves per second over the last minute,
+    // indexed by second % 60; written by the loop only
+    private final long[] changeSecond = new long[60];
+    private final int[] changeCount = new int[60];
 
     // Grace period for new clients
     private final int graceCycles = 5;
 
+    // Rate targets come from this percentile of estimated client capacity,
+    // i.e. a rate 90% of viewers can sustain
+    private final int capacityPercentile = 10;
+    private TelemetryAggregator.Sample sample;
+
+    // A step up undone within PROBE_FAILED_MS failed; each failure doubles
+    // the healthy streak a client needs before trying again
+    static final int PROBE_MIN_CYCLES = 3;
+    static final int PROBE_MAX_CYCLES = 240;
+    static final long PROBE_FAILED_MS = 60_000;
+
+    // The same policy for the global bitrate: once a raise has been undone,
+    // the next waits probeAfter cycles after the last change, doubling with
+    // each further failure
+    private int probeAfter = PROBE_MIN_CYCLES;
+    private boolean probing = false;
+    private long lastRaise = 0;
+
+    // Multi-group mode: moves individual clients between renditions
+    private ClientTuner tuner;
+    private final Map<Client, ClientAssignment> assignments = new HashMap<>();
+
     public ExpertSystem(
             VideoStreamer streamer,
             int initialBitrate,
@@ -55,6 +131,88 @@ public class ExpertSystem {
         this.maxBitrate = max;
         this.increment = inc;
         this.iterationMs = iter;
+
+        streamer.getTelemetry().setGracePeriodMs((long) graceCycles * iter);
+        this.rules = RuleSetLoader.defaults(iter);
+    }
+
+    // Log lines as "EXPERT <name>", e.g. the channel this expert adapts
+    public void setName(String name) {
+        this.log = Logger.get("EXPERT " + name);
+    }
+
+    /**
+     * Replaces the global rule set, e.g. with one loaded from a file by
+     * RuleSetLoader. Call before Start().
+     */
+    public void setRules(RulePlan rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Replaces wall-clock time for every decision, e.g. with a simulator's
+     * clock, which should be shared with the clients. A simulated clock is
+     * meant for driving runOnce() directly rather than Start().
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void setTuner(ClientTuner tuner) {
+        this.tuner = tuner;
+    }
+
+    /**
+     * Chooses what starts an inference step. In EVENTS mode transitions
+     * that arrive within debounceMs of the first are handled by one step,
+     * so a storm across many clients is seen as a whole. Call before Start().
+     */
+    public void setTriggerMode(TriggerMode mode, long debounceMs) {
+        this.triggerMode = mode;
+        this.debounceMs = Math.max(0, debounceMs);
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.histogram("expert_step_seconds", "Duration of one inference step", stepLatency);
+        metrics.counter("expert_bitrate_changes_total", "Global bitrate changes", bitrateChanges::sum);
+        metrics.counter("expert_client_moves_total", "Clients moved to another rendition", clientMoves::sum);
+        metrics.gauge("expert_changes_last_minute",
+                "Bitrate changes and client moves in the last 60 s", this::changesLastMinute);
+
+        if (streamer.isMultiGroup()) {
+            metrics.labelled("expert_rendition_clients", "Clients assigned to each rendition",
+                    Metrics.Type.GAUGE, this::collectRenditionClients);
+        } else {
+            metrics.gauge("expert_bitrate_kbps", "Current global bitrate", () -> bitrate);
+        }
+
+        metrics.labelled("expert_rule_fires_total", "Times each global rule fired",
+                Metrics.Type.COUNTER, sink -> {
+                    RulePlan plan = rules;
+                    for (int i = 0; i < plan.size(); i++) {
+                        sink.sample(Metrics.label("rule", plan.name(i)), plan.fires(i));
+                    }
+                });
+        metrics.labelled("expert_rule_eval_seconds_total", "Time spent evaluating each global rule",
+                Metrics.Type.COUNTER, sink -> {
+                    RulePlan plan = rules;
+                    for (int i = 0; i < plan.size(); i++) {
+                        sink.sample(Metrics.label("rule", plan.name(i)), plan.evalNanos(i) / 1e9);
+                    }
+                });
+    }
+
+    // One walk over the clients per scrape, not per cycle
+    private void collectRenditionClients(Metrics.Sink sink) {
+        List<Rendition> ladder = streamer.getRenditions();
+        int[] counts = new int[ladder.size()];
+        for (Client c : streamer.getClients()) {
+            int r = c.getRendition();
+            if (r >= 0 && r < counts.length) counts[r]++;
+        }
+        for (Rendition r : ladder) {
+            sink.sample(Metrics.label("kbps", r.getBitrateKbps()), counts[r.getIndex()]);
+        }
     }
 
     public void Start() {
@@ -63,173 +221,273 @@ public class ExpertSystem {
 
         loopThread = new Thread(this::loop, "ExpertSystemLoop");
         loopThread.setDaemon(false);
+        if (triggerMode == TriggerMode.EVENTS) {
+            streamer.getTelemetry().setWakeup(this::wake);
+        }
         loopThread.start();
     }
 
     public void End() {
         running = false;
+        streamer.getTelemetry().setWakeup(null);
+        LockSupport.unpark(loopThread);
         try {
             if (loopThread != null) loopThread.join();
         } catch (InterruptedException ignored) {}
     }
 
+    // Called on RC reader threads, possibly many at once
+    private void wake() {
+        if (woken) return;
+        woken = true;
+        LockSupport.unpark(loopThread);
+    }
+
     private void loop() {
+        long nextTick = clock.millis();
+
         while (running) {
 
-            long start = System.currentTimeMillis();
+            // Wait for the tick, or in EVENTS mode for a client to get worse
+            boolean tick = true;
+            long now;
+            while (running && (now = clock.millis()) < nextTick) {
+                if (woken) {
+                    // Let the rest of a storm land before sampling
+                    long settle = Math.min(debounceMs, nextTick - now);
+                    if (settle > 0) {
+                        try { Thread.sleep(settle); } catch (InterruptedException ignored) {}
+                    }
+                    tick = clock.millis() >= nextTick;
+                    break;
+                }
+                LockSupport.parkNanos(this, (nextTick - now) * 1_000_000);
+            }
+            if (!running) break;
+
+            woken = false;
+            if (tick) nextTick += iterationMs;
             try {
-                runOnce();
+                runOnce(tick);
             } catch (Exception e) {
-                System.err.println("[EXPERT] Error: " + e.getMessage());
+                log.error("Error: " + e.getMessage());
             }
 
-            long elapsed = System.currentTimeMillis() - start;
-            long sleep = iterationMs - elapsed;
-            if (sleep > 0) {
-                try { Thread.sleep(sleep); } catch (InterruptedException ignored) {}
-            }
+            // Don't try to catch up on ticks missed by a slow step
+            now = clock.millis();
+            if (nextTick < now) nextTick = now;
         }
     }
 
     // ----------------------------------------------------------------------
-    // One inference step
+    // One inference step (package-private so benchmarks can drive it)
     // ----------------------------------------------------------------------
-    private void runOnce() {
+    void runOnce() {
+        runOnce(true);
+    }
 
-        Vector<Client> clients = new Vector<>(streamer.getClients());
-        if (clients.isEmpty()) {
-            return;
+    // `tick` is false for a step started early by a client transition:
+    // decreases can fire once the cooldown allows, but streaks toward an
+    // increase don't advance
+    void runOnce(boolean tick) {
+        long start = System.nanoTime();
+        try {
+            step(tick);
+        } finally {
+            stepLatency.record(System.nanoTime() - start);
         }
+    }
 
-        int total = clients.size();
-        int activeCount = 0;
-        int bufferingCount = 0;
-        int missingCount = 0;
-
-        int sumCache = 0;
-
-        for (Client c : clients) {
+    private void step(boolean tick) {
 
-            if (c.inGracePeriod(graceCycles, iterationMs)) {
-                continue;
-            }
+        // Running totals kept by the clients; no walk over the client list
+        sample = streamer.getTelemetry().sample(clock.millis());
+        if (sample.total == 0) {
+            return;
+        }
 
-            activeCount++;
+        if (streamer.isMultiGroup() && tuner != null) {
+            runPerClient(streamer.getClients(), tick);
+            return;
+        }
 
-            if (!recent(c)) {
-                missingCount++;
-            }
+        if (sample.active == 0) return;
 
-            if (c.isBuffering()) {
-                bufferingCount++;
-            }
+        int avgCache = sample.avgCache();
+        int percentBuffering = sample.percentBuffering();
+        int percentMissing = sample.percentMissing();
+        int percentFalling = sample.percentFalling();
 
-            sumCache += c.getCachePercent();
+        // Global rules, in the order the rule set lists them
+        long now = clock.millis();
+        if (probing && now - lastRaise >= PROBE_FAILED_MS) {
+            probing = false;
+            probeAfter = PROBE_MIN_CYCLES;
         }
+        context.tick = tick;
+        context.set(Metric.PERCENT_BUFFERING, percentBuffering);
+        context.set(Metric.AVG_CACHE, avgCache);
+        context.set(Metric.PERCENT_MISSING, percentMissing);
+        context.set(Metric.PERCENT_FALLING, percentFalling);
+        context.set(Metric.ACTIVE_CLIENTS, sample.active);
+        context.set(Metric.BITRATE, bitrate);
+        context.set(Metric.ABOVE_MIN, bitrate - minBitrate);
+        context.set(Metric.BELOW_MAX, maxBitrate - bitrate);
+        context.set(Metric.RECENT_CHANGES, history.size());
+        context.set(Metric.MS_SINCE_FIRST_CHANGE, history.isEmpty() ? Long.MAX_VALUE : now - history.peek().timestamp);
+        rules.evaluate(context);
+    }
 
-        if (activeCount == 0) return;
+    // ----------------------------------------------------------------------
+    // Per-client assignment (multi-group ladder)
+    // ----------------------------------------------------------------------
+    private void runPerClient(ClientRegistry clients, boolean tick) {
 
-        int avgCache = sumCache / activeCount;
-        int percentBuffering = (int)((bufferingCount * 100.0) / activeCount);
-        int percentMissing = (int)((missingCount * 100.0) / activeCount);
+        List<Rendition> ladder = streamer.getRenditions();
+        long now = clock.millis();
 
-        boolean changed = false;
+        // Forget clients that have left
+        assignments.keySet().removeIf(c -> !clients.contains(c));
 
-        // ============================================================
-        // Rule 1: If >X% buffering, decrease bitrate
-        // ============================================================
-        if (Rule1_BufferingTooHigh(percentBuffering)) {
-            changed = true;
-        }
+        for (Client c : clients) {
 
-        // ============================================================
-        // Rule 2: If <X% buffering for Y cycles, increase bitrate
-        // ============================================================
-        if (!changed && Rule2_BufferingLow(percentBuffering)) {
-            changed = true;
-        }
+            if (c.inGracePeriod(graceCycles, iterationMs)) {
+                continue;
+            }
 
-        // ============================================================
-        // Rule 3: If buffering spike after increase, revert bitrate
-        // ============================================================
-        if (!changed && Rule3_RevertIfSpike(percentBuffering)) {
-            changed = true;
-        }
+            ClientAssignment a = assignments.computeIfAbsent(c, k -> new ClientAssignment());
+            int current = c.getRendition();
+            boolean cooledDown = now - a.lastChange >= 5000;
+
+            // One consistent view of this client for the whole decision
+            TelemetrySnapshot t = c.getTelemetry();
+
+            // Same thresholds as the global rules, applied to one client:
+            // struggling or a falling cache steps down (Rules 1/5/11),
+            // a healthy streak steps up (Rule 2)
+            // With a capacity estimate, moves go straight to the highest rung it fits
+            int capacity = t.getCapacityKbps();
+
+            // The cache trend spans minutes, so it still reads as falling for
+            // a while after a step down; only act on it while probing or steady
+            boolean recentDrop = !a.probing && now - a.lastChange < PROBE_FAILED_MS;
+            boolean falling = t.isCacheFalling() && !recentDrop;
+
+            if (t.isStruggling() || falling) {
+                a.healthyStreak = 0;
+                if (current > 0 && cooledDown) {
+                    int down = current - 1;
+                    if (capacity > 0) down = Math.min(down, rungAtOrBelow(ladder, capacity));
+                    // Backing out of a fresh step up: wait longer before the next.
+                    // A drop long after any change means conditions changed: start over
+                    if (a.probing && now - a.lastUp < PROBE_FAILED_MS) {
+                        a.probeAfter = Math.min(PROBE_MAX_CYCLES, a.probeAfter * 2);
+                    } else if (now - a.lastChange >= PROBE_FAILED_MS) {
+                        a.probeAfter = PROBE_MIN_CYCLES;
+                    }
+                    a.probing = false;
+                    assign(c, a, ladder.get(down), now);
+                }
+                continue;
+            }
 
-        // ============================================================
-        // Rule 4: If too many bitrate adjustments recently, freeze
-        // ============================================================
-        if (!changed && Rule4_TooManyChanges()) {
-            changed = true;
-        }
+            // A step up that held is a success
+            if (a.probing && now - a.lastUp >= PROBE_FAILED_MS) {
+                a.probing = false;
+                a.probeAfter = PROBE_MIN_CYCLES;
+            }
 
-        // ============================================================
-        // Rule 5: If average cache low (proxy for buffer length low), decrease
-        // ============================================================
-        if (!changed && Rule5_CacheLow(avgCache)) {
-            changed = true;
+            if (!(t.isHealthy() && recent(c))) a.healthyStreak = 0;
+            else if (tick) a.healthyStreak++;
+
+            if (a.healthyStreak >= a.probeAfter && current < ladder.size() - 1 && cooledDown) {
+                // At least one rung, unless the estimate is below this one
+                int up = current + 1;
+                if (capacity > 0) {
+                    up = capacity < ladder.get(current).getBitrateKbps()
+                            ? current
+                            : Math.max(up, rungAtOrBelow(ladder, capacity));
+                }
+                if (up > current) {
+                    a.healthyStreak = 0;
+                    a.probing = true;
+                    a.lastUp = now;
+                    assign(c, a, ladder.get(up), now);
+                }
+            }
         }
+    }
 
-        // ============================================================
-        // Rule 6: If average cache high, increase or maintain
-        // ============================================================
-        if (!changed && Rule6_CacheHigh(avgCache)) {
-            changed = true;
+    // Highest rung whose bitrate is at most kbps, or the lowest rung
+    private static int rungAtOrBelow(List<Rendition> ladder, int kbps) {
+        int best = 0;
+        for (Rendition r : ladder) {
+            if (r.getBitrateKbps() <= kbps) best = r.getIndex();
         }
+        return best;
+    }
 
-        // ============================================================
-        // Rule 7: If missing telemetry from X% of clients, precaution decrease
-        // ============================================================
-        if (!changed && Rule7_MissingTelemetry(percentMissing)) {
-            changed = true;
-        }
+    private void assign(Client c, ClientAssignment a, Rendition r, long now) {
+        log.info("Client " + c.getIpAddress() + " → " + r);
+        c.setRendition(r.getIndex());
+        a.lastChange = now;
+        tuner.tune(c, r);
+        clientMoves.increment();
+        countChange(now);
+    }
 
-        // ============================================================
-        // Rule 8: If no buffering for Y minutes, mark baseline
-        // ============================================================
-        if (!changed) {
-            Rule8_RecordBaseline(percentBuffering);
-        }
+    private boolean recent(Client c) {
+        return clock.millis() - c.getLastUpdateMs() < 15000;
+    }
 
-        // ============================================================
-        // Rule 9: If at minimum bitrate and still buffering, alert
-        // ============================================================
-        if (!changed) {
-            Rule9_MinBitrateStillBuffering(percentBuffering);
-        }
+    // ----------------------------------------------------------------------
+    // Rate targets
+    // ----------------------------------------------------------------------
 
-        // ============================================================
-        // Rule 10: If stable for Y minutes, log session stable
-        // ============================================================
-        if (!changed) {
-            Rule10_StableSession(percentBuffering);
-        }
+    // Next rate down: straight to the capacity target when that is lower
+    // than one increment down, so a big drop converges in one step
+    private int lower() {
+        int stepped = Math.max(minBitrate, bitrate - increment);
+        int target = capacityTarget();
+        return target > 0 ? Math.min(stepped, target) : stepped;
+    }
 
-        System.out.println();
-        Main.printClientStats(streamer.getClients());
+    // Next rate up: nowhere if the target is below the current rate (the
+    // audience is already short), else at least one increment. A clean
+    // client's estimate only runs a little ahead of what it receives, so
+    // the target alone would never probe past the current rate
+    private int raise() {
+        int stepped = Math.min(maxBitrate, bitrate + increment);
+        int target = capacityTarget();
+        if (target > 0 && target < bitrate) return bitrate;
+        return Math.max(stepped, target);
     }
 
-    private boolean recent(Client c) {
-        return System.currentTimeMillis() - c.getLastUpdateMs() < 15000;
+    // Capacity percentile snapped down onto the min + k * increment grid,
+    // 0 while fewer than half the active clients have an estimate
+    private int capacityTarget() {
+        if (sample == null || sample.estimated * 2 < sample.active) return 0;
+
+        int kbps = sample.capacityPercentile(capacityPercentile);
+        int snapped = minBitrate + Math.max(0, (kbps - minBitrate) / increment) * increment;
+        return Math.max(minBitrate, Math.min(maxBitrate, snapped));
     }
 
     private boolean canChange() {
-        return System.currentTimeMillis() - lastChange >= 5000;
+        return clock.millis() - lastChange >= rules.getCooldownMs();
     }
 
     private void applyChange(int newRate) {
 
         if (newRate == bitrate) return;
 
-        System.out.println();
-        System.out.println("====================================================");
-        System.out.println("      BITRATE CHANGE: " + bitrate + " → " + newRate + " kbps");
-        System.out.println("====================================================");
-        System.out.println();
+        log.info("BITRATE CHANGE: " + bitrate + " → " + newRate + " kbps");
 
         bitrate = newRate;
-        lastChange = System.currentTimeMillis();
+        lastChange = clock.millis();
         history.add(new BitrateChange(newRate, lastChange));
+        bitrateChanges.increment();
+        countChange(lastChange);
 
         // trim 1-minute window
         long cutoff = lastChange - 60000;
@@ -240,114 +498,97 @@ public class ExpertSystem {
         streamer.setBitrate(newRate);
     }
 
-    // ----------------------------------------------------------------------
-    // Rule implementations
-    // ----------------------------------------------------------------------
-
-    // Rule 1: >X% buffering → decrease
-    private boolean Rule1_BufferingTooHigh(int percentBuffering) {
-        if (percentBuffering > 40 && canChange()) {
-            applyChange(Math.max(minBitrate, bitrate - increment));
-            return true;
+    private void countChange(long now) {
+        long second = now / 1000;
+        int i = (int) (second % 60);
+        if (changeSecond[i] != second) {
+            changeSecond[i] = second;
+            changeCount[i] = 0;
         }
-        return false;
+        changeCount[i]++;
     }
 
-    // Rule 2: <X% buffering for Y cycles → increase
-    private boolean Rule2_BufferingLow(int percentBuffering) {
-        if (percentBuffering == 0) healthyStreak++;
-        else healthyStreak = 0;
-
-        if (healthyStreak >= 3 && canChange()) {
-            healthyStreak = 0;
-            applyChange(Math.min(maxBitrate, bitrate + increment));
-            return true;
+    // Read by metrics scrapes; a bucket being reset may be off by one
+    private int changesLastMinute() {
+        long second = clock.millis() / 1000;
+        int total = 0;
+        for (int i = 0; i < 60; i++) {
+            if (second - changeSecond[i] < 60) total += changeCount[i];
         }
-        return false;
+        return total;
     }
 
-    // Rule 3: spike after increase → revert
-    private boolean Rule3_RevertIfSpike(int percentBuffering) {
-        if (history.size() < 1) return false;
-
-        BitrateChange last = history.peek();
-        long dt = System.currentTimeMillis() - last.timestamp;
-
-        if (dt < 15000 && percentBuffering > 30) {
-            applyChange(Math.max(minBitrate, bitrate - increment));
-            return true;
+    // ----------------------------------------------------------------------
+    // What the rules see and do
+    // ----------------------------------------------------------------------
+    private final class Context implements RuleContext {
+        private final long[] metrics = new long[Metric.values().length];
+        // Sources named by a rule message's leading "[TAG] "
+        private final Map<String, Logger> logs = new HashMap<>();
+        boolean tick = true;
+
+        void set(Metric m, long value) {
+            metrics[m.ordinal()] = value;
         }
-        return false;
-    }
 
-    // Rule 4: too many changes → freeze
-    private boolean Rule4_TooManyChanges() {
-        if (history.size() >= 4) {
-            long now = System.currentTimeMillis();
-            long first = history.peek().timestamp;
-            if (now - first < 30000) {
-                System.out.println("[EXPERT] Too many changes recently, holding bitrate.");
-                return true;
-            }
+        @Override
+        public long metric(Metric m) {
+            return metrics[m.ordinal()];
         }
-        return false;
-    }
 
-    // Rule 5: low cache → decrease
-    private boolean Rule5_CacheLow(int avgCache) {
-        if (avgCache < 40 && canChange()) {
-            applyChange(Math.max(minBitrate, bitrate - increment));
-            return true;
+        @Override
+        public boolean isTick() {
+            return tick;
         }
-        return false;
-    }
 
-    // Rule 6: high cache → optional slight increase
-    private boolean Rule6_CacheHigh(int avgCache) {
-        if (avgCache > 90 && canChange()) {
-            applyChange(Math.min(maxBitrate, bitrate + increment));
-            return true;
+        @Override
+        public boolean canChange() {
+            return ExpertSystem.this.canChange();
         }
-        return false;
-    }
 
-    // Rule 7: missing telemetry → precaution decrease
-    private boolean Rule7_MissingTelemetry(int missingPercent) {
-        if (missingPercent > 30 && canChange()) {
-            applyChange(Math.max(minBitrate, bitrate - increment));
-            return true;
+        @Override
+        public int bitrate() {
+            return bitrate;
         }
-        return false;
-    }
-
-    // Rule 8: no buffering for Y minutes → record baseline
-    private void Rule8_RecordBaseline(int percentBuffering) {
-        if (percentBuffering == 0) noBufferingStreak++;
-        else noBufferingStreak = 0;
 
-        int cyclesNeeded = (60_000 / iterationMs); // 1 minute
-        if (noBufferingStreak >= cyclesNeeded) {
-            System.out.println("[EXPERT] Baseline stable bitrate: " + bitrate);
-            noBufferingStreak = 0;
+        @Override
+        public void lower() {
+            int next = ExpertSystem.this.lower();
+            if (next == bitrate) return;
+
+            // Backing out of a fresh raise: wait longer before the next.
+            // A drop long after any change means conditions changed: start over
+            long now = clock.millis();
+            if (probing && now - lastRaise < PROBE_FAILED_MS) {
+                probeAfter = Math.min(PROBE_MAX_CYCLES, probeAfter * 2);
+            } else if (now - lastChange >= PROBE_FAILED_MS) {
+                probeAfter = PROBE_MIN_CYCLES;
+            }
+            probing = false;
+            applyChange(next);
         }
-    }
 
-    // Rule 9: at min bitrate + buffering persists
-    private void Rule9_MinBitrateStillBuffering(int percentBuffering) {
-        if (bitrate == minBitrate && percentBuffering > 50) {
-            System.out.println("[EXPERT] WARNING: minimum bitrate but buffering persists.");
-        }
-    }
+        @Override
+        public void raise() {
+            long now = clock.millis();
+            if (probeAfter > PROBE_MIN_CYCLES && now - lastChange < (long) probeAfter * iterationMs) return;
 
-    // Rule 10: fully stable for Y minutes
-    private void Rule10_StableSession(int percentBuffering) {
-        int cyclesNeeded = (60_000 / iterationMs);
-        if (percentBuffering == 0) healthyStreak++;
-        else healthyStreak = 0;
+            int next = ExpertSystem.this.raise();
+            if (next == bitrate) return;
+            probing = true;
+            lastRaise = now;
+            applyChange(next);
+        }
 
-        if (healthyStreak >= cyclesNeeded) {
-            System.out.println("[EXPERT] Session is stable at current bitrate.");
-            healthyStreak = 0;
+        @Override
+        public void log(String message) {
+            Logger out = log;
+            int close = message.startsWith("[") ? message.indexOf("] ") : -1;
+            if (close > 1) {
+                out = logs.computeIfAbsent(message.substring(1, close), Logger::get);
+                message = message.substring(close + 2);
+            }
+            out.info(message);
         }
     }
 }
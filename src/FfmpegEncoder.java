@@ -0,0 +1,181 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FfmpegEncoder owns one FFmpeg process that writes MPEG-TS to stdout.
+ * A reader thread re-frames stdout into 188-byte packets in a pooled direct
+ * buffer and hands each one to a PacketSink; stderr goes to the log.
+ *
+ * If the process exits without stop() having been called, the ExitListener
+ * (see FfmpegSupervisor) is told once stdout closes.
+ */
+public class FfmpegEncoder {
+
+    // Ending sooner than this, even cleanly, is a failure (e.g. seeking past the end)
+    static final long MIN_RUN_MS = 1000;
+
+    public interface PacketSink {
+        // buf[off .. off+188) holds one TS packet; only valid during the call
+        void onPacket(FfmpegEncoder encoder, ByteBuffer buf, int off);
+    }
+
+    public interface ExitListener {
+        // The process ended on its own; exitCode is -1 if it couldn't be read
+        void onExit(FfmpegEncoder encoder, int exitCode);
+    }
+
+    private final String name;
+    private final List<String> command;
+    private final PacketSink sink;
+    private final TsBufferPool readPool;
+
+    private volatile Process process;
+    private volatile long startedNanos;
+    // When it exited on its own, 0 while running or if stopped
+    private volatile long exitedNanos;
+    private volatile int exitCode = -1;
+    private volatile ExitListener exitListener;
+    // stderr and reader errors, tagged with this encoder's name
+    private final Logger log;
+
+    public FfmpegEncoder(String name, List<String> command, PacketSink sink, TsBufferPool readPool) {
+        this.name = name;
+        this.log = Logger.get("FFMPEG " + name);
+        this.command = command;
+        this.sink = sink;
+        this.readPool = readPool;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setExitListener(ExitListener listener) {
+        this.exitListener = listener;
+    }
+
+    public void start() throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        Process p = pb.start();
+        startedNanos = System.nanoTime();
+        exitedNanos = 0;
+        exitCode = -1;
+        process = p;
+
+        new Thread(() -> readPackets(p), "FFmpegTS-" + name).start();
+        new Thread(() -> readLog(p), "FFmpegReader-" + name).start();
+    }
+
+    public void stop() {
+        Process p = process;
+        process = null;
+        if (p != null) p.destroyForcibly();
+    }
+
+    public boolean isAlive() {
+        Process p = process;
+        return p != null && p.isAlive();
+    }
+
+    // 0 when FFmpeg reached the end of its input; -1 while running, if
+    // stopped, or if it didn't exit when its output closed
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * True once FFmpeg has exited on its own after reaching the end of its
+     * input: exit code 0 after a real run. FfmpegSupervisor and VideoStreamer
+     * both go by this, so an exit is never a crash to one and an end to the other.
+     */
+    public boolean reachedEndOfInput() {
+        return exitCode == 0 && exitedNanos != 0 && getUptimeMs() >= MIN_RUN_MS;
+    }
+
+    // Time since start(), or how long it ran if it has exited on its own
+    public long getUptimeMs() {
+        long end = exitedNanos != 0 ? exitedNanos : System.nanoTime();
+        return (end - startedNanos) / 1_000_000;
+    }
+
+    // ----------------------------------------------------------------------
+    // Readers
+    // ----------------------------------------------------------------------
+    private void readPackets(Process p) {
+        ByteBuffer buf = readPool.acquire();
+
+        try (ReadableByteChannel in = Channels.newChannel(p.getInputStream())) {
+            while (in.read(buf) >= 0) {
+                int filled = buf.position();
+
+                int off = 0;
+                while (filled - off >= TsPacket.SIZE) {
+                    if (buf.get(off) != TsPacket.SYNC) {
+                        // Lost sync, slide forward one byte at a time
+                        off++;
+                        continue;
+                    }
+                    sink.onPacket(this, buf, off);
+                    off += TsPacket.SIZE;
+                }
+
+                // Keep any partial packet for the next read
+                buf.limit(filled).position(off);
+                buf.compact();
+            }
+        } catch (IOException e) {
+            if (process == p) {
+                log.warn("stdout closed: " + e.getMessage());
+            }
+        } catch (CancellationException e) {
+            // The sink's sender gave up on this thread; FFmpeg can't be drained any more
+            if (process == p) {
+                log.warn("Packet reader stopped: " + e.getMessage());
+            }
+        } finally {
+            readPool.release(buf);
+        }
+
+        // stdout closed but nobody called stop(): FFmpeg has exited or is about to
+        if (process == p) exited(p);
+    }
+
+    private void exited(Process p) {
+        int code = -1;
+        try {
+            if (p.waitFor(1, TimeUnit.SECONDS)) code = p.exitValue();
+            else p.destroyForcibly();
+        } catch (InterruptedException ignored) {
+        }
+        exitedNanos = System.nanoTime();
+        exitCode = code;
+
+        ExitListener listener = exitListener;
+        if (process != p) return;
+        process = null;
+        if (listener != null) listener.onExit(this, code);
+    }
+
+    private void readLog(Process p) {
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(p.getErrorStream()))) {
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                log.info(line);
+            }
+
+        } catch (IOException e) {
+            log.error("Reader exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package src;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FfmpegSupervisor restarts encoders whose FFmpeg process exits on its own:
+ * a crash, a process killed from outside, a broken pipe. What a restart
+ * means is up to the owner (VideoStreamer relaunches from the position
+ * viewers last got), so each watched encoder comes with a Relaunch, and
+ * optionally a Failover that runs before any backoff to put viewers on
+ * something that is already running.
+ *
+ * The first exit in a slot is relaunched at once. If the replacement dies
+ * again before it has run for STABLE_MS, or fails to start, the delay
+ * doubles from 250 ms up to 10 s, so a missing input or a bad option
+ * doesn't spin. Reaching the end of the input (exit code 0 after a real
+ * run) isn't a failure: it isn't counted as an exit, it resets the slot,
+ * and Failover and Relaunch still run at once so the owner can start over
+ * or stop (FfmpegEncoder.reachedEndOfInput() tells the two apart, here and
+ * in VideoStreamer).
+ * Everything runs on one "FfmpegSupervisor" thread.
+ */
+public class FfmpegSupervisor {
+
+    private static final Logger LOG = Logger.get("FFMPEG");
+
+    private static final long FIRST_RETRY_MS = 250;
+    private static final long MAX_RETRY_MS = 10_000;
+    // A process that ran this long resets its slot's backoff
+    private static final long STABLE_MS = 30_000;
+
+    public interface Failover {
+        // Runs as soon as the exit is seen; must not start FFmpeg
+        void failover(FfmpegEncoder exited, long exitedNanos);
+    }
+
+    public interface Relaunch {
+        // Throwing schedules another attempt after the next backoff delay
+        void relaunch(FfmpegEncoder exited, long exitedNanos) throws IOException;
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "FfmpegSupervisor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile boolean running = false;
+
+    // Consecutive short-lived exits or failed starts per slot
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    private final LongAdder exits = new LongAdder();
+    private final LongAdder inputEnds = new LongAdder();
+    private final LongAdder failedStarts = new LongAdder();
+
+    public void start() {
+        running = true;
+    }
+
+    // Pending relaunches are dropped; a stopped encoder never reports an exit
+    public void stop() {
+        running = false;
+        failures.clear();
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.counter("ffmpeg_exits_total", "FFmpeg processes that exited without being stopped", exits::sum);
+        metrics.counter("ffmpeg_input_ends_total", "FFmpeg processes that reached the end of their input", inputEnds::sum);
+        metrics.counter("ffmpeg_failed_starts_total", "Relaunches that could not start FFmpeg", failedStarts::sum);
+    }
+
+    /**
+     * Relaunches the encoder through `relaunch` whenever it exits on its
+     * own. Encoders sharing a slot share a backoff.
+     */
+    public void watch(String slot, FfmpegEncoder encoder, Relaunch relaunch) {
+        watch(slot, encoder, null, relaunch);
+    }
+
+    public void watch(String slot, FfmpegEncoder encoder, Failover failover, Relaunch relaunch) {
+        encoder.setExitListener((enc, code) -> exited(slot, enc, code, failover, relaunch));
+    }
+
+    // Runs a task on the supervisor thread, after any relaunch already queued
+    public void execute(Runnable task) {
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void exited(String slot, FfmpegEncoder encoder, int code, Failover failover, Relaunch relaunch) {
+        long exitedNanos = System.nanoTime();
+        if (!running) return;
+
+        long uptimeMs = encoder.getUptimeMs();
+        if (encoder.reachedEndOfInput()) {
+            // End of input: no backoff, and the owner decides what comes next
+            inputEnds.increment();
+            failures.remove(slot);
+            LOG.info(encoder.getName() + " reached the end of its input after " + uptimeMs / 1000.0 + " s");
+            if (failover != null) execute(() -> failover.failover(encoder, exitedNanos));
+            schedule(slot, encoder, exitedNanos, relaunch, 0);
+            return;
+        }
+
+        exits.increment();
+        int n = failures.merge(slot, 1, (prev, one) -> uptimeMs >= STABLE_MS ? 1 : prev + 1);
+        long delay = delayFor(n);
+
+        LOG.warn(encoder.getName() + " exited with code " + code + " after " + uptimeMs / 1000.0
+                + " s, restarting " + (delay == 0 ? "now" : "in " + delay + " ms"));
+        if (failover != null) execute(() -> failover.failover(encoder, exitedNanos));
+        schedule(slot, encoder, exitedNanos, relaunch, delay);
+    }
+
+    // 0 for the first exit, then 250 ms doubling to MAX_RETRY_MS
+    private static long delayFor(int failures) {
+        if (failures <= 1) return 0;
+        return Math.min(MAX_RETRY_MS, FIRST_RETRY_MS << Math.min(failures - 2, 16));
+    }
+
+    private void schedule(String slot, FfmpegEncoder exited, long exitedNanos, Relaunch relaunch, long delayMs) {
+        try {
+            scheduler.schedule(() -> attempt(slot, exited, exitedNanos, relaunch), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void attempt(String slot, FfmpegEncoder exited, long exitedNanos, Relaunch relaunch) {
+        if (!running) return;
+        try {
+            relaunch.relaunch(exited, exitedNanos);
+        } catch (IOException e) {
+            failedStarts.increment();
+            long delay = delayFor(failures.merge(slot, 1, Integer::sum));
+            LOG.error("Could not restart " + exited.getName() + ": " + e.getMessage()
+                    + ", retrying in " + delay + " ms");
+            schedule(slot, exited, exitedNanos, relaunch, delay);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in microseconds. Buckets are four per power of
+ * two, so a percentile is within about 25% of the true value, and recording
+ * is one array increment no matter how many threads record at once.
+ *
+ * percentileMicros() covers everything since the last reset, which suits a
+ * benchmark report. A long-running server is better described by
+ * recentPercentileMicros(), which covers the last minute or so: samples
+ * also go to one of two half-minute slices, and a slice is cleared when
+ * its turn comes round again.
+ */
+public class LatencyHistogram {
+
+    // Bucket i < SUB holds exactly i µs; above that SUB buckets per octave
+    private static final int SUB = 4;
+    private static final int BUCKETS = SUB + (63 - 2) * SUB;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    // Recent samples, by slice of SLICE_NANOS; sliceEpoch[i] is the slice
+    // number slices[i] holds. A sample recorded while its slice is being
+    // cleared may be lost, which a quantile doesn't notice
+    private static final long SLICE_NANOS = 30_000_000_000L;
+    private final AtomicLongArray[] slices = { new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS) };
+    private final AtomicLongArray sliceEpoch = new AtomicLongArray(2);
+
+    public void record(long nanos) {
+        long us = Math.max(0, nanos / 1000);
+        int b = bucket(us);
+        buckets.incrementAndGet(b);
+        slice(System.nanoTime() / SLICE_NANOS).incrementAndGet(b);
+        count.increment();
+        sumMicros.add(us);
+        maxMicros.accumulateAndGet(us, Math::max);
+    }
+
+    // The slice for this epoch, cleared first if it still holds an old one
+    private AtomicLongArray slice(long epoch) {
+        int i = (int) (epoch & 1);
+        long held = sliceEpoch.get(i);
+        if (held != epoch && sliceEpoch.compareAndSet(i, held, epoch)) {
+            for (int k = 0; k < BUCKETS; k++) slices[i].set(k, 0);
+        }
+        return slices[i];
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double meanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sumMicros.sum() / n;
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    // Total of every recorded latency, e.g. for a Prometheus _sum
+    public long sumMicros() {
+        return sumMicros.sum();
+    }
+
+    /**
+     * Upper bound of the bucket holding the p-th percentile, 0 if empty.
+     */
+    public long percentileMicros(double p) {
+        long n = count.sum();
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Like percentileMicros(), over samples from the last 30 to 60 s only;
+     * 0 if there are none.
+     */
+    public long recentPercentileMicros(double p) {
+        long epoch = System.nanoTime() / SLICE_NANOS;
+        long[] merged = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < slices.length; i++) {
+            if (epoch - sliceEpoch.get(i) > 1) continue;
+            for (int k = 0; k < BUCKETS; k++) {
+                long c = slices[i].get(k);
+                merged[k] += c;
+                n += c;
+            }
+        }
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += merged[i];
+            if (seen >= rank) return Math.min(upperBound(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        for (AtomicLongArray slice : slices) {
+            for (int i = 0; i < BUCKETS; i++) slice.set(i, 0);
+        }
+        count.reset();
+        sumMicros.reset();
+        maxMicros.set(0);
+    }
+
+    private static int bucket(long us) {
+        if (us < SUB) return (int) us;
+        int octave = 63 - Long.numberOfLeadingZeros(us);
+        int sub = (int) (us >>> (octave - 2)) & (SUB - 1);
+        return SUB + (octave - 2) * SUB + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int octave = (bucket - SUB) / SUB + 2;
+        int sub = (bucket - SUB) % SUB;
+        return ((long) (SUB + sub + 1) << (octave - 2)) - 1;
+    }
+}
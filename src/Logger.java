@@ -0,0 +1,85 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import src.AsyncLog.Level;
+
+/**
+ * A named source of log lines, e.g. "VLC" or "VLC 10.0.30.5", written
+ * through an AsyncLog. Create one per component or connection and keep it:
+ * the source's rate limit lives here.
+ *
+ * Calls never block. Check isEnabled() before building an expensive message.
+ */
+public class Logger {
+
+    private final AsyncLog log;
+    private final String source;
+
+    // Generic cell rate: the earliest time the next line conforms, in nanos
+    private final AtomicLong nextAllowed = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public Logger(AsyncLog log, String source) {
+        this.log = log;
+        this.source = source;
+    }
+
+    // A logger on the global AsyncLog
+    public static Logger get(String source) {
+        return new Logger(AsyncLog.global(), source);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean isEnabled(Level level) {
+        return log.isEnabled(level);
+    }
+
+    public void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public void log(Level level, String message) {
+        if (!log.isEnabled(level)) return;
+        // Errors are rare and always matter; everything else is metered
+        if (level != Level.ERROR && !admit()) {
+            suppressed.incrementAndGet();
+            log.countSuppressed();
+            return;
+        }
+        long missed = suppressed.getAndSet(0);
+        if (!log.offer(new AsyncLog.Event(System.currentTimeMillis(), level, source, message, missed))) {
+            // Report them with the next line that gets through
+            suppressed.addAndGet(missed);
+        }
+    }
+
+    // Token bucket as a single CAS: a line conforms unless the theoretical
+    // arrival time is more than the burst allowance ahead of now
+    private boolean admit() {
+        long now = System.nanoTime();
+        long interval = log.rateIntervalNanos();
+        long tolerance = log.rateBurstNanos() - interval;
+        while (true) {
+            long tat = nextAllowed.get();
+            long base = tat == Long.MIN_VALUE ? now : Math.max(tat, now);
+            if (base - now > tolerance) return false;
+            if (nextAllowed.compareAndSet(tat, base + interval)) return true;
+        }
+    }
+}
@@ -1,13 +1,46 @@
 package src;
 
-import java.util.List;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+import javax.management.JMException;
 
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+
+        // Log lines are written by a background thread and never block the
+        // caller. DEBUG, INFO, WARN or ERROR; each source (e.g. one VLC client)
+        // may log 50 lines/s with bursts of 200, the rest are counted and dropped
+        AsyncLog log = AsyncLog.global();
+        log.setLevel(AsyncLog.Level.INFO);
+        log.setRateLimit(50, 200);
+        // -Dcis4930.logFile=<path> also keeps a JSON-lines log, rotated at 100 MB
+        String logFile = System.getProperty("cis4930.logFile");
+        if (logFile != null && !logFile.isBlank()) {
+            try {
+                log.addFileSink(Path.of(logFile), 100L * 1024 * 1024);
+            } catch (IOException e) {
+                Logger.get("LOG").error("Cannot write " + logFile + ": " + e.getMessage());
+            }
+        }
 
-        // Change the video path here ... can be mkv or mp4
+        // Channels: a name and a playlist each, either one video file (mkv or
+        // mp4) or a .txt/.m3u list of them played back to back. Channel k is
+        // published on 230.0.k.0:4446 (and 230.0.k.1, ... for the other
+        // renditions in multigroup mode); VLC opens the group it wants to watch
         String videoPath = "/Users/ajrumore/Desktop/run.mkv";
+        String[][] channelPlaylists = {
+                { "main", videoPath },
+                // { "news", "/Users/ajrumore/Desktop/news.m3u" },
+        };
+        // Start each playlist over when it ends
+        boolean loopPlaylists = true;
+        // FFmpeg encoders all channels may run at once. Channels get them in
+        // order of viewers, and one nobody has watched for a minute is stopped
+        int encoderSlots = 8;
+        Path playlistDir = Path.of(System.getProperty("user.home"), ".cis4930-playlists");
 
         int initialBitrate     = 500;
         int minBitrate         = 500;
@@ -15,48 +48,132 @@ public class Main {
         int bitrateIncrement   = 500;
         int iterationLengthMs  = 5000;
 
-        VideoStreamer streamer = new VideoStreamer(videoPath);
+        // How bitrate changes reach viewers:
+        //   "restart"    - one FFmpeg process, restarted at each new bitrate
+        //   "seamless"   - one encoder per rung, spliced onto the channel's group
+        //   "multigroup" - one encoder per rung, each on its own group;
+        //                  every client is moved between groups individually
+        String switchingMode = "multigroup";
+
+        int rungs = (maxBitrate - minBitrate) / bitrateIncrement + 1;
+        int[] ladder = new int[rungs];
+        for (int i = 0; i < rungs; i++) {
+            ladder[i] = minBitrate + i * bitrateIncrement;
+        }
 
-        // Change this to 127.0.0., 1, 1 to test on localhost
-        VlcMonitor monitor = new VlcMonitor("10.0.30.", 1, 50, streamer);
+        // Restart mode: keep a second FFmpeg one step below the current bitrate,
+        // so a step down or a crashed encoder is covered at the next keyframe
+        // instead of after a cold start. Uses a spare encoder slot when there is one
+        boolean warmStandby = true;
 
-        ExpertSystem expert = new ExpertSystem(
-                streamer,
-                initialBitrate,
-                minBitrate,
-                maxBitrate,
-                bitrateIncrement,
-                iterationLengthMs
-        );
+        // Pre-transcoded segments are played from disk instead of encoding live.
+        // The first run transcodes in the background (or up front if
+        // waitForSegmentCache is set); later runs start straight from the cache.
+        // A channel served entirely from the cache needs no encoder slot.
+        boolean useSegmentCache = true;
+        boolean waitForSegmentCache = false;
+        Path segmentCacheDir = Path.of(System.getProperty("user.home"), ".cis4930-segments");
+        long segmentCacheMaxBytes = 20L * 1024 * 1024 * 1024;
+        SegmentCache cache = useSegmentCache
+                ? new SegmentCache(segmentCacheDir, segmentCacheMaxBytes, 2)
+                : null;
 
-        streamer.start();
-        monitor.start();
-        expert.Start();
-    }
+        ChannelEngine engine = new ChannelEngine(encoderSlots);
 
-    // ----------------------------------------------------------------------
-    // Pretty-print VLC client performance each cycle
-    // ----------------------------------------------------------------------
-    public static void printClientStats(List<Client> clients) {
+        // One monitor for every channel; each client is counted on the channel
+        // whose group its VLC has open.
+        // Change this to 127.0.0., 1, 1 to test on localhost, or pass
+        // VlcMonitor.cidrRange("10.0.30.0/24", VlcMonitor.DEFAULT_PORT) for a whole subnet
+        VlcMonitor monitor = new VlcMonitor("10.0.30.", 1, 50, engine.getClients());
+        // Connect to clients as soon as their VlcBeacon agent announces them, and
+        // keep sweeping every 5 s as SWEEP does for plain VLC without an agent.
+        // Once every player runs the agent, the sweep can be stretched to a minute
+        monitor.setDiscovery(VlcMonitor.Discovery.BEACON, VlcBeacon.DEFAULT_GROUP, 5000);
+        // NIO services every RC session from a couple of selector threads;
+        // VIRTUAL runs each session, poll and discovery probe on a virtual thread
+        monitor.setIoMode(VlcMonitor.IoMode.NIO, 2);
+        // One poll tick every 500 ms, each covering a tenth of the clients
+        monitor.setPollMode(StatsPoller.Mode.BATCHED, 10);
+        // Set to true to print every line VLC sends, useful when debugging a client
+        monitor.setEchoLines(false);
+        // Evict a client whose session has sent nothing for 12 s (two missed polls),
+        // then reconnect to it with backoff
+        monitor.setHeartbeatTimeoutMs(12_000);
 
-        if (clients.isEmpty()) {
-            System.out.println("No clients connected.\n");
-            return;
-        }
+        for (int k = 0; k < channelPlaylists.length; k++) {
+            String name = channelPlaylists[k][0];
+            String input;
+            try {
+                input = Playlist.load(name, channelPlaylists[k][1]).prepare(playlistDir);
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.get("CHANNELS").error("Skipping channel " + name + ": " + e.getMessage());
+                continue;
+            }
 
-        System.out.println("----- Client Performance -----");
+            String group = "230.0." + k + ".0";
+            VideoStreamer streamer = switch (switchingMode) {
+                case "seamless"   -> new VideoStreamer(input, ladder);
+                case "multigroup" -> new VideoStreamer(input,
+                        Rendition.ladder(group, 4446, ladder));
+                default           -> new VideoStreamer(input);
+            };
+            streamer.setOutput(group, 4446);
+            streamer.setLoop(loopPlaylists);
 
-        for (Client c : clients) {
+            if (cache != null) {
+                streamer.setSegmentCache(cache);
+                if (waitForSegmentCache) cache.prepare(input, ladder);
+            }
 
-            System.out.println("Client " + c.getIpAddress());
-            System.out.println("  Buffering: " + c.isBuffering());
-            System.out.println("  Cache: " + c.getCachePercent() + "%");
-            System.out.println("  Drops: " + c.getDroppedFrames());
-            System.out.println("  Drop Δ: " + c.getDroppedDelta());
-            System.out.println("  Healthy: " + c.isHealthy());
-            System.out.println("  Struggling: " + c.isStruggling());
+            ExpertSystem expert = new ExpertSystem(
+                    streamer,
+                    initialBitrate,
+                    minBitrate,
+                    maxBitrate,
+                    bitrateIncrement,
+                    iterationLengthMs
+            );
+            expert.setTuner(monitor);
+            // React within a quarter second of a client starting to buffer or
+            // losing cache, rather than at the next 5 s cycle
+            expert.setTriggerMode(ExpertSystem.TriggerMode.EVENTS, 250);
 
-            System.out.println();
+            // Global adaptation rules (restart and seamless modes); the built-in
+            // set is used if the file is missing or invalid. Each channel keeps
+            // its own copy, since rules count streaks
+            String rulesFile = "rules.properties";
+            try {
+                expert.setRules(RuleSetLoader.load(Path.of(rulesFile), iterationLengthMs));
+            } catch (IOException | IllegalArgumentException e) {
+                Logger.get("EXPERT").warn("Using built-in rules, could not load " + rulesFile + ": " + e.getMessage());
+            }
+
+            Channel channel = new Channel(name, streamer, expert);
+            if (warmStandby) channel.setWarmStandby(bitrateIncrement, minBitrate);
+            engine.add(channel);
+        }
+
+        if (cache != null && waitForSegmentCache) cache.awaitPrepared();
+
+        // Metrics over JMX (JConsole: src:type=Metrics) and as Prometheus text
+        // at http://127.0.0.1:9404/metrics; replaces the per-cycle client table
+        Metrics metrics = new Metrics();
+        log.registerMetrics(metrics);
+        monitor.registerMetrics(metrics);
+        // Per-channel series carry a channel="name" label
+        engine.registerMetrics(metrics);
+        try {
+            metrics.registerMBean("src:type=Metrics");
+        } catch (JMException e) {
+            Logger.get("METRICS").error("Could not register MBean: " + e.getMessage());
         }
+        try {
+            new MetricsHttpServer(metrics, new InetSocketAddress("127.0.0.1", 9404)).start();
+        } catch (IOException e) {
+            Logger.get("METRICS").error("Could not serve /metrics: " + e.getMessage());
+        }
+
+        monitor.start();
+        engine.start();
     }
 }
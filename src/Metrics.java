@@ -0,0 +1,286 @@
+package src;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Registry of named counters, gauges and latency histograms, read over JMX
+ * and as Prometheus text by MetricsHttpServer. Components register what they
+ * already count (see registerMetrics on VideoStreamer, VlcMonitor and
+ * ExpertSystem); nothing is computed until someone reads, so the cost of a
+ * metric is paid per scrape rather than per cycle.
+ *
+ * Values are read without locks and may be a moment stale. Histograms are
+ * published as summaries in seconds: a few quantiles over roughly the last
+ * minute, so they follow current behaviour, and _sum and _count since start.
+ * The JMX attributes carry the same names as the Prometheus series.
+ *
+ * scoped() gives a view that adds fixed labels to everything registered
+ * through it, so several instances of a component (e.g. one VideoStreamer
+ * per channel) can register the same families side by side.
+ */
+public class Metrics {
+
+    public enum Type { COUNTER, GAUGE, SUMMARY }
+
+    // Receives one series of a family: its labels (e.g. rule="x", or "") and value
+    public interface Sink {
+        void sample(String labels, double value);
+    }
+
+    // Produces every series of a labelled family, e.g. one per rule
+    public interface Series {
+        void collect(Sink sink);
+    }
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Series series;
+        final LatencyHistogram histogram;
+        // Labels of the scope it was registered through, "" for none
+        final String scope;
+
+        Family(String name, String help, Type type, Series series, LatencyHistogram histogram, String scope) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.series = series;
+            this.histogram = histogram;
+            this.scope = scope;
+        }
+    }
+
+    // Shared with every scoped view; families of one name are kept together
+    private final List<Family> families;
+    private final String scope;
+
+    public Metrics() {
+        this(new CopyOnWriteArrayList<>(), "");
+    }
+
+    private Metrics(List<Family> families, String scope) {
+        this.families = families;
+        this.scope = scope;
+    }
+
+    /**
+     * A view of this registry that adds `labels` (e.g. label("channel", "news"))
+     * to every series registered through it. A name may be registered once
+     * per distinct scope, with the same type. Reading a view reads everything.
+     */
+    public Metrics scoped(String labels) {
+        return new Metrics(families, scope.isEmpty() ? labels : scope + "," + labels);
+    }
+
+    // ----------------------------------------------------------------------
+    // Registration
+    // ----------------------------------------------------------------------
+
+    /**
+     * Registers and returns a new counter owned by the registry.
+     */
+    public LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        counter(name, help, adder::sum);
+        return adder;
+    }
+
+    // A counter kept elsewhere, read on each scrape
+    public void counter(String name, String help, LongSupplier value) {
+        add(new Family(name, help, Type.COUNTER, sink -> sink.sample("", value.getAsLong()), null, scope));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        add(new Family(name, help, Type.GAUGE, sink -> sink.sample("", value.getAsDouble()), null, scope));
+    }
+
+    // A family whose series aren't known up front, e.g. one per rule
+    public void labelled(String name, String help, Type type, Series series) {
+        if (type == Type.SUMMARY) throw new IllegalArgumentException("Use histogram() for " + name);
+        add(new Family(name, help, type, series, null, scope));
+    }
+
+    // Published in seconds; the histogram itself records microseconds
+    public void histogram(String name, String help, LatencyHistogram histogram) {
+        add(new Family(name, help, Type.SUMMARY, null, histogram, scope));
+    }
+
+    private void add(Family family) {
+        if (!family.name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) {
+            throw new IllegalArgumentException("Invalid metric name: " + family.name);
+        }
+        synchronized (families) {
+            int last = -1;
+            for (int i = 0; i < families.size(); i++) {
+                Family f = families.get(i);
+                if (!f.name.equals(family.name)) continue;
+                if (f.scope.equals(family.scope) || f.type != family.type) {
+                    throw new IllegalArgumentException("Metric already registered: " + family.name
+                            + (family.scope.isEmpty() ? "" : "{" + family.scope + "}"));
+                }
+                last = i;
+            }
+            // After its namesakes, so the exposition has one HELP/TYPE per name
+            families.add(last >= 0 ? last + 1 : families.size(), family);
+        }
+    }
+
+    /**
+     * One label pair, quoted and escaped for the exposition format.
+     */
+    public static String label(String key, Object value) {
+        String v = String.valueOf(value)
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+        return key + "=\"" + v + "\"";
+    }
+
+    // ----------------------------------------------------------------------
+    // Reading
+    // ----------------------------------------------------------------------
+
+    /**
+     * Every family in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String previous = null;
+        for (Family f : families) {
+            // Namesakes from other scopes follow the first, under its HELP and TYPE
+            if (!f.name.equals(previous)) {
+                out.append("# HELP ").append(f.name).append(' ')
+                   .append(f.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+                out.append("# TYPE ").append(f.name).append(' ')
+                   .append(f.type.name().toLowerCase()).append('\n');
+            }
+            previous = f.name;
+            collect(f, (series, value) ->
+                    out.append(series).append(' ').append(format(value)).append('\n'));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Every series by its full name, e.g. vlc_poll_rtt_seconds{quantile="0.99"}.
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Family f : families) {
+            collect(f, values::put);
+        }
+        return values;
+    }
+
+    private interface SeriesSink {
+        void accept(String series, double value);
+    }
+
+    private static void collect(Family f, SeriesSink out) {
+        String scope = f.scope;
+        if (f.histogram != null) {
+            LatencyHistogram h = f.histogram;
+            String prefix = scope.isEmpty() ? "{" : "{" + scope + ",";
+            String total = scope.isEmpty() ? "" : "{" + scope + "}";
+            for (double q : QUANTILES) {
+                out.accept(f.name + prefix + "quantile=\"" + q + "\"}", h.recentPercentileMicros(q * 100) / 1e6);
+            }
+            out.accept(f.name + "_sum" + total, h.sumMicros() / 1e6);
+            out.accept(f.name + "_count" + total, h.count());
+            return;
+        }
+        f.series.collect((labels, value) -> {
+            String all = scope.isEmpty() ? labels : labels.isEmpty() ? scope : scope + "," + labels;
+            out.accept(all.isEmpty() ? f.name : f.name + "{" + all + "}", value);
+        });
+    }
+
+    // Whole numbers without a trailing ".0"
+    private static String format(double v) {
+        if (Double.isNaN(v)) return "NaN";
+        if (Double.isInfinite(v)) return v > 0 ? "+Inf" : "-Inf";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    // ----------------------------------------------------------------------
+    // JMX
+    // ----------------------------------------------------------------------
+
+    /**
+     * Publishes every series as a read-only attribute of one MBean on the
+     * platform server, e.g. under "src:type=Metrics" for JConsole.
+     */
+    public void registerMBean(String objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(objectName));
+    }
+
+    private final class MBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Double value = snapshot().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Double> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String name : attributes) {
+                Double value = values.get(name);
+                if (value != null) list.add(new Attribute(name, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        // Rebuilt on each call: labelled families can gain series at runtime
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Family f : families) {
+                collect(f, (series, value) -> attributes.add(new MBeanAttributeInfo(
+                        series, Double.class.getName(), f.help, true, false, false)));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Streaming server metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a Metrics registry at /metrics in the Prometheus text format, on
+ * the JDK's built-in HTTP server. One thread answers every scrape; it is
+ * meant to be bound to loopback or a management network, not the viewers'.
+ */
+public class MetricsHttpServer {
+
+    private static final Logger LOG = Logger.get("METRICS");
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+    private final InetSocketAddress address;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsHttpServer(Metrics metrics, InetSocketAddress address) {
+        this.metrics = metrics;
+        this.address = address;
+    }
+
+    public void start() throws IOException {
+        if (server != null) return;
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "MetricsHttp");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+
+        LOG.info("Serving http://" + address.getHostString() + ":"
+                + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        if (server == null) return;
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+    }
+
+    // Actual port, e.g. after binding port 0
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : address.getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package src;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered list of video files played back to back on one channel.
+ *
+ * FFmpeg reads the whole list as a single input through its concat demuxer,
+ * so every switching mode, seek and the segment cache treat a playlist like
+ * one long file: prepare() writes the list as an .ffconcat file and returns
+ * the path to use as the streamer's input. A playlist of one file is just
+ * that file. Items should share codecs and resolution.
+ *
+ * A list file holds one path per line; blank lines and lines starting with
+ * '#' are skipped, and relative paths are resolved against the list's
+ * directory. That also reads most .m3u playlists.
+ */
+public class Playlist {
+
+    private static final String CONCAT_SUFFIX = ".ffconcat";
+
+    private final String name;
+    private final List<Path> items;
+
+    public Playlist(String name, List<Path> items) {
+        if (items.isEmpty()) throw new IllegalArgumentException("Playlist " + name + " is empty");
+        this.name = name;
+        this.items = List.copyOf(items);
+    }
+
+    public static Playlist of(String name, String... files) {
+        List<Path> items = new ArrayList<>();
+        for (String f : files) items.add(Path.of(f));
+        return new Playlist(name, items);
+    }
+
+    /**
+     * A single video file, or a list file (.txt, .m3u, .m3u8) of them.
+     */
+    public static Playlist load(String name, String path) throws IOException {
+        Path p = Path.of(path);
+        String lower = p.getFileName().toString().toLowerCase();
+        if (!lower.endsWith(".txt") && !lower.endsWith(".m3u") && !lower.endsWith(".m3u8")) {
+            return new Playlist(name, List.of(p));
+        }
+
+        Path dir = p.toAbsolutePath().getParent();
+        List<Path> items = new ArrayList<>();
+        for (String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            items.add(dir.resolve(line));
+        }
+        return new Playlist(name, items);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Path> getItems() {
+        return items;
+    }
+
+    /**
+     * The input for VideoStreamer and SegmentCache: the file itself for a
+     * single item, else dir/<name>.ffconcat, rewritten only when the list
+     * or an item changed so cached segments stay valid.
+     */
+    public String prepare(Path dir) throws IOException {
+        if (items.size() == 1) return items.get(0).toString();
+
+        StringBuilder sb = new StringBuilder("ffconcat version 1.0\n");
+        for (Path item : items) {
+            Path abs = item.toAbsolutePath();
+            // Size and mtime make the list change with its items, see SegmentCache keys
+            sb.append("# ").append(Files.size(abs)).append(' ')
+              .append(Files.getLastModifiedTime(abs).toMillis()).append('\n');
+            sb.append("file '").append(abs.toString().replace("'", "'\\''")).append("'\n");
+        }
+        String text = sb.toString();
+
+        Files.createDirectories(dir);
+        Path list = dir.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + CONCAT_SUFFIX);
+        if (!Files.exists(list) || !Files.readString(list, StandardCharsets.UTF_8).equals(text)) {
+            Files.writeString(list, text, StandardCharsets.UTF_8);
+        }
+        return list.toString();
+    }
+
+    /**
+     * FFmpeg input options for a file or a list written by prepare(). The
+     * list holds absolute paths, which the concat demuxer only accepts with
+     * -safe 0.
+     */
+    public static List<String> inputArgs(String input) {
+        List<String> args = new ArrayList<>(6);
+        if (input.endsWith(CONCAT_SUFFIX)) args.addAll(List.of("-f", "concat", "-safe", "0"));
+        args.addAll(List.of("-i", input));
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + items.size() + (items.size() == 1 ? " file)" : " files)");
+    }
+}
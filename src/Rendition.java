@@ -0,0 +1,71 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One rung of a multicast ladder: a bitrate and the group/port it is
+ * published on. Clients subscribe to a rendition by playing its group.
+ */
+public class Rendition {
+
+    private final int index;
+    private final int bitrateKbps;
+    private final String multicastAddress;
+    private final int multicastPort;
+
+    public Rendition(int index, int bitrateKbps, String multicastAddress, int multicastPort) {
+        this.index = index;
+        this.bitrateKbps = bitrateKbps;
+        this.multicastAddress = multicastAddress;
+        this.multicastPort = multicastPort;
+    }
+
+    /**
+     * Builds a ladder with one group per bitrate, starting at baseGroup and
+     * incrementing the last octet (230.0.0.0, 230.0.0.1, ...). The lowest
+     * bitrate lands on baseGroup, so clients tuned to the default group start
+     * on the safest rung.
+     */
+    public static List<Rendition> ladder(String baseGroup, int port, int... bitratesKbps) {
+        int[] sorted = bitratesKbps.clone();
+        Arrays.sort(sorted);
+
+        int dot = baseGroup.lastIndexOf('.');
+        String prefix = baseGroup.substring(0, dot + 1);
+        int lastOctet = Integer.parseInt(baseGroup.substring(dot + 1));
+
+        List<Rendition> ladder = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            ladder.add(new Rendition(i, sorted[i], prefix + (lastOctet + i), port));
+        }
+        return ladder;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getBitrateKbps() {
+        return bitrateKbps;
+    }
+
+    public String getMulticastAddress() {
+        return multicastAddress;
+    }
+
+    public int getMulticastPort() {
+        return multicastPort;
+    }
+
+    // What a VLC client opens to subscribe to this rendition
+    public String getUrl() {
+        return "udp://@" + multicastAddress + ":" + multicastPort;
+    }
+
+    @Override
+    public String toString() {
+        return bitrateKbps + " kbps @ " + multicastAddress + ":" + multicastPort;
+    }
+}
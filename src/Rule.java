@@ -0,0 +1,23 @@
+package src;
+
+/**
+ * One adaptation rule of the global bitrate controller. ExpertSystem runs
+ * its RulePlan once per cycle; rules see the audience through a
+ * RuleContext and act through it too.
+ */
+public interface Rule {
+
+    String name();
+
+    /**
+     * Evaluates the rule and, if it fires, performs its action. Returns
+     * whether it fired. Called once per cycle from the expert loop only.
+     */
+    boolean evaluate(RuleContext ctx);
+
+    /**
+     * Whether firing ends the cycle, i.e. the rule changed or deliberately
+     * held the bitrate. Rules that only log return false.
+     */
+    boolean isTerminal();
+}
@@ -0,0 +1,59 @@
+package src;
+
+/**
+ * What a Rule can read and do during one ExpertSystem cycle. Metrics are
+ * computed once per cycle before any rule runs.
+ */
+public interface RuleContext {
+
+    enum Metric {
+        PERCENT_BUFFERING("percentBuffering"),
+        AVG_CACHE("avgCache"),
+        PERCENT_MISSING("percentMissing"),
+        PERCENT_FALLING("percentFalling"),
+        ACTIVE_CLIENTS("activeClients"),
+        BITRATE("bitrate"),
+        // kb/s between the current bitrate and the configured min / max
+        ABOVE_MIN("aboveMin"),
+        BELOW_MAX("belowMax"),
+        // Changes in the last minute, and ms since the oldest of them
+        // (Long.MAX_VALUE when there were none)
+        RECENT_CHANGES("recentChanges"),
+        MS_SINCE_FIRST_CHANGE("msSinceFirstChange");
+
+        private final String key;
+
+        Metric(String key) {
+            this.key = key;
+        }
+
+        // Name used in rule files
+        public String key() {
+            return key;
+        }
+
+        public static Metric fromKey(String key) {
+            for (Metric m : values()) {
+                if (m.key.equals(key)) return m;
+            }
+            throw new IllegalArgumentException("Unknown metric: " + key);
+        }
+    }
+
+    long metric(Metric m);
+
+    // False when the cycle was started early by a client transition rather
+    // than the periodic tick; streaks only count ticks
+    boolean isTick();
+
+    // True once the last bitrate change is at least the cooldown old
+    boolean canChange();
+
+    int bitrate();
+
+    void lower();
+
+    void raise();
+
+    void log(String message);
+}
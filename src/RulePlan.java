@@ -0,0 +1,79 @@
+package src;
+
+import java.util.List;
+
+/**
+ * A rule set compiled into a flat array, evaluated in order until a
+ * terminal rule fires. Each rule's fire count and cumulative evaluation
+ * time are kept in parallel primitive arrays; evaluate() allocates nothing.
+ *
+ * Only the expert loop evaluates a plan; metrics readers may see slightly
+ * stale counts.
+ */
+public class RulePlan {
+
+    private final Rule[] rules;
+    private final boolean[] terminal;
+    private final long cooldownMs;
+
+    private final long[] fires;
+    private final long[] evalNanos;
+    private final long[] evaluations;
+
+    public RulePlan(List<Rule> rules, long cooldownMs) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.terminal = new boolean[this.rules.length];
+        for (int i = 0; i < this.rules.length; i++) {
+            terminal[i] = this.rules[i].isTerminal();
+        }
+        this.cooldownMs = cooldownMs;
+
+        this.fires = new long[this.rules.length];
+        this.evalNanos = new long[this.rules.length];
+        this.evaluations = new long[this.rules.length];
+    }
+
+    /**
+     * Runs the rules in order. Returns the index of the terminal rule that
+     * ended the pass, or -1 if none fired.
+     */
+    public int evaluate(RuleContext ctx) {
+        for (int i = 0; i < rules.length; i++) {
+            long start = System.nanoTime();
+            boolean fired = rules[i].evaluate(ctx);
+            evalNanos[i] += System.nanoTime() - start;
+            evaluations[i]++;
+
+            if (fired) {
+                fires[i]++;
+                if (terminal[i]) return i;
+            }
+        }
+        return -1;
+    }
+
+    // Minimum time between bitrate changes for rules with a cooldown
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public String name(int i) {
+        return rules[i].name();
+    }
+
+    public long fires(int i) {
+        return fires[i];
+    }
+
+    public long evaluations(int i) {
+        return evaluations[i];
+    }
+
+    public long evalNanos(int i) {
+        return evalNanos[i];
+    }
+}
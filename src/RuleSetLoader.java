@@ -0,0 +1,150 @@
+package src;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Loads a rule set from a properties file (see rules.properties for the
+ * format) and compiles it into a RulePlan. Mistakes such as an unknown
+ * metric, a missing action or a misspelled key fail the whole load with a
+ * message naming the rule or key, rather than silently dropping it.
+ */
+public class RuleSetLoader {
+
+    // Built-in rule set: the rules.properties at the repo root, packaged onto
+    // the classpath by the build
+    static final String DEFAULT_RESOURCE = "/rules.properties";
+
+    private static final Set<String> RULE_KEYS = Set.of("when", "cycles", "forMs", "cooldown", "then");
+
+    public static RulePlan load(Path file, int iterationMs) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return compile(read(in), iterationMs);
+        }
+    }
+
+    public static RulePlan defaults(int iterationMs) {
+        InputStream in = RuleSetLoader.class.getResourceAsStream(DEFAULT_RESOURCE);
+        if (in == null) throw new IllegalStateException("Built-in rules " + DEFAULT_RESOURCE + " not on the classpath");
+        try (Reader r = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return compile(read(r), iterationMs);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Properties read(Reader in) throws IOException {
+        Properties p = new Properties();
+        p.load(in);
+        return p;
+    }
+
+    // ----------------------------------------------------------------------
+    // Compilation
+    // ----------------------------------------------------------------------
+    static RulePlan compile(Properties p, int iterationMs) {
+        long cooldownMs = Long.parseLong(p.getProperty("cooldownMs", "5000").trim());
+
+        String order = p.getProperty("rules");
+        if (order == null || order.isBlank()) {
+            throw new IllegalArgumentException("No \"rules\" list in rule set");
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String name : order.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty() && names.add(name)) rules.add(compileRule(p, name, iterationMs));
+        }
+        checkKeys(p, names);
+        return new RulePlan(rules, cooldownMs);
+    }
+
+    /**
+     * Rejects keys that nothing reads, so a typo such as "rule.cacheLow.cooldwn"
+     * fails the load instead of quietly changing behaviour. Rules defined but
+     * left out of the "rules" list are only warned about, since dropping a
+     * name from the list is the way to switch a rule off.
+     */
+    private static void checkKeys(Properties p, Set<String> names) {
+        Set<String> unlisted = new TreeSet<>();
+        for (String key : p.stringPropertyNames()) {
+            if (key.equals("cooldownMs") || key.equals("rules")) continue;
+            int dot = key.lastIndexOf('.');
+            if (!key.startsWith("rule.") || dot <= "rule.".length() || !RULE_KEYS.contains(key.substring(dot + 1))) {
+                throw new IllegalArgumentException("Unknown key \"" + key + "\"");
+            }
+            String name = key.substring("rule.".length(), dot);
+            if (!names.contains(name)) unlisted.add(name);
+        }
+        if (!unlisted.isEmpty()) {
+            Logger.get("EXPERT").warn("Rules not in the \"rules\" list are ignored: " + String.join(", ", unlisted));
+        }
+    }
+
+    private static Rule compileRule(Properties p, String name, int iterationMs) {
+        String prefix = "rule." + name + ".";
+        try {
+            // Conditions
+            String when = p.getProperty(prefix + "when", "").trim();
+            String[] terms = when.isEmpty() ? new String[0] : when.split("&&");
+            RuleContext.Metric[] metrics = new RuleContext.Metric[terms.length];
+            int[] ops = new int[terms.length];
+            long[] values = new long[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                String[] parts = terms[i].trim().split("\\s+");
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("expected \"metric op number\", got \"" + terms[i].trim() + "\"");
+                }
+                metrics[i] = RuleContext.Metric.fromKey(parts[0]);
+                ops[i] = op(parts[1]);
+                values[i] = Long.parseLong(parts[2]);
+            }
+
+            // How long they must hold
+            int cycles = Integer.parseInt(p.getProperty(prefix + "cycles", "1").trim());
+            String forMs = p.getProperty(prefix + "forMs");
+            if (forMs != null) cycles = (int) (Long.parseLong(forMs.trim()) / Math.max(1, iterationMs));
+
+            boolean cooldown = Boolean.parseBoolean(p.getProperty(prefix + "cooldown", "false").trim());
+
+            // Action, with an optional message after the verb
+            String then = p.getProperty(prefix + "then");
+            if (then == null || then.isBlank()) throw new IllegalArgumentException("missing \"then\"");
+            then = then.trim();
+            int space = then.indexOf(' ');
+            String verb = space < 0 ? then : then.substring(0, space);
+            String message = space < 0 ? null : then.substring(space + 1).trim();
+
+            ConditionRule.Action action;
+            try {
+                action = ConditionRule.Action.valueOf(verb.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown action \"" + verb + "\"");
+            }
+
+            return new ConditionRule(name, metrics, ops, values, cycles, cooldown, action, message);
+
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Rule " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int op(String s) {
+        for (int i = 0; i < ConditionRule.OPS.length; i++) {
+            if (ConditionRule.OPS[i].equals(s)) return i;
+        }
+        throw new IllegalArgumentException("unknown operator \"" + s + "\"");
+    }
+}
@@ -0,0 +1,348 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * SegmentCache pre-transcodes an input file once per bitrate into
+ * GOP-aligned MPEG-TS segments on local disk, so the streamer can play them
+ * back instead of encoding live.
+ *
+ * Layout: cacheDir/<file key>/<kbps>k/seg_00000.ts ... plus index.csv
+ * (FFmpeg's segment list: filename,start,end). A rung directory only
+ * appears once its transcode finished; until then it lives in a ".partial"
+ * directory next to it. Rung directories are the unit of LRU eviction: the
+ * cache touches a rung's mtime whenever a player pins it, i.e. starts or
+ * switches to playing it, and deletes the least recently used rungs once
+ * the directory grows past maxBytes.
+ */
+public class SegmentCache {
+
+    private static final Logger LOG = Logger.get("CACHE");
+
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final int segmentSeconds;
+
+    // One transcode at a time keeps pre-encoding from starving live serving
+    private final ExecutorService transcoder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SegmentTranscoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<Path, Future<?>> inFlight = new ConcurrentHashMap<>();
+
+    // Rungs being played right now are never evicted
+    private final Set<Path> pinned = ConcurrentHashMap.newKeySet();
+
+    public SegmentCache(Path cacheDir, long maxBytes, int segmentSeconds) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    // ----------------------------------------------------------------------
+    // Lookup
+    // ----------------------------------------------------------------------
+    public boolean isReady(String inputFile, int kbps) {
+        try {
+            return Files.exists(rungDir(inputFile, kbps).resolve("index.csv"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public boolean isReady(String inputFile, int[] ladderKbps) {
+        for (int kbps : ladderKbps) {
+            if (!isReady(inputFile, kbps)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Segment list for one rung, in play order. Segment boundaries are the
+     * same on every rung (fixed GOP + fixed segment length), so an index into
+     * one rung's list is valid for all of them.
+     */
+    public List<Segment> segments(String inputFile, int kbps) throws IOException {
+        Path dir = rungDir(inputFile, kbps);
+        List<Segment> list = new ArrayList<>();
+
+        for (String line : Files.readAllLines(dir.resolve("index.csv"))) {
+            String[] parts = line.split(",");
+            if (parts.length < 3) continue;
+            list.add(new Segment(dir.resolve(parts[0]),
+                    (long) (Double.parseDouble(parts[1]) * 1000),
+                    (long) (Double.parseDouble(parts[2]) * 1000)));
+        }
+        return list;
+    }
+
+    // Index of the segment that contains offsetMs (last segment if past the end)
+    public static int segmentAt(List<Segment> segments, long offsetMs) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (offsetMs < segments.get(i).endMs) return i;
+        }
+        return Math.max(0, segments.size() - 1);
+    }
+
+    public void pin(String inputFile, int kbps) throws IOException {
+        Path dir = rungDir(inputFile, kbps);
+        pinned.add(dir);
+        touch(dir);
+    }
+
+    public void unpin(String inputFile, int kbps) {
+        try {
+            pinned.remove(rungDir(inputFile, kbps));
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Marks a rung as recently used for LRU eviction
+    void touch(Path rungDir) {
+        try {
+            Files.setLastModifiedTime(rungDir, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Pre-transcoding
+    // ----------------------------------------------------------------------
+
+    // Queues a background transcode for every rung that isn't cached yet
+    public void prepare(String inputFile, int... ladderKbps) {
+        for (int kbps : ladderKbps) {
+            if (isReady(inputFile, kbps)) continue;
+
+            Path dir;
+            try {
+                dir = rungDir(inputFile, kbps);
+            } catch (IOException e) {
+                LOG.error("Cannot read " + inputFile + ": " + e.getMessage());
+                return;
+            }
+
+            inFlight.computeIfAbsent(dir, d -> transcoder.submit(() -> {
+                try {
+                    transcode(inputFile, kbps, d);
+                    evictIfNeeded();
+                } finally {
+                    inFlight.remove(d);
+                }
+            }));
+        }
+    }
+
+    // Blocks until every queued transcode has finished
+    public void awaitPrepared() throws InterruptedException {
+        for (Future<?> f : List.copyOf(inFlight.values())) {
+            try {
+                f.get();
+            } catch (ExecutionException | CancellationException ignored) {
+                // Failures are logged by transcode(); the rung just stays uncached
+            }
+        }
+    }
+
+    private void transcode(String inputFile, int kbps, Path dir) {
+        Path partial = dir.resolveSibling(dir.getFileName() + ".partial");
+        long start = System.currentTimeMillis();
+
+        try {
+            deleteRecursively(partial);
+            Files.createDirectories(partial);
+
+            LOG.info("Transcoding " + inputFile + " at " + kbps + " kbps");
+
+            List<String> command = new ArrayList<>(List.of(
+                    "ffmpeg",
+                    "-hide_banner",
+                    "-nostdin",
+                    "-loglevel", "warning"));
+            command.addAll(Playlist.inputArgs(inputFile));
+            command.addAll(List.of(
+                    "-target", "ntsc-dvd",
+                    "-b:v", kbps + "k",
+                    // Same fixed, closed GOPs as the live ladder so every rung
+                    // cuts its segments on the same frames
+                    "-g", "15",
+                    "-sc_threshold", "0",
+                    "-flags", "+cgop",
+                    "-f", "segment",
+                    "-segment_format", "mpegts",
+                    "-segment_time", String.valueOf(segmentSeconds),
+                    "-segment_list", partial.resolve("index.csv").toString(),
+                    "-segment_list_type", "csv",
+                    partial.resolve("seg_%05d.ts").toString()));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+
+            Logger ffmpegLog = Logger.get("CACHE " + kbps + "k");
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    ffmpegLog.info(line);
+                }
+            }
+
+            if (p.waitFor() != 0) {
+                LOG.error("FFmpeg failed for " + kbps + " kbps");
+                deleteRecursively(partial);
+                return;
+            }
+
+            Files.move(partial, dir, StandardCopyOption.ATOMIC_MOVE);
+            LOG.info("Ready " + kbps + " kbps in " +
+                    (System.currentTimeMillis() - start) / 1000 + " s");
+
+        } catch (IOException e) {
+            LOG.error("Transcode failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // LRU size cap
+    // ----------------------------------------------------------------------
+    public void evictIfNeeded() {
+        List<Path> rungs = new ArrayList<>();
+        long total = 0;
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path fileDir : files.toList()) {
+                if (!Files.isDirectory(fileDir)) continue;
+                try (Stream<Path> rungDirs = Files.list(fileDir)) {
+                    for (Path rung : rungDirs.toList()) {
+                        if (rung.getFileName().toString().endsWith(".partial")) continue;
+                        rungs.add(rung);
+                        total += sizeOf(rung);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        if (total <= maxBytes) return;
+
+        rungs.sort(Comparator.comparingLong(SegmentCache::lastUsed));
+
+        for (Path rung : rungs) {
+            if (total <= maxBytes) break;
+            if (pinned.contains(rung)) continue;
+
+            long size = sizeOf(rung);
+            try {
+                deleteRecursively(rung);
+                total -= size;
+                LOG.info("Evicted " + cacheDir.relativize(rung));
+            } catch (IOException e) {
+                LOG.error("Eviction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long lastUsed(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(f -> f.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Keys
+    // ----------------------------------------------------------------------
+
+    // cacheDir/<name>-<SHA-256 of path, size, mtime>/<kbps>k; a full digest,
+    // so two inputs never share (and serve each other's) segments
+    private Path rungDir(String inputFile, int kbps) throws IOException {
+        Path in = Path.of(inputFile).toAbsolutePath();
+        String identity = in + "|" + Files.size(in) + "|" + Files.getLastModifiedTime(in).toMillis();
+
+        String name = in.getFileName().toString().replaceAll("[^A-Za-z0-9._-]", "_");
+        String key = name + "-" + digest(identity);
+
+        return cacheDir.resolve(key).resolve(kbps + "k");
+    }
+
+    private static String digest(String identity) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(identity.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Segment
+    // ----------------------------------------------------------------------
+    public static class Segment {
+        final Path path;
+        final long startMs;
+        final long endMs;
+
+        Segment(Path path, long startMs, long endMs) {
+            this.path = path;
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getStartMs() {
+            return startMs;
+        }
+
+        public long getEndMs() {
+            return endMs;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package src;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * SegmentPlayer streams pre-transcoded segments from a SegmentCache into a
+ * TsSender. Each segment is memory-mapped and handed over packet by packet;
+ * the sender's PCR pacing turns that into a real-time stream, so there is no
+ * encoder anywhere on the serving path.
+ *
+ * Segments are handed over no sooner than LEAD_MS before the sender has
+ * sent up to their start, so its queue holds about one segment rather than
+ * many seconds. A bitrate switch then takes effect at the next segment
+ * boundary viewers see. Segments of all rungs start on the same frames, so
+ * the cut is clean.
+ *
+ * Playback starts at the segment containing the requested offset, so a
+ * resume (e.g. a cached rate after a live one) repeats up to one segment
+ * length of what viewers already saw.
+ *
+ * With setLoop(true) playback starts over at the first segment after the
+ * last, in a new epoch, instead of ending.
+ */
+public class SegmentPlayer {
+
+    private static final Logger LOG = Logger.get("STREAM");
+
+    // How far ahead of the sent position the next segment is queued
+    private static final long LEAD_MS = 500;
+    private static final long PACE_POLL_MS = 20;
+    // Longest wait past a segment's duration, should its PTS not show up
+    private static final long PACE_SLACK_MS = 1000;
+
+    private final String name;
+    private final SegmentCache cache;
+    private final String inputFile;
+    private final TsSender sender;
+
+    private final TsContinuity continuity = new TsContinuity();
+
+    private volatile int kbps;
+    private volatile int segment;
+    private volatile boolean running = false;
+    private volatile boolean loop = false;
+    private Thread thread;
+
+    // Segment list of the rung being played; read again only on a switch
+    private List<SegmentCache.Segment> listed;
+    private int listedKbps;
+
+    public SegmentPlayer(String name, SegmentCache cache, String inputFile,
+                         int kbps, long offsetMs, TsSender sender) throws IOException {
+        this.name = name;
+        this.cache = cache;
+        this.inputFile = inputFile;
+        this.sender = sender;
+        this.kbps = kbps;
+        this.listed = cache.segments(inputFile, kbps);
+        this.listedKbps = kbps;
+        this.segment = SegmentCache.segmentAt(listed, offsetMs);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::playLoop, "SegmentPlayer-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Returns once the player has stopped sending, so a following
+    // beginEpoch() on the sender can't be followed by its packets
+    public void stop() {
+        running = false;
+        if (thread == null || thread == Thread.currentThread()) return;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isAlive() {
+        return running && thread != null && thread.isAlive();
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    // Switch rung at the next segment boundary; the rung must already be cached
+    public void switchTo(int kbps) {
+        this.kbps = kbps;
+    }
+
+    public int getBitrate() {
+        return kbps;
+    }
+
+    private void playLoop() {
+        int playing = -1;
+
+        try {
+            // Segment timestamps are continuous from the start of the file,
+            // so the first segment's start is this epoch's media position
+            List<SegmentCache.Segment> first = segmentsAt(kbps);
+            if (segment < first.size()) sender.beginEpoch(first.get(segment).getStartMs());
+            boolean epochStart = true;
+
+            while (running) {
+                // Boundaries are the same on every rung, so pace on whichever is listed
+                List<SegmentCache.Segment> segments = segmentsAt(listedKbps);
+                if (segment >= segments.size()) {
+                    if (!loop || segments.isEmpty()) break;
+                    // Let the end play out before the timestamps start over
+                    long end = segments.get(segments.size() - 1).getEndMs();
+                    awaitDrained(end - sender.getMediaPositionMs() + PACE_SLACK_MS);
+                    segment = 0;
+                    sender.beginEpoch(segments.get(0).getStartMs());
+                    epochStart = true;
+                }
+
+                SegmentCache.Segment next = segments.get(segment);
+                if (!epochStart) awaitSent(next.getStartMs(), next.getEndMs() - next.getStartMs() + PACE_SLACK_MS);
+                epochStart = false;
+
+                // Only now pick the rung, so a switch during the wait makes this segment
+                int rate = kbps;
+                if (rate != playing) {
+                    if (playing >= 0) cache.unpin(inputFile, playing);
+                    cache.pin(inputFile, rate);
+                    playing = rate;
+                }
+                playSegment(segmentsAt(rate).get(segment));
+                segment++;
+            }
+        } catch (IOException e) {
+            // stop() interrupting a read closes the file; that isn't a failure
+            if (running) LOG.error("Segment playback failed: " + e.getMessage());
+        } catch (CancellationException | InterruptedException e) {
+            // stop() interrupted a send waiting on a full queue, or the pacing
+        } finally {
+            if (playing >= 0) cache.unpin(inputFile, playing);
+            sender.flush();
+            running = false;
+        }
+    }
+
+    private List<SegmentCache.Segment> segmentsAt(int rate) throws IOException {
+        if (rate != listedKbps) {
+            listed = cache.segments(inputFile, rate);
+            listedKbps = rate;
+        }
+        return listed;
+    }
+
+    // Waits until the sender is within LEAD_MS of positionMs, at most timeoutMs
+    private void awaitSent(long positionMs, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (running && sender.getMediaPositionMs() < positionMs - LEAD_MS
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(PACE_POLL_MS);
+        }
+    }
+
+    // Waits until everything queued has been sent, at most timeoutMs
+    private void awaitDrained(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (running && sender.getQueuedDatagrams() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(PACE_POLL_MS);
+        }
+    }
+
+    private void playSegment(SegmentCache.Segment seg) throws IOException {
+        try (FileChannel ch = FileChannel.open(seg.getPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+            // Continuity counters are patched in a private copy of each packet
+            int size = (int) ch.size();
+            int skipped = 0;
+            int off = 0;
+            while (off + TsPacket.SIZE <= size && running) {
+                // After a bad sync byte (a truncated or misaligned file) a
+                // packet only counts once the next one starts 188 bytes on
+                if (map.get(off) != TsPacket.SYNC || skipped > 0 && !syncedAt(map, off, size)) {
+                    off++;
+                    skipped++;
+                    continue;
+                }
+                if (skipped > 0) {
+                    LOG.warn("Skipped " + skipped + " bytes to resync in " + seg.getPath());
+                    skipped = 0;
+                }
+                sender.send(map, off, continuity);
+                off += TsPacket.SIZE;
+            }
+        }
+    }
+
+    // A sync byte here and one packet later, or here in the file's last packet
+    private static boolean syncedAt(MappedByteBuffer map, int off, int size) {
+        int next = off + TsPacket.SIZE;
+        return map.get(off) == TsPacket.SYNC && (next + TsPacket.SIZE > size || map.get(next) == TsPacket.SYNC);
+    }
+}
@@ -0,0 +1,134 @@
+package src;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatsPoller owns the "stats" polling schedule for every RC session.
+ *
+ * PER_CLIENT keeps one fixed-rate task per client, staggered across the
+ * interval, and cancels it when the client is removed. BATCHED runs a single
+ * timer that fires `slots` times per interval; each client lives in one slot
+ * (the least loaded when it joined), so every client is still polled once
+ * per interval but the replies arrive spread out instead of all at once, and
+ * the scheduler holds `slots` tasks no matter how many clients there are.
+ */
+public class StatsPoller {
+
+    public enum Mode { PER_CLIENT, BATCHED }
+
+    public interface Target {
+        void poll();
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final int intervalMs;
+    private final Mode mode;
+
+    // Where each poll runs; null means on the scheduler thread itself
+    private final Executor pollExecutor;
+
+    // PER_CLIENT: one future per client
+    private final Map<String, ScheduledFuture<?>> futures = new ConcurrentHashMap<>();
+
+    // BATCHED: clients grouped by the tick that polls them
+    private final Map<String, Target>[] slots;
+    private final Map<String, Integer> slotOf = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> batchTick;
+    private int nextSlot = 0;
+    private int tickIndex = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StatsPoller(ScheduledExecutorService scheduler, int intervalMs,
+                       Mode mode, int slots, Executor pollExecutor) {
+        this.scheduler = scheduler;
+        this.intervalMs = intervalMs;
+        this.mode = mode;
+        this.pollExecutor = pollExecutor;
+
+        this.slots = new Map[Math.max(1, Math.min(slots, intervalMs))];
+        for (int i = 0; i < this.slots.length; i++) {
+            this.slots[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public void start() {
+        if (mode != Mode.BATCHED || batchTick != null) return;
+
+        long tickMs = intervalMs / slots.length;
+        batchTick = scheduler.scheduleAtFixedRate(this::tick, 0, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (batchTick != null) batchTick.cancel(false);
+        for (ScheduledFuture<?> f : futures.values()) f.cancel(false);
+        futures.clear();
+    }
+
+    public void add(String ip, Target target) {
+        if (mode == Mode.PER_CLIENT) {
+            // Stagger first polls so clients found in one sweep don't all fire together
+            long delay = Math.floorMod(ip.hashCode(), intervalMs);
+            ScheduledFuture<?> f = scheduler.scheduleAtFixedRate(() -> run(target),
+                    delay, intervalMs, TimeUnit.MILLISECONDS);
+
+            ScheduledFuture<?> old = futures.put(ip, f);
+            if (old != null) old.cancel(false);
+            return;
+        }
+
+        int slot = leastLoadedSlot();
+        Integer old = slotOf.put(ip, slot);
+        if (old != null) slots[old].remove(ip);
+        slots[slot].put(ip, target);
+
+        // Don't make a new client wait up to a full interval for its first poll
+        run(target);
+    }
+
+    public void remove(String ip) {
+        ScheduledFuture<?> f = futures.remove(ip);
+        if (f != null) f.cancel(false);
+
+        Integer slot = slotOf.remove(ip);
+        if (slot != null) slots[slot].remove(ip);
+    }
+
+    public int size() {
+        return mode == Mode.PER_CLIENT ? futures.size() : slotOf.size();
+    }
+
+    private synchronized int leastLoadedSlot() {
+        int best = nextSlot;
+        for (int i = 0; i < slots.length; i++) {
+            int s = (nextSlot + i) % slots.length;
+            if (slots[s].size() < slots[best].size()) best = s;
+        }
+        nextSlot = (best + 1) % slots.length;
+        return best;
+    }
+
+    // ----------------------------------------------------------------------
+    // Batch tick
+    // ----------------------------------------------------------------------
+    private void tick() {
+        int slot = tickIndex;
+        tickIndex = (tickIndex + 1) % slots.length;
+
+        for (Target t : slots[slot].values()) {
+            run(t);
+        }
+    }
+
+    private void run(Target target) {
+        if (pollExecutor != null) {
+            pollExecutor.execute(target::poll);
+        } else {
+            target.poll();
+        }
+    }
+}
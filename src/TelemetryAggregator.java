@@ -0,0 +1,394 @@
+package src;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+
+/**
+ * TelemetryAggregator keeps the fleet-wide numbers the global rules need as
+ * running totals: how many clients are past their grace period, how many of
+ * those are buffering, silent or losing cache, their summed cache, and a
+ * histogram of estimated capacity for percentile targets. Client reports
+ * every change to those values, so a sample costs the same for 10 or
+ * 10,000 viewers.
+ *
+ * Reporting takes no lock: a changed client pushes itself onto a lock-free
+ * list, at most once until it is counted, and sample() recounts the clients
+ * on it. A client's contribution is the TelemetrySnapshot last counted for
+ * it; the recount swaps that for the client's current snapshot, so
+ * concurrent publishes can never be counted twice or lost.
+ *
+ * Two transitions come from the clock rather than a setter: leaving the
+ * grace period and going silent. The first is a FIFO by join time, the
+ * second a list ordered by the update time last seen for each client.
+ * Heartbeats don't reorder it; sample() checks the client at its head
+ * against its real last update and moves it back if it has been heard
+ * since, so each client is looked at about once per STALE_MS and sample()
+ * stays amortized O(1) as well.
+ *
+ * A change that makes an active client worse - it starts buffering, its
+ * cache starts trending down or drops sharply - also runs the wakeup hook,
+ * so an event-driven ExpertSystem can react without waiting for its tick.
+ */
+public final class TelemetryAggregator implements ClientRegistry.Listener {
+
+    // Same window as ExpertSystem's recent() check
+    public static final long STALE_MS = 15000;
+
+    // Capacity histogram: 100 kb/s buckets, the last one open-ended
+    public static final int CAPACITY_BUCKET_KBPS = 100;
+    private static final int CAPACITY_BUCKETS = 512;
+
+    // Cache falling at least this many points in one update wakes the engine
+    public static final int SHARP_CACHE_DROP = 20;
+
+    /**
+     * Totals at one instant. Percentages use the same integer arithmetic
+     * the rules always have.
+     */
+    public static final class Sample {
+        public final int total;
+        public final int active;
+        public final int buffering;
+        public final int missing;
+        public final int falling;
+        public final long sumCache;
+
+        // Active clients with a capacity estimate, and their histogram
+        public final int estimated;
+        private final int[] capacity;
+
+        Sample(int total, int active, int buffering, int missing, int falling, long sumCache,
+               int estimated, int[] capacity) {
+            this.total = total;
+            this.active = active;
+            this.buffering = buffering;
+            this.missing = missing;
+            this.falling = falling;
+            this.sumCache = sumCache;
+            this.estimated = estimated;
+            this.capacity = capacity;
+        }
+
+        /**
+         * The capacity, in kb/s, that at least `percentile`% of estimated
+         * clients fall at or below, rounded down to a bucket; 0 if no client
+         * has an estimate. A low percentile is a rate nearly everyone can take.
+         */
+        public int capacityPercentile(int percentile) {
+            if (estimated == 0) return 0;
+
+            long rank = Math.max(1, ((long) estimated * percentile + 99) / 100);
+            long seen = 0;
+            for (int i = 0; i < capacity.length; i++) {
+                seen += capacity[i];
+                if (seen >= rank) return i * CAPACITY_BUCKET_KBPS;
+            }
+            return (capacity.length - 1) * CAPACITY_BUCKET_KBPS;
+        }
+
+        public int avgCache() {
+            return active == 0 ? 0 : (int) (sumCache / active);
+        }
+
+        public int percentBuffering() {
+            return active == 0 ? 0 : (int) ((buffering * 100.0) / active);
+        }
+
+        public int percentMissing() {
+            return active == 0 ? 0 : (int) ((missing * 100.0) / active);
+        }
+
+        public int percentFalling() {
+            return active == 0 ? 0 : (int) ((falling * 100.0) / active);
+        }
+    }
+
+    /**
+     * One client's bookkeeping for its time in one aggregator; the client
+     * reaches it through Client.aggNode. Written under the aggregator's
+     * lock; the volatile fields are also read by publishing threads
+     * without it. A client that leaves and rejoins gets a new node, so an
+     * old one still in the grace queue or on the change list is skipped.
+     */
+    static final class Node {
+        final TelemetryAggregator aggregator;
+        final Client client;
+
+        TelemetrySnapshot counted;
+        volatile boolean active;
+        volatile boolean missing;
+        long seenMs;
+        Node older;
+        Node newer;
+        // On the lock-free list of clients with uncounted changes
+        volatile boolean queued;
+        Node nextQueued;
+
+        Node(TelemetryAggregator aggregator, Client client) {
+            this.aggregator = aggregator;
+            this.client = client;
+        }
+
+        boolean current() {
+            return client.aggNode == this;
+        }
+    }
+
+    private long graceMs = 0;
+
+    // Run outside the lock when a client gets worse; must be cheap
+    private volatile Runnable wakeup;
+
+    // Running totals; everything but total only counts active clients
+    private int total = 0;
+    private int active = 0;
+    private int buffering = 0;
+    private int missing = 0;
+    private int falling = 0;
+    private int estimated = 0;
+    private final int[] capacity = new int[CAPACITY_BUCKETS];
+    private long sumCache = 0;
+
+    // Clients still in their grace period, oldest first
+    private final ArrayDeque<Node> grace = new ArrayDeque<>();
+
+    // Clients that are not missing, by Node.seenMs, oldest first,
+    // linked through Node.older / newer
+    private Node oldest;
+    private Node newest;
+
+    // Clients with uncounted changes, pushed by publishing threads and
+    // taken as a whole by sample(); linked through Node.nextQueued
+    private volatile Node queued;
+
+    private static final VarHandle QUEUED;
+    private static final VarHandle NODE_QUEUED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            QUEUED = lookup.findVarHandle(TelemetryAggregator.class, "queued", Node.class);
+            NODE_QUEUED = lookup.findVarHandle(Node.class, "queued", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Tracks every client in the registry from the moment it is added.
+     */
+    public TelemetryAggregator(ClientRegistry clients) {
+        clients.addListener(this);
+    }
+
+    /**
+     * How long a new client is left out of the totals after it joins.
+     */
+    public synchronized void setGracePeriodMs(long graceMs) {
+        this.graceMs = graceMs;
+    }
+
+    /**
+     * Sets the hook run whenever an active client's telemetry gets worse,
+     * on the thread that reported the change. Null to remove it.
+     */
+    public void setWakeup(Runnable wakeup) {
+        this.wakeup = wakeup;
+    }
+
+    // ----------------------------------------------------------------------
+    // Membership
+    // ----------------------------------------------------------------------
+
+    // The client's current telemetry is its starting point, so it has to be
+    // registered before its RC reader starts updating it
+    @Override
+    public synchronized void clientAdded(Client c) {
+        Node existing = c.aggNode;
+        if (existing != null && existing.aggregator == this) return;
+
+        Node n = new Node(this, c);
+        n.seenMs = c.getLastUpdateMs();
+        c.aggNode = n;
+        total++;
+
+        insert(n);
+        grace.add(n);
+    }
+
+    @Override
+    public synchronized void clientRemoved(Client c) {
+        Node n = c.aggNode;
+        if (n == null || n.aggregator != this) return;
+
+        if (n.active) {
+            active--;
+            if (n.missing) missing--;
+            uncount(n.counted);
+            n.counted = null;
+        }
+        if (!n.missing) unlink(n);
+
+        // Left in the grace queue or on the change list if it's there;
+        // neither counts it again
+        c.aggNode = null;
+        n.active = false;
+        total--;
+    }
+
+    // ----------------------------------------------------------------------
+    // Changes reported by Client, on its thread and without a lock
+    // ----------------------------------------------------------------------
+
+    // Its client published `now` in place of `before`
+    void changed(Node n, TelemetrySnapshot before, TelemetrySnapshot now) {
+        if (!n.current()) return;
+        enqueue(n);
+
+        if (n.active && worsened(before, now)) {
+            Runnable w = wakeup;
+            if (w != null) w.run();
+        }
+    }
+
+    // A client counted as missing sent something again
+    void heard(Node n) {
+        if (n.current()) enqueue(n);
+    }
+
+    private void enqueue(Node n) {
+        if (!NODE_QUEUED.compareAndSet(n, false, true)) return;
+        Node head;
+        do {
+            head = queued;
+            n.nextQueued = head;
+        } while (!QUEUED.compareAndSet(this, head, n));
+    }
+
+    // Holding the lock: recounts every queued client at its current snapshot
+    private void drain(long now) {
+        Node n = (Node) QUEUED.getAndSet(this, (Node) null);
+        while (n != null) {
+            Node next = n.nextQueued;
+            n.nextQueued = null;
+            // Changes from here on queue it again
+            n.queued = false;
+            if (n.current()) reconcile(n, now);
+            n = next;
+        }
+    }
+
+    private void reconcile(Node n, long now) {
+        if (n.active) {
+            TelemetrySnapshot current = n.client.getTelemetry();
+            uncount(n.counted);
+            count(current);
+            n.counted = current;
+        }
+
+        long last = n.client.getLastUpdateMs();
+        if (n.missing && now - last < STALE_MS) {
+            n.missing = false;
+            if (n.active) missing--;
+            n.seenMs = last;
+            insert(n);
+        }
+    }
+
+    private static boolean worsened(TelemetrySnapshot before, TelemetrySnapshot now) {
+        return (now.isBuffering() && !before.isBuffering())
+                || (now.isCacheFalling() && !before.isCacheFalling())
+                || before.getCachePercent() - now.getCachePercent() >= SHARP_CACHE_DROP;
+    }
+
+    // ----------------------------------------------------------------------
+    // Sampling
+    // ----------------------------------------------------------------------
+    public synchronized Sample sample(long now) {
+        drain(now);
+
+        // Clients whose grace period has ended
+        Node n;
+        while ((n = grace.peek()) != null) {
+            if (n.current() && n.client.getFirstSeenMs() + graceMs > now) break;
+            grace.poll();
+            if (n.current() && !n.active) activate(n);
+        }
+
+        // Clients that have gone quiet, or been heard since they were last seen
+        while (oldest != null && now - oldest.seenMs >= STALE_MS) {
+            n = oldest;
+            unlink(n);
+            long last = n.client.getLastUpdateMs();
+            if (now - last < STALE_MS) {
+                n.seenMs = last;
+                insert(n);
+            } else {
+                n.missing = true;
+                if (n.active) missing++;
+            }
+        }
+
+        return new Sample(total, active, buffering, missing, falling, sumCache,
+                estimated, capacity.clone());
+    }
+
+    private void activate(Node n) {
+        n.active = true;
+        active++;
+        if (n.missing) missing++;
+        n.counted = n.client.getTelemetry();
+        count(n.counted);
+    }
+
+    private void count(TelemetrySnapshot t) {
+        if (t.isBuffering()) buffering++;
+        if (t.isCacheFalling()) falling++;
+        sumCache += t.getCachePercent();
+        if (t.getCapacityKbps() > 0) {
+            estimated++;
+            capacity[bucket(t.getCapacityKbps())]++;
+        }
+    }
+
+    private void uncount(TelemetrySnapshot t) {
+        if (t.isBuffering()) buffering--;
+        if (t.isCacheFalling()) falling--;
+        sumCache -= t.getCachePercent();
+        if (t.getCapacityKbps() > 0) {
+            estimated--;
+            capacity[bucket(t.getCapacityKbps())]--;
+        }
+    }
+
+    private static int bucket(int kbps) {
+        return Math.min(CAPACITY_BUCKETS - 1, kbps / CAPACITY_BUCKET_KBPS);
+    }
+
+    // ----------------------------------------------------------------------
+    // Recency list
+    // ----------------------------------------------------------------------
+    // In seenMs order; it is nearly always the newest, so this starts there
+    private void insert(Node n) {
+        Node before = newest;
+        while (before != null && before.seenMs > n.seenMs) before = before.older;
+
+        Node after = before != null ? before.newer : oldest;
+        n.older = before;
+        n.newer = after;
+        if (before != null) before.newer = n;
+        else oldest = n;
+        if (after != null) after.older = n;
+        else newest = n;
+    }
+
+    private void unlink(Node n) {
+        if (n.older != null) n.older.newer = n.newer;
+        else oldest = n.newer;
+        if (n.newer != null) n.newer.older = n.older;
+        else newest = n.older;
+        n.older = null;
+        n.newer = null;
+    }
+}
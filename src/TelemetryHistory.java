@@ -0,0 +1,245 @@
+package src;
+
+/**
+ * TelemetryHistory keeps the last `capacity` telemetry samples of one client
+ * in fixed primitive arrays: cache %, buffering (0/100), frames dropped since
+ * the previous sample, and input bitrate, each with its timestamp.
+ *
+ * Every series keeps its aggregates up to date as samples come and go, so
+ * reading an EWMA, window min/max or least-squares slope is O(1): min/max
+ * use monotonic index queues, the slope running sums over the window.
+ * Memory is fixed at construction no matter how long the client stays.
+ */
+public class TelemetryHistory {
+
+    // Two minutes at the default 5 s stats interval
+    public static final int DEFAULT_CAPACITY = 24;
+
+    // Weight of the newest sample in every EWMA
+    private static final double ALPHA = 0.3;
+
+    // Cache dropping faster than this over the window counts as falling
+    private static final double FALLING_CACHE_PER_S = -0.5;
+    private static final int MIN_TREND_SAMPLES = 3;
+
+    private final int capacity;
+    private final long[] timeMs;
+    private int next = 0;
+    private int size = 0;
+    private long count = 0;
+
+    private final Series cache;
+    private final Series buffering;
+    private final Series drops;
+    private final Series bitrate;
+
+    private int lastDroppedFrames = -1;
+
+    public TelemetryHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TelemetryHistory(int capacity) {
+        this.capacity = Math.max(2, capacity);
+        this.timeMs = new long[this.capacity];
+        this.cache = new Series(this.capacity);
+        this.buffering = new Series(this.capacity);
+        this.drops = new Series(this.capacity);
+        this.bitrate = new Series(this.capacity);
+    }
+
+    /**
+     * Appends one sample, evicting the oldest once full. Returns whether the
+     * cache is now trending down.
+     */
+    public synchronized boolean record(long nowMs, TelemetrySnapshot t) {
+        int dropped = t.getDroppedFrames();
+        int dropDelta = lastDroppedFrames < 0 ? 0 : Math.max(0, dropped - lastDroppedFrames);
+        lastDroppedFrames = dropped;
+
+        boolean evicting = size == capacity;
+        int slot = next;
+        long evictedMs = timeMs[slot];
+
+        timeMs[slot] = nowMs;
+        next = (next + 1) % capacity;
+        if (!evicting) size++;
+        count++;
+
+        cache.push(slot, t.getCachePercent(), evicting, evictedMs, nowMs);
+        buffering.push(slot, t.isBuffering() ? 100 : 0, evicting, evictedMs, nowMs);
+        drops.push(slot, dropDelta, evicting, evictedMs, nowMs);
+        bitrate.push(slot, t.getInputBitrateKbps(), evicting, evictedMs, nowMs);
+
+        // Running sums pick up rounding on every eviction; start over once a lap
+        if (count % capacity == 0) {
+            cache.rebuild();
+            buffering.rebuild();
+            drops.rebuild();
+            bitrate.rebuild();
+        }
+
+        return cacheFalling();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isCacheFalling() {
+        return cacheFalling();
+    }
+
+    private boolean cacheFalling() {
+        return size >= MIN_TREND_SAMPLES && cache.slope() < FALLING_CACHE_PER_S;
+    }
+
+    // ----------------------------------------------------------------------
+    // Aggregates over the window (0 when empty)
+    // ----------------------------------------------------------------------
+    public synchronized double cacheEwma() {
+        return cache.ewma;
+    }
+
+    public synchronized int cacheMin() {
+        return cache.min();
+    }
+
+    public synchronized int cacheMax() {
+        return cache.max();
+    }
+
+    // Percentage points per second
+    public synchronized double cacheSlope() {
+        return cache.slope();
+    }
+
+    // Share of recent samples spent buffering, 0-100
+    public synchronized double bufferingEwma() {
+        return buffering.ewma;
+    }
+
+    public synchronized double dropsEwma() {
+        return drops.ewma;
+    }
+
+    public synchronized int dropsMax() {
+        return drops.max();
+    }
+
+    public synchronized double bitrateEwma() {
+        return bitrate.ewma;
+    }
+
+    public synchronized int bitrateMin() {
+        return bitrate.min();
+    }
+
+    public synchronized int bitrateMax() {
+        return bitrate.max();
+    }
+
+    // kb/s per second
+    public synchronized double bitrateSlope() {
+        return bitrate.slope();
+    }
+
+    // ----------------------------------------------------------------------
+    // One series, sharing the history's slots and timestamps
+    // ----------------------------------------------------------------------
+    private final class Series {
+        private final int[] values;
+
+        // Slots of the window's maxima (values decreasing) and minima (increasing)
+        private final int[] maxQ;
+        private final int[] minQ;
+        private int maxHead, maxLen, minHead, minLen;
+
+        double ewma = 0;
+        private boolean seeded = false;
+
+        // Least-squares sums over the window, x in seconds since `baseMs`
+        private long baseMs;
+        private double sx, sy, sxx, sxy;
+
+        Series(int capacity) {
+            values = new int[capacity];
+            maxQ = new int[capacity];
+            minQ = new int[capacity];
+        }
+
+        void push(int slot, int value, boolean evicting, long evictedMs, long nowMs) {
+            if (evicting) {
+                // The slot being reused holds the oldest sample in the window
+                int old = values[slot];
+                double ox = (evictedMs - baseMs) / 1000.0;
+                sx -= ox;
+                sy -= old;
+                sxx -= ox * ox;
+                sxy -= ox * old;
+
+                if (maxLen > 0 && maxQ[maxHead] == slot) {
+                    maxHead = (maxHead + 1) % capacity;
+                    maxLen--;
+                }
+                if (minLen > 0 && minQ[minHead] == slot) {
+                    minHead = (minHead + 1) % capacity;
+                    minLen--;
+                }
+            }
+
+            values[slot] = value;
+
+            if (!seeded) {
+                baseMs = nowMs;
+                ewma = value;
+                seeded = true;
+            } else {
+                ewma += ALPHA * (value - ewma);
+            }
+
+            double x = (nowMs - baseMs) / 1000.0;
+            sx += x;
+            sy += value;
+            sxx += x * x;
+            sxy += x * value;
+
+            while (maxLen > 0 && values[maxQ[(maxHead + maxLen - 1) % capacity]] <= value) maxLen--;
+            maxQ[(maxHead + maxLen++) % capacity] = slot;
+
+            while (minLen > 0 && values[minQ[(minHead + minLen - 1) % capacity]] >= value) minLen--;
+            minQ[(minHead + minLen++) % capacity] = slot;
+        }
+
+        int max() {
+            return maxLen == 0 ? 0 : values[maxQ[maxHead]];
+        }
+
+        int min() {
+            return minLen == 0 ? 0 : values[minQ[minHead]];
+        }
+
+        double slope() {
+            int n = size;
+            if (n < 2) return 0;
+            double denom = n * sxx - sx * sx;
+            if (denom <= 1e-9) return 0;
+            return (n * sxy - sx * sy) / denom;
+        }
+
+        // Recomputes the sums from the window, rebased on its oldest sample
+        void rebuild() {
+            int oldest = size < capacity ? 0 : next;
+            baseMs = timeMs[oldest];
+            sx = sy = sxx = sxy = 0;
+            for (int i = 0; i < size; i++) {
+                int slot = (oldest + i) % capacity;
+                double x = (timeMs[slot] - baseMs) / 1000.0;
+                sx += x;
+                sy += values[slot];
+                sxx += x * x;
+                sxy += x * values[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package src;
+
+/**
+ * One client's telemetry at a single instant. Immutable: Client publishes a
+ * new snapshot for every change, so a reader holding one sees values that
+ * were all current together, e.g. a drop count next to the previous count
+ * it is diffed against.
+ *
+ * Every field is final; the with* methods build a modified copy through
+ * the all-args constructor, or return the same snapshot when nothing
+ * changes. The heartbeat (last update time) lives on Client, so an RC
+ * line that changes nothing allocates nothing.
+ */
+public final class TelemetrySnapshot {
+
+    private final int cachePercent;
+    private final boolean buffering;
+    private final int droppedFrames;
+    private final int lastDroppedFrames;
+    private final int inputBitrateKbps;
+    private final int lostPackets;
+
+    // From the client's TelemetryHistory and BandwidthEstimator as of its
+    // last recorded sample; 0 capacity means no estimate yet
+    private final boolean cacheFalling;
+    private final int capacityKbps;
+
+    // A new client: full cache, nothing measured yet
+    TelemetrySnapshot() {
+        this(100, false, 0, 0, 0, 0, false, 0);
+    }
+
+    private TelemetrySnapshot(int cachePercent, boolean buffering, int droppedFrames, int lastDroppedFrames,
+                              int inputBitrateKbps, int lostPackets, boolean cacheFalling, int capacityKbps) {
+        this.cachePercent = cachePercent;
+        this.buffering = buffering;
+        this.droppedFrames = droppedFrames;
+        this.lastDroppedFrames = lastDroppedFrames;
+        this.inputBitrateKbps = inputBitrateKbps;
+        this.lostPackets = lostPackets;
+        this.cacheFalling = cacheFalling;
+        this.capacityKbps = capacityKbps;
+    }
+
+    // ----------------------------------------------------------------------
+    // Copies with one change
+    // ----------------------------------------------------------------------
+    TelemetrySnapshot withCachePercent(int percent) {
+        if (percent == cachePercent) return this;
+        return new TelemetrySnapshot(percent, buffering, droppedFrames, lastDroppedFrames,
+                inputBitrateKbps, lostPackets, cacheFalling, capacityKbps);
+    }
+
+    TelemetrySnapshot withBuffering(boolean value) {
+        if (value == buffering) return this;
+        return new TelemetrySnapshot(cachePercent, value, droppedFrames, lastDroppedFrames,
+                inputBitrateKbps, lostPackets, cacheFalling, capacityKbps);
+    }
+
+    TelemetrySnapshot withDroppedFrames(int count) {
+        if (count == droppedFrames && lastDroppedFrames == droppedFrames) return this;
+        return new TelemetrySnapshot(cachePercent, buffering, count, droppedFrames,
+                inputBitrateKbps, lostPackets, cacheFalling, capacityKbps);
+    }
+
+    TelemetrySnapshot withInputBitrate(int kbps) {
+        if (kbps == inputBitrateKbps) return this;
+        return new TelemetrySnapshot(cachePercent, buffering, droppedFrames, lastDroppedFrames,
+                kbps, lostPackets, cacheFalling, capacityKbps);
+    }
+
+    TelemetrySnapshot withLostPackets(int count) {
+        if (count == lostPackets) return this;
+        return new TelemetrySnapshot(cachePercent, buffering, droppedFrames, lastDroppedFrames,
+                inputBitrateKbps, count, cacheFalling, capacityKbps);
+    }
+
+    TelemetrySnapshot withTrends(boolean falling, int capacity) {
+        if (falling == cacheFalling && capacity == capacityKbps) return this;
+        return new TelemetrySnapshot(cachePercent, buffering, droppedFrames, lastDroppedFrames,
+                inputBitrateKbps, lostPackets, falling, capacity);
+    }
+
+    // ----------------------------------------------------------------------
+    // Getters
+    // ----------------------------------------------------------------------
+    public int getCachePercent() {
+        return cachePercent;
+    }
+
+    public boolean isBuffering() {
+        return buffering;
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public int getDroppedDelta() {
+        return Math.max(0, droppedFrames - lastDroppedFrames);
+    }
+
+    public int getInputBitrateKbps() {
+        return inputBitrateKbps;
+    }
+
+    // Cumulative, as VLC reports it
+    public int getLostPackets() {
+        return lostPackets;
+    }
+
+    // Cache has been trending down over the recent history window
+    public boolean isCacheFalling() {
+        return cacheFalling;
+    }
+
+    // Estimated sustainable receive rate, 0 until there is one
+    public int getCapacityKbps() {
+        return capacityKbps;
+    }
+
+    // ----------------------------------------------------------------------
+    // Derived health logic
+    // ----------------------------------------------------------------------
+
+    public boolean isHealthy() {
+        // High cache, no buffering, minimal drops
+        return cachePercent >= 80 &&
+                !buffering &&
+                getDroppedDelta() == 0;
+    }
+
+    public boolean isStruggling() {
+        // Buffering or low cache or rising drops
+        return buffering ||
+                cachePercent <= 40 ||
+                getDroppedDelta() > 3;
+    }
+}
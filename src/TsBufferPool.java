@@ -0,0 +1,54 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed pool of direct ByteBuffers shared by the TS readers and senders.
+ * Buffers are allocated once up front and recycled, so the packet path
+ * never allocates; if the pool runs dry a new buffer is created and counted
+ * so an undersized pool shows up in the stats instead of as a stall.
+ */
+public class TsBufferPool {
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    private final AtomicLong overflowAllocations = new AtomicLong();
+
+    public TsBufferPool(int buffers, int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer b = free.poll();
+        if (b == null) {
+            overflowAllocations.incrementAndGet();
+            b = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return b.clear();
+    }
+
+    public void release(ByteBuffer b) {
+        if (b.capacity() != bufferSize) return;
+        // Extra buffers from overflow are simply dropped when the pool is full
+        free.offer(b);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int available() {
+        return free.size();
+    }
+
+    public long getOverflowAllocations() {
+        return overflowAllocations.get();
+    }
+}
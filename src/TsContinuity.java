@@ -0,0 +1,28 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rewrites continuity counters so packets stitched together from several
+ * sources (spliced encoders, separately muxed segments) look like one
+ * uninterrupted stream to the decoder.
+ */
+public class TsContinuity {
+
+    // Next continuity counter to emit per PID
+    private final byte[] nextCc = new byte[8192];
+
+    public void rewrite(ByteBuffer buf, int off) {
+        int pid = TsPacket.pid(buf, off);
+        if (pid == TsPacket.NULL_PID) return;
+
+        // The counter only advances on packets that carry payload
+        if (!TsPacket.hasPayload(buf, off)) {
+            TsPacket.setContinuityCounter(buf, off, (nextCc[pid] - 1) & 0x0F);
+            return;
+        }
+
+        TsPacket.setContinuityCounter(buf, off, nextCc[pid]);
+        nextCc[pid] = (byte) ((nextCc[pid] + 1) & 0x0F);
+    }
+}
@@ -0,0 +1,136 @@
+package src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Static helpers for reading and patching 188-byte MPEG-TS packets in place.
+ * All methods take the backing buffer and the absolute offset of the
+ * packet's sync byte; buffer position and limit are never touched.
+ */
+public final class TsPacket {
+
+    public static final int SIZE = 188;
+    public static final byte SYNC = 0x47;
+
+    // 7 packets per datagram keeps us under a 1500-byte Ethernet MTU
+    public static final int PER_DATAGRAM = 7;
+    public static final int DATAGRAM_SIZE = SIZE * PER_DATAGRAM;
+
+    public static final int PAT_PID = 0x0000;
+    public static final int NULL_PID = 0x1FFF;
+
+    // PCR runs at 27 MHz, PTS/DTS at 90 kHz
+    public static final long PCR_HZ = 27_000_000L;
+    public static final long PTS_HZ = 90_000L;
+
+    private TsPacket() {}
+
+    public static int pid(ByteBuffer b, int off) {
+        return ((b.get(off + 1) & 0x1F) << 8) | (b.get(off + 2) & 0xFF);
+    }
+
+    public static boolean payloadUnitStart(ByteBuffer b, int off) {
+        return (b.get(off + 1) & 0x40) != 0;
+    }
+
+    public static boolean hasAdaptationField(ByteBuffer b, int off) {
+        return (b.get(off + 3) & 0x20) != 0;
+    }
+
+    public static boolean hasPayload(ByteBuffer b, int off) {
+        return (b.get(off + 3) & 0x10) != 0;
+    }
+
+    public static int continuityCounter(ByteBuffer b, int off) {
+        return b.get(off + 3) & 0x0F;
+    }
+
+    public static void setContinuityCounter(ByteBuffer b, int off, int cc) {
+        b.put(off + 3, (byte) ((b.get(off + 3) & 0xF0) | (cc & 0x0F)));
+    }
+
+    // Offset of the first payload byte, or -1 if the packet carries none
+    public static int payloadOffset(ByteBuffer b, int off) {
+        if (!hasPayload(b, off)) return -1;
+        int p = off + 4;
+        if (hasAdaptationField(b, off)) {
+            p += 1 + (b.get(off + 4) & 0xFF);
+        }
+        return p < off + SIZE ? p : -1;
+    }
+
+    public static boolean randomAccess(ByteBuffer b, int off) {
+        return hasAdaptationField(b, off)
+                && (b.get(off + 4) & 0xFF) > 0
+                && (b.get(off + 5) & 0x40) != 0;
+    }
+
+    public static boolean hasPcr(ByteBuffer b, int off) {
+        return hasAdaptationField(b, off)
+                && (b.get(off + 4) & 0xFF) >= 7
+                && (b.get(off + 5) & 0x10) != 0;
+    }
+
+    // Program clock reference in 27 MHz ticks; only valid if hasPcr()
+    public static long pcr(ByteBuffer b, int off) {
+        long base = ((long) (b.get(off + 6) & 0xFF) << 25)
+                | ((b.get(off + 7) & 0xFF) << 17)
+                | ((b.get(off + 8) & 0xFF) << 9)
+                | ((b.get(off + 9) & 0xFF) << 1)
+                | ((b.get(off + 10) & 0x80) >> 7);
+        int ext = ((b.get(off + 10) & 0x01) << 8) | (b.get(off + 11) & 0xFF);
+        return base * 300 + ext;
+    }
+
+    /**
+     * Presentation timestamp (90 kHz, 33 bits) of the video PES that starts
+     * in this packet, or -1 if the packet doesn't start a video PES with a PTS.
+     */
+    public static long videoPts(ByteBuffer b, int off) {
+        if (!payloadUnitStart(b, off)) return -1;
+
+        int p = payloadOffset(b, off);
+        if (p < 0 || p + 14 > off + SIZE) return -1;
+
+        if (b.get(p) != 0 || b.get(p + 1) != 0 || b.get(p + 2) != 1) return -1;
+        if ((b.get(p + 3) & 0xF0) != 0xE0) return -1;
+
+        // PTS_DTS_flags: '10' or '11' means a PTS follows the header
+        if ((b.get(p + 7) & 0x80) == 0) return -1;
+
+        int t = p + 9;
+        return ((long) (b.get(t) & 0x0E) << 29)
+                | ((b.get(t + 1) & 0xFF) << 22)
+                | ((b.get(t + 2) & 0xFE) << 14)
+                | ((b.get(t + 3) & 0xFF) << 7)
+                | ((b.get(t + 4) & 0xFE) >> 1);
+    }
+
+    /**
+     * True if this packet starts a video PES that a decoder can begin on:
+     * either the muxer flagged it random-access, or the payload opens with an
+     * MPEG-2 sequence header / GOP header (what -target ntsc-dvd produces).
+     */
+    public static boolean isVideoKeyframeStart(ByteBuffer b, int off) {
+        if (!payloadUnitStart(b, off)) return false;
+
+        int p = payloadOffset(b, off);
+        if (p < 0 || p + 9 > off + SIZE) return false;
+
+        // PES start code + video stream id (0xE0-0xEF)
+        if (b.get(p) != 0 || b.get(p + 1) != 0 || b.get(p + 2) != 1) return false;
+        if ((b.get(p + 3) & 0xF0) != 0xE0) return false;
+
+        if (randomAccess(b, off)) return true;
+
+        int es = p + 9 + (b.get(p + 8) & 0xFF);
+        int end = off + SIZE - 3;
+        for (int i = es; i < end; i++) {
+            if (b.get(i) == 0 && b.get(i + 1) == 0 && b.get(i + 2) == 1) {
+                int code = b.get(i + 3) & 0xFF;
+                return code == 0xB3 || code == 0xB8;
+            }
+        }
+        return false;
+    }
+}
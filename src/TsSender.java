@@ -0,0 +1,368 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TsSender packs TS packets into 7x188-byte datagrams and sends them to a
+ * multicast group over a DatagramChannel, the same framing FFmpeg used with
+ * pkt_size=1316.
+ *
+ * Producers copy packets into pooled direct buffers; a pacer thread sends
+ * each datagram at the wall-clock time its PCR says it is due. Between PCRs
+ * the send time is interpolated from the previous PCR interval, so bursts
+ * from the encoder are smoothed out to the stream's real rate.
+ *
+ * The pacer also tracks the media position actually sent, from the video
+ * PTS of each datagram once it has been written. A producer calls
+ * beginEpoch() whenever it starts a new timestamp base (e.g. FFmpeg
+ * relaunched with -ss); whatever the old source still had queued is
+ * dropped, and position is the epoch's media start plus how far the PTS
+ * has advanced since.
+ */
+public class TsSender {
+
+    private static final Logger LOG = Logger.get("STREAM");
+
+    // Send time (System.nanoTime()) and epoch ride in a trailer after the datagram
+    private static final int DUE_OFFSET = TsPacket.DATAGRAM_SIZE;
+    private static final int EPOCH_BASE_OFFSET = DUE_OFFSET + Long.BYTES;
+    private static final int EPOCH_ID_OFFSET = EPOCH_BASE_OFFSET + Long.BYTES;
+    private static final int BUFFER_SIZE = EPOCH_ID_OFFSET + Integer.BYTES;
+
+    // ~1 s of queue at 10 Mbps; a full queue pushes back on the encoder
+    private static final int QUEUE_DATAGRAMS = 1024;
+    // A producer waiting on a full queue checks this often for close()
+    private static final long PUT_POLL_MS = 100;
+
+    // Falling this far behind the PCR schedule, or a PCR step outside
+    // (0, 1 s], restarts the schedule from the current packet
+    private static final long RESYNC_NS = 1_000_000_000L;
+    // Datagrams sent later than this count as late
+    private static final long LATE_NS = 50_000_000L;
+
+    private final String name;
+    private final DatagramChannel channel;
+    private final TsBufferPool pool = new TsBufferPool(QUEUE_DATAGRAMS + 2, BUFFER_SIZE);
+    private final ArrayBlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_DATAGRAMS);
+    private final Thread pacer;
+
+    private volatile boolean running = true;
+
+    // Producer-side state, guarded by this
+    private ByteBuffer current;
+    private long anchorPcr = -1;
+    private long anchorNs;
+    private long lastPcr;
+    private long lastPcrDueNs;
+    private long nsPerPacket;
+    private int packetsSincePcr;
+    private long epochBaseMs = 0;
+    // Written under this, read by the pacer to drop datagrams of a past epoch
+    private volatile int epochId = 0;
+
+    // Pacer-side position tracking (unwrapped 90 kHz PTS)
+    private int sentEpochId = -1;
+    private long sentEpochBaseMs;
+    private long firstPts = -1;
+    private long maxPts = -1;
+    private volatile long mediaPositionMs = -1;
+
+    // Packet accounting
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong datagramsSent = new AtomicLong();
+    private final AtomicLong lateDatagrams = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+
+    public TsSender(String multicastAddress, int multicastPort) throws IOException {
+        this.name = multicastAddress + ":" + multicastPort;
+
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        // Same multicast TTL FFmpeg's udp:// output used
+        this.channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 16);
+        this.channel.connect(new InetSocketAddress(multicastAddress, multicastPort));
+
+        this.pacer = new Thread(this::paceLoop, "TsSender-" + name);
+        this.pacer.setDaemon(true);
+        this.pacer.start();
+    }
+
+    // ----------------------------------------------------------------------
+    // Producer side
+    // ----------------------------------------------------------------------
+
+    /**
+     * Queues the 188-byte packet at buf[off]. Blocks only if the pacer is more
+     * than QUEUE_DATAGRAMS behind, which in turn throttles the encoder pipe.
+     * Packets sent after close() are dropped.
+     *
+     * A producer interrupted while it waits gets a CancellationException,
+     * with its interrupt flag still set: it is being stopped, and should
+     * stop sending rather than lose every packet from then on.
+     */
+    public synchronized void send(ByteBuffer buf, int off) {
+        append(buf, off, null);
+    }
+
+    /**
+     * Same as send(), but rewrites the continuity counter in the queued copy
+     * rather than in buf, so read-only sources (mapped segments) can be
+     * stitched together.
+     */
+    public synchronized void send(ByteBuffer buf, int off, TsContinuity continuity) {
+        append(buf, off, continuity);
+    }
+
+    private void append(ByteBuffer buf, int off, TsContinuity continuity) {
+        if (!running) return;
+
+        if (TsPacket.hasPcr(buf, off)) {
+            onPcr(TsPacket.pcr(buf, off));
+        }
+
+        if (current == null) {
+            current = pool.acquire();
+            current.putLong(DUE_OFFSET, lastPcrDueNs + packetsSincePcr * nsPerPacket);
+            current.putLong(EPOCH_BASE_OFFSET, epochBaseMs);
+            current.putInt(EPOCH_ID_OFFSET, epochId);
+        }
+
+        int at = current.position();
+        current.put(at, buf, off, TsPacket.SIZE);
+        if (continuity != null) continuity.rewrite(current, at);
+        current.position(at + TsPacket.SIZE);
+        packetsSincePcr++;
+
+        if (current.position() == TsPacket.DATAGRAM_SIZE) {
+            enqueue();
+        }
+    }
+
+    // Sends whatever is buffered now instead of waiting for a full datagram
+    public synchronized void flush() {
+        if (current != null && current.position() > 0) {
+            enqueue();
+        }
+    }
+
+    /**
+     * Starts a new timestamp epoch: packets queued from now on are from a
+     * source whose first frame is at mediaStartMs. Anything the old source
+     * still had buffered is dropped, since the new one replaces it from
+     * where viewers are; a producer that wants its tail to play out (e.g.
+     * a looping file) waits for getQueuedDatagrams() to reach 0 first.
+     */
+    public synchronized void beginEpoch(long mediaStartMs) {
+        if (current != null) {
+            pool.release(current);
+            current = null;
+        }
+        ByteBuffer b;
+        while ((b = queue.poll()) != null) pool.release(b);
+        epochId++;
+        epochBaseMs = mediaStartMs;
+    }
+
+    private void onPcr(long pcr) {
+        long now = System.nanoTime();
+
+        if (anchorPcr >= 0) {
+            long step = pcr - lastPcr;
+            long due = anchorNs + pcrToNs(pcr - anchorPcr);
+
+            if (step > 0 && step <= TsPacket.PCR_HZ && now - due < RESYNC_NS) {
+                long sinceLast = due - lastPcrDueNs;
+                if (packetsSincePcr > 0) nsPerPacket = sinceLast / packetsSincePcr;
+                lastPcr = pcr;
+                lastPcrDueNs = due;
+                packetsSincePcr = 0;
+                return;
+            }
+            // PCR jumped (splice, restart, wrap) or we fell too far behind
+            resyncs.incrementAndGet();
+        }
+
+        anchorPcr = pcr;
+        lastPcr = pcr;
+        anchorNs = now;
+        lastPcrDueNs = now;
+        packetsSincePcr = 0;
+    }
+
+    private static long pcrToNs(long ticks) {
+        return ticks * 1000 / 27;
+    }
+
+    private void enqueue() {
+        ByteBuffer b = current;
+        current = null;
+        try {
+            while (!queue.offer(b, PUT_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    pool.release(b);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            pool.release(b);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while queueing for " + name);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Pacer
+    // ----------------------------------------------------------------------
+    private void paceLoop() {
+        while (running) {
+            ByteBuffer b;
+            try {
+                b = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            // Read the trailer before flip() moves the limit in front of it
+            long due = b.getLong(DUE_OFFSET);
+            int epoch = b.getInt(EPOCH_ID_OFFSET);
+            long baseMs = b.getLong(EPOCH_BASE_OFFSET);
+            b.flip();
+
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            // Taken before a beginEpoch(): the rest of its source was dropped too
+            if (epoch != epochId) {
+                pool.release(b);
+                continue;
+            }
+            if (-wait > LATE_NS) lateDatagrams.incrementAndGet();
+
+            try {
+                int packets = b.remaining() / TsPacket.SIZE;
+                channel.write(b);
+                packetsSent.addAndGet(packets);
+                datagramsSent.incrementAndGet();
+                trackPosition(b, epoch, baseMs);
+            } catch (IOException e) {
+                // close() interrupts a write in progress; that isn't a send error
+                if (!running) break;
+                if (sendErrors.getAndIncrement() == 0) {
+                    LOG.warn("Send failed on " + name + ": " + e.getMessage());
+                }
+            }
+
+            pool.release(b);
+        }
+    }
+
+    // Advances the sent media position from the video PTS in one written datagram
+    private void trackPosition(ByteBuffer b, int epoch, long baseMs) {
+        if (epoch != sentEpochId) {
+            sentEpochId = epoch;
+            sentEpochBaseMs = baseMs;
+            firstPts = -1;
+            maxPts = -1;
+            // Not the last epoch's position while this one waits for a PTS
+            mediaPositionMs = baseMs;
+        }
+
+        int end = b.limit();
+        for (int off = 0; off < end; off += TsPacket.SIZE) {
+            long pts = TsPacket.videoPts(b, off);
+            if (pts < 0) continue;
+
+            if (firstPts < 0) {
+                firstPts = pts;
+                maxPts = pts;
+                continue;
+            }
+
+            // Unwrap the 33-bit counter relative to what we've already seen
+            long wraps = (maxPts - pts + (1L << 32)) >> 33;
+            pts += wraps << 33;
+
+            // B-frames arrive out of order: the earliest frame is the true start
+            if (pts < firstPts) firstPts = pts;
+            if (pts > maxPts) maxPts = pts;
+        }
+
+        if (firstPts >= 0) {
+            mediaPositionMs = sentEpochBaseMs + (maxPts - firstPts) * 1000 / TsPacket.PTS_HZ;
+        }
+    }
+
+    /**
+     * Media position (ms into the source) of the latest frame handed to the
+     * network, or -1 before anything has gone out.
+     */
+    public long getMediaPositionMs() {
+        return mediaPositionMs;
+    }
+
+    /**
+     * Stops the pacer and drops whatever is queued, which also frees any
+     * producer blocked on a full queue; it returns from send() at once.
+     */
+    public void close() {
+        running = false;
+        pacer.interrupt();
+        ByteBuffer b;
+        while ((b = queue.poll()) != null) pool.release(b);
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Accounting
+    // ----------------------------------------------------------------------
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent.get();
+    }
+
+    public long getBytesSent() {
+        return packetsSent.get() * TsPacket.SIZE;
+    }
+
+    public long getLateDatagrams() {
+        return lateDatagrams.get();
+    }
+
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    public long getSendErrors() {
+        return sendErrors.get();
+    }
+
+    public int getQueuedDatagrams() {
+        return queue.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + " packets=" + getPacketsSent() +
+                " datagrams=" + getDatagramsSent() +
+                " late=" + getLateDatagrams() +
+                " resyncs=" + getResyncs() +
+                " errors=" + getSendErrors();
+    }
+}
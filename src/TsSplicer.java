@@ -0,0 +1,151 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * TsSplicer forwards the output of exactly one encoder from a ladder of
+ * already-running encoders. A switch request is held until the target
+ * encoder emits the start of a new GOP, so the cut always lands on a frame
+ * the decoder can start from and no process has to be restarted.
+ *
+ * All rungs are launched together from the same input with the same GOP
+ * cadence, so their PIDs and timestamps line up; continuity counters are
+ * rewritten per PID so the output looks like a single uninterrupted stream.
+ *
+ * A rung relaunched after a crash starts its timestamps over from where it
+ * was told to seek to. A cut between rungs on different timebases starts a
+ * new epoch on the sender at the source position of the cut frame, so
+ * TsSender.getMediaPositionMs() keeps following the source.
+ */
+public class TsSplicer implements FfmpegEncoder.PacketSink {
+
+    private static final Logger LOG = Logger.get("STREAM");
+
+    private final FfmpegEncoder[] rungs;
+    private final TsSender sender;
+
+    // -1 while the rung on air is being replaced, until the cut to another
+    private int active;
+    private int pending = -1;
+    private long pendingSinceNs;
+
+    // Per rung: which launch its timestamps come from, where in the source
+    // (ms) that launch started, and the first video PTS it produced (-1 until
+    // then). The original rungs share timebase 0
+    private final int[] timebase;
+    private final long[] startMs;
+    private final long[] firstPts;
+    private int nextTimebase = 1;
+    // Timebase of what the sender is sending
+    private int airTimebase = 0;
+
+    private final TsContinuity continuity = new TsContinuity();
+
+    // The rungs all start at startMs in the source, the sender's current epoch
+    public TsSplicer(FfmpegEncoder[] rungs, int initial, TsSender sender, long startMs) {
+        this.rungs = rungs;
+        this.active = initial;
+        this.sender = sender;
+        this.timebase = new int[rungs.length];
+        this.startMs = new long[rungs.length];
+        this.firstPts = new long[rungs.length];
+        Arrays.fill(this.startMs, startMs);
+        Arrays.fill(this.firstPts, -1);
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    // Request a cut to the given rung at its next GOP boundary
+    public synchronized void switchTo(int rung) {
+        if (rung == active) {
+            pending = -1;
+            return;
+        }
+        pending = rung;
+        pendingSinceNs = System.nanoTime();
+    }
+
+    /**
+     * The rung's encoder has died. If it was on air, or about to be, cut to
+     * the nearest rung that is still running, below it first, so viewers
+     * lose at most one GOP instead of waiting for FFmpeg to come back.
+     */
+    public synchronized void rungFailed(int rung) {
+        if (rung != active && rung != pending) return;
+
+        for (int d = 1; d < rungs.length; d++) {
+            if (rung - d >= 0 && rungs[rung - d].isAlive()) {
+                switchTo(rung - d);
+                return;
+            }
+            if (rung + d < rungs.length && rungs[rung + d].isAlive()) {
+                switchTo(rung + d);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts a new encoder in rung i's place, e.g. a relaunch of one that died,
+     * started from startMs in the source. Packets the old process still
+     * delivers are dropped from then on. If rung i was still on air, nothing
+     * is until the new encoder's first keyframe.
+     */
+    public synchronized void replaceRung(int i, FfmpegEncoder encoder, long startMs) {
+        rungs[i] = encoder;
+        timebase[i] = nextTimebase++;
+        this.startMs[i] = startMs;
+        firstPts[i] = -1;
+
+        if (i == active) {
+            active = -1;
+            if (pending < 0) switchTo(i);
+        }
+    }
+
+    @Override
+    public void onPacket(FfmpegEncoder encoder, ByteBuffer buf, int off) {
+        synchronized (this) {
+            // A replaced encoder's reader may still be draining its pipe
+            int rung = indexOf(encoder);
+            if (rung < 0) return;
+
+            if (firstPts[rung] < 0) firstPts[rung] = TsPacket.videoPts(buf, off);
+
+            if (rung == pending && TsPacket.isVideoKeyframeStart(buf, off)) {
+                long latencyMs = (System.nanoTime() - pendingSinceNs) / 1_000_000;
+                LOG.info("Spliced to " + rungs[rung].getName() +
+                        " after " + latencyMs + " ms");
+                if (timebase[rung] != airTimebase) reanchor(rung, buf, off);
+                active = rung;
+                pending = -1;
+            }
+
+            if (rung != active) return;
+
+            continuity.rewrite(buf, off);
+            sender.send(buf, off);
+        }
+    }
+
+    // Holding the lock: a new epoch at the source position of this frame
+    private void reanchor(int rung, ByteBuffer buf, int off) {
+        long position = startMs[rung];
+        long pts = TsPacket.videoPts(buf, off);
+        if (pts > firstPts[rung] && firstPts[rung] >= 0) {
+            position += (pts - firstPts[rung]) * 1000 / TsPacket.PTS_HZ;
+        }
+        sender.beginEpoch(position);
+        airTimebase = timebase[rung];
+    }
+
+    private int indexOf(FfmpegEncoder encoder) {
+        for (int i = 0; i < rungs.length; i++) {
+            if (rungs[i] == encoder) return i;
+        }
+        return -1;
+    }
+}
@@ -1,126 +1,922 @@
 package src;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Vector;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class VideoStreamer {
 
+    // "STREAM", or "STREAM <channel>" once named
+    private Logger log = Logger.get("STREAM");
+    private String name;
+
     private final String inputFile;
-    private final String multicastAddress = "230.0.0.0";
-    private final int multicastPort = 4446;
+    private String multicastAddress = "230.0.0.0";
+    private int multicastPort = 4446;
+    // Start the input over at its end instead of stopping
+    private boolean loop = false;
+    // The on-air FFmpeg reached the end of a looping input: the next
+    // launch starts from 0 rather than where viewers are
+    private boolean wrapped = false;
 
     private int bitrateKbps = 5000;
 
-    private Process ffmpegProcess;
-    private boolean streaming = false;
+    private volatile boolean streaming = false;
+
+    // Read by getMediaPositionMs() from the expert and monitor threads
+    private volatile long startMs = 0;
+    private volatile long offsetMs = 0;
+
+    // Restart mode: onAir is the FFmpeg being sent. A new bitrate starts as
+    // pending and takes over at its first keyframe, so the group keeps
+    // playing while FFmpeg starts up. With a warm standby one more process
+    // runs a step away, ready to become pending without a cold start.
+    // All three are guarded by the sender
+    private Launch onAir;
+    private Launch pending;
+    private Launch standby;
+    private int standbyStepKbps = 0;
+    private int standbyMinKbps = 0;
+
+    // Launch to first keyframe of a cold FFmpeg, averaged; new processes
+    // seek this far ahead so the cut doesn't replay what viewers just saw
+    private volatile long startupMs = 0;
+
+    // Restarts every encoder that exits on its own, in every mode
+    private final FfmpegSupervisor supervisor = new FfmpegSupervisor();
+
+    // Stop-and-start bitrate changes (cold FFmpeg or cached segments),
+    // changes served by the standby, and how long viewers waited for a
+    // change or for a dead encoder's replacement
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder standbyCutovers = new LongAdder();
+    private final LatencyHistogram cutover = new LatencyHistogram();
+    private final LatencyHistogram recovery = new LatencyHistogram();
+    // When the cut in progress was asked for (or onAir died), 0 if none, and
+    // which histogram it goes to; guarded by the sender
+    private long cutoverBegan = 0;
+    private LatencyHistogram cutoverTimer;
+
+    // FFmpeg writes TS to stdout; we packetize and send it ourselves
+    private final TsBufferPool readPool = new TsBufferPool(8, TsPacket.DATAGRAM_SIZE * 32);
+    private TsSender sender;
+
+    // Seamless mode: one encoder per rung, spliced without restarting FFmpeg
+    private final int[] ladderKbps;
+    private FfmpegEncoder[] rungs;
+    private TsSplicer splicer;
 
-    private long startMs = 0;
-    private long offsetMs = 0;
+    // Multi-group mode: every rung published on its own group, no splicing
+    private final List<Rendition> renditions;
+    private TsSender[] groupSenders;
 
-    private final Vector<Client> clients = new Vector<>();
+    // Pre-transcoded segments; when a rate is cached it is played from disk
+    private SegmentCache segmentCache;
+    private SegmentPlayer player;
+    private SegmentPlayer[] groupPlayers;
+
+    // Keyframe every 15 frames (~0.5 s) on every rung so cuts line up
+    private static final int GOP_FRAMES = 15;
+
+    private final ClientRegistry clients = new ClientRegistry();
+    // Fleet-wide totals kept up to date by the clients themselves
+    private final TelemetryAggregator telemetry = new TelemetryAggregator(clients);
 
     public VideoStreamer(String inputFile) {
         this.inputFile = inputFile;
+        this.ladderKbps = null;
+        this.renditions = null;
+    }
+
+    /**
+     * Creates a streamer that keeps one long-lived encoder per ladder rung
+     * and switches between them on GOP boundaries instead of restarting
+     * FFmpeg. setBitrate() picks the highest rung at or below the request.
+     */
+    public VideoStreamer(String inputFile, int... ladderKbps) {
+        this.inputFile = inputFile;
+        this.ladderKbps = ladderKbps.clone();
+        Arrays.sort(this.ladderKbps);
+        this.renditions = null;
+    }
+
+    /**
+     * Creates a streamer that publishes every rendition at once, each on its
+     * own multicast group. There is no global bitrate in this mode: clients
+     * are moved between groups individually (see ExpertSystem / ClientTuner),
+     * and encode cost is fixed at one encoder per rendition.
+     */
+    public VideoStreamer(String inputFile, List<Rendition> renditions) {
+        this.inputFile = inputFile;
+        this.renditions = List.copyOf(renditions);
+        this.ladderKbps = new int[renditions.size()];
+        for (int i = 0; i < ladderKbps.length; i++) {
+            ladderKbps[i] = this.renditions.get(i).getBitrateKbps();
+        }
     }
 
     // -------------------------
     // Client management
     // -------------------------
     public void addClient(Client c) {
-        if (!clients.contains(c)) clients.add(c);
+        clients.add(c);
     }
 
     public void removeClient(Client c) {
         clients.remove(c);
     }
 
-    public Vector<Client> getClients() {
+    public ClientRegistry getClients() {
         return clients;
     }
 
+    public TelemetryAggregator getTelemetry() {
+        return telemetry;
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.counter("ffmpeg_restarts_total",
+                "Bitrate changes that stopped the stream and started it again, cold FFmpeg or cached segments",
+                restarts::sum);
+        metrics.counter("ffmpeg_standby_cutovers_total",
+                "Bitrate changes served by the warm standby", standbyCutovers::sum);
+        metrics.histogram("ffmpeg_cutover_seconds",
+                "Time from a bitrate change to the new encoder going on air", cutover);
+        metrics.histogram("ffmpeg_recovery_seconds",
+                "Time from the on-air FFmpeg exiting to its replacement going on air", recovery);
+        supervisor.registerMetrics(metrics);
+    }
+
+    /**
+     * Restart mode: keeps a second FFmpeg running stepKbps below the current
+     * bitrate (above it when that would go under minKbps), so a step down,
+     * or taking over from a crashed encoder, only waits for its next
+     * keyframe. Costs one more encoder's CPU; 0 turns it off.
+     */
+    public synchronized void setWarmStandby(int stepKbps, int minKbps) {
+        this.standbyStepKbps = Math.max(0, stepKbps);
+        this.standbyMinKbps = minKbps;
+        if (!streaming || sender == null || ladderKbps != null) return;
+
+        // Applied right away while streaming, e.g. when ChannelEngine grants or takes a slot
+        try {
+            if (standbyStepKbps > 0) {
+                refreshStandby();
+            } else {
+                Launch old;
+                synchronized (sender) {
+                    old = standby;
+                    standby = null;
+                }
+                if (old != null) {
+                    old.encoder.stop();
+                    log.info("Warm standby stopped");
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Warm standby failed to start: " + e.getMessage());
+        }
+    }
+
+    public boolean hasWarmStandby() {
+        return standbyStepKbps > 0;
+    }
+
+    /**
+     * Names this streamer's log source and FFmpeg processes after its
+     * channel, e.g. "STREAM news" and "news 1500k". Call before start().
+     */
+    public void setName(String name) {
+        this.name = name;
+        this.log = Logger.get("STREAM " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Group for restart and seamless modes; 230.0.0.0:4446 by default.
+     * Renditions carry their own groups. Call before start().
+     */
+    public void setOutput(String multicastAddress, int multicastPort) {
+        this.multicastAddress = multicastAddress;
+        this.multicastPort = multicastPort;
+    }
+
+    // Plays the input (e.g. a channel's playlist) over and over. Call before start()
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    // What a VLC client opens to watch each output, lowest bitrate first
+    public List<String> getUrls() {
+        if (renditions == null) return List.of("udp://@" + multicastAddress + ":" + multicastPort);
+        List<String> urls = new ArrayList<>(renditions.size());
+        for (Rendition r : renditions) urls.add(r.getUrl());
+        return urls;
+    }
+
+    /**
+     * FFmpeg processes start() needs at the current bitrate, not counting
+     * the warm standby or the brief overlap of a restart-mode cutover:
+     * none when every rate it would stream is in the segment cache.
+     */
+    public int getEncoderDemand() {
+        if (ladderKbps != null) return cached(ladderKbps) ? 0 : ladderKbps.length;
+        return cached(bitrateKbps) ? 0 : 1;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    // -------------------------
+    // Renditions
+    // -------------------------
+    public boolean isMultiGroup() {
+        return renditions != null;
+    }
+
+    // One FFmpeg restarted per change, rather than a ladder of them
+    public boolean isRestartMode() {
+        return ladderKbps == null;
+    }
+
+    // Published renditions, lowest bitrate first; empty unless multi-group
+    public List<Rendition> getRenditions() {
+        return renditions != null ? renditions : List.of();
+    }
+
+    // -------------------------
+    // Segment cache
+    // -------------------------
+
+    /**
+     * Serves cached renditions from disk instead of encoding live. On start()
+     * every rate this streamer needs is queued for background pre-transcode;
+     * rates that are already cached are played from segments right away, the
+     * rest are encoded live until their transcode finishes.
+     */
+    public void setSegmentCache(SegmentCache cache) {
+        this.segmentCache = cache;
+    }
+
+    private int[] cachedRates() {
+        return ladderKbps != null ? ladderKbps : new int[] { bitrateKbps };
+    }
+
+    private boolean cached(int... kbps) {
+        return segmentCache != null && segmentCache.isReady(inputFile, kbps);
+    }
+
     // -------------------------
     // Control
     // -------------------------
-    public void start() {
+    public synchronized void start() {
         if (streaming) return;
-        launch();
+        supervisor.start();
+        if (segmentCache != null) segmentCache.prepare(inputFile, cachedRates());
+
+        if (renditions != null) {
+            if (cached(ladderKbps)) playGroups();
+            else launchGroups();
+        } else if (ladderKbps != null) {
+            if (cached(ladderKbps)) play(ladderKbps[rungFor(bitrateKbps)]);
+            else launchLadder();
+        } else {
+            launch();
+        }
     }
 
-    public void stop() {
+    public synchronized void stop() {
+        // A later start() resumes here
+        offsetMs = getMediaPositionMs();
         streaming = false;
-        if (ffmpegProcess != null) {
-            ffmpegProcess.destroyForcibly();
+        supervisor.stop();
+        stopLaunches();
+
+        if (player != null) {
+            player.stop();
+            player = null;
         }
-        ffmpegProcess = null;
+        if (groupPlayers != null) {
+            for (SegmentPlayer p : groupPlayers) {
+                if (p != null) p.stop();
+            }
+            groupPlayers = null;
+        }
+
+        if (rungs != null) {
+            for (FfmpegEncoder rung : rungs) rung.stop();
+            rungs = null;
+        }
+        if (sender != null) {
+            sender.close();
+            sender = null;
+        }
+        if (groupSenders != null) {
+            for (TsSender s : groupSenders) {
+                if (s != null) s.close();
+            }
+            groupSenders = null;
+        }
+        splicer = null;
     }
 
-    public void setBitrate(int kbps) {
+    public synchronized void setBitrate(int kbps) {
         if (kbps == bitrateKbps) return;
         bitrateKbps = kbps;
-        if (streaming) restart();
+        if (!streaming || renditions != null) return;
+
+        if (splicer != null) {
+            splicer.switchTo(rungFor(kbps));
+        } else if (player != null && cached(targetRate(kbps))) {
+            // Cut to the other rung at the next segment boundary
+            player.switchTo(targetRate(kbps));
+        } else {
+            restart();
+        }
     }
 
     public int getBitrate() {
         return bitrateKbps;
     }
 
+    // Packet accounting for the primary output (null in multi-group mode)
+    public TsSender getSender() {
+        return sender;
+    }
+
+    // Rate actually streamed for a request: the nearest rung, or kbps itself
+    private int targetRate(int kbps) {
+        return ladderKbps != null ? ladderKbps[rungFor(kbps)] : kbps;
+    }
+
+    /**
+     * Position in the source (ms) of the last frame sent to the network,
+     * taken from the stream's PTS. Falls back to a wall-clock estimate before
+     * the first frame has gone out.
+     */
+    public long getMediaPositionMs() {
+        TsSender out = sender;
+        if (out == null && groupSenders != null) out = groupSenders[0];
+
+        long pos = out != null ? out.getMediaPositionMs() : -1;
+        if (pos >= 0) return pos;
+
+        return streaming ? offsetMs + (System.currentTimeMillis() - startMs) : offsetMs;
+    }
+
+    // -------------------------
+    // Restart mode
+    // -------------------------
+
+    // One FFmpeg process in restart mode and where in the source it started
+    private static final class Launch {
+        final FfmpegEncoder encoder;
+        final int kbps;
+        final long offsetMs;
+        // Started as the warm standby rather than for a cut
+        final boolean warm;
+        final long launchedNanos = System.nanoTime();
+        // First video PTS it produced, -1 before that; guarded by the sender
+        long firstPts = -1;
+
+        Launch(FfmpegEncoder encoder, int kbps, long offsetMs, boolean warm) {
+            this.encoder = encoder;
+            this.kbps = kbps;
+            this.offsetMs = offsetMs;
+            this.warm = warm;
+        }
+    }
+
+    // Make-before-break to bitrateKbps: the standby if it's at that rate,
+    // else a cold FFmpeg; the current one plays until either has a keyframe
     private void restart() {
+        long began = System.nanoTime();
 
-        long now = System.currentTimeMillis();
-        offsetMs += (now - startMs);
+        if (cached(bitrateKbps) || player != null) {
+            // Segments and an encoder can't share the sender, so this one breaks first
+            offsetMs = getMediaPositionMs();
+            stopLaunches();
+            if (player != null) {
+                player.stop();
+                player = null;
+            }
+            restarts.increment();
+            if (cached(bitrateKbps)) {
+                // The player sends its first segment as soon as it starts
+                launch();
+                cutover.record(System.nanoTime() - began);
+            } else {
+                synchronized (sender) {
+                    cutoverBegan = began;
+                    cutoverTimer = cutover;
+                }
+                launch();
+            }
+            return;
+        }
+
+        Launch dropped;
+        boolean cold;
+        boolean unchanged;
+        synchronized (sender) {
+            dropped = pending;
+            pending = null;
+            cutoverBegan = began;
+            cutoverTimer = cutover;
 
-        if (ffmpegProcess != null && ffmpegProcess.isAlive())
-            ffmpegProcess.destroyForcibly();
+            unchanged = onAir != null && onAir.kbps == bitrateKbps;
+            cold = false;
+            if (unchanged) {
+                // Back to what is still on air before the cut happened
+                cutoverBegan = 0;
+            } else if (standby != null && standby.kbps == bitrateKbps) {
+                pending = standby;
+                standby = null;
+                standbyCutovers.increment();
+            } else {
+                cold = true;
+            }
+        }
+        if (dropped != null) dropped.encoder.stop();
 
-        launch();
+        if (cold) {
+            try {
+                startPending(bitrateKbps);
+                restarts.increment();
+            } catch (IOException e) {
+                log.error("Failed to launch FFmpeg: " + e.getMessage());
+            }
+        } else if (unchanged) {
+            try {
+                refreshStandby();
+            } catch (IOException e) {
+                log.warn("Warm standby failed to start: " + e.getMessage());
+            }
+        }
     }
 
     private void launch() {
+        if (cached(bitrateKbps)) {
+            play(bitrateKbps);
+            return;
+        }
+        // Not cached yet: encode live now, and have it ready for next time
+        if (segmentCache != null) segmentCache.prepare(inputFile, bitrateKbps);
+
         try {
-            long seekSeconds = offsetMs / 1000;
-
-            ProcessBuilder pb = new ProcessBuilder(
-                    "ffmpeg",
-                    "-hide_banner",
-                    "-loglevel", "warning",
-                    "-re",
-                    "-ss", String.valueOf(seekSeconds),
-                    "-i", inputFile,
-                    "-target", "ntsc-dvd",
-                    "-b:v", bitrateKbps + "k",
-                    "-f", "mpegts",
-                    "udp://" + multicastAddress + ":" + multicastPort + "?pkt_size=1316"
-            );
-
-            pb.redirectErrorStream(true);
-            ffmpegProcess = pb.start();
+            // The sender outlives restarts so the group never goes away
+            if (sender == null) sender = new TsSender(multicastAddress, multicastPort);
+            startPending(bitrateKbps);
             streaming = true;
             startMs = System.currentTimeMillis();
+        } catch (IOException e) {
+            log.error("Failed to launch FFmpeg: " + e.getMessage());
+            streaming = false;
+        }
+    }
+
+    // A cold FFmpeg at kbps that goes on air at its first keyframe
+    private void startPending(int kbps) throws IOException {
+        Launch next = newLaunch(kbps, false);
+        synchronized (sender) {
+            pending = next;
+        }
+        try {
+            next.encoder.start();
+        } catch (IOException e) {
+            synchronized (sender) {
+                if (pending == next) pending = null;
+            }
+            throw e;
+        }
+        log.info("FFmpeg started at " + kbps + " kbps from " + next.offsetMs / 1000.0 + " s");
+    }
+
+    // Not started; in the "main" supervisor slot, or "standby"
+    private Launch newLaunch(int kbps, boolean warm) {
+        // Resume from the frame viewers last got, plus what they'll see while FFmpeg starts
+        long offset = wrapped ? 0 : getMediaPositionMs() + startupMs;
+        wrapped = false;
+        String label = encoderName(kbps) + (warm ? " standby" : "");
+
+        Launch l = new Launch(new FfmpegEncoder(label, restartCommand(kbps, offset), this::onLaunchPacket, readPool),
+                kbps, offset, warm);
+        supervisor.watch(warm ? "standby" : "main", l.encoder,
+                (dead, at) -> failover(l, at), (dead, at) -> recover(l));
+        return l;
+    }
+
+    private List<String> restartCommand(int kbps, long offsetMs) {
+        // Millisecond seek; input seeking while transcoding is frame-accurate
+        String seek = BigDecimal.valueOf(offsetMs, 3).toPlainString();
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-hide_banner",
+                "-nostdin",
+                "-loglevel", "warning",
+                "-re",
+                "-ss", seek));
+        command.addAll(Playlist.inputArgs(inputFile));
+        command.addAll(List.of(
+                "-target", "ntsc-dvd",
+                "-b:v", kbps + "k",
+                // A cut waits for the next keyframe, so keep them close
+                "-g", String.valueOf(GOP_FRAMES),
+                "-f", "mpegts",
+                "pipe:1"));
+        return command;
+    }
+
+    // Every restart-mode process writes here; only onAir's packets are sent
+    private void onLaunchPacket(FfmpegEncoder enc, ByteBuffer buf, int off) {
+        TsSender out = sender;
+        if (out == null) return;
+
+        synchronized (out) {
+            Launch from = onAir != null && onAir.encoder == enc ? onAir
+                        : pending != null && pending.encoder == enc ? pending
+                        : standby != null && standby.encoder == enc ? standby
+                        : null;
+            // Stopped or replaced: drop whatever is left in its pipe
+            if (from == null) return;
+
+            if (from.firstPts < 0) from.firstPts = TsPacket.videoPts(buf, off);
+            if (from == pending && TsPacket.isVideoKeyframeStart(buf, off)) goOnAir(from, buf, off);
+            if (from != onAir) return;
+
+            out.send(buf, off);
+        }
+    }
+
+    // Holding the sender: cut to `next` at this keyframe, in a new PTS epoch
+    private void goOnAir(Launch next, ByteBuffer buf, int off) {
+        long now = System.nanoTime();
+
+        // Where this frame is in the source: a standby has been running a while
+        long position = next.offsetMs;
+        long pts = TsPacket.videoPts(buf, off);
+        if (pts > next.firstPts && next.firstPts >= 0) {
+            position += (pts - next.firstPts) * 1000 / TsPacket.PTS_HZ;
+        }
+
+        if (!next.warm) {
+            long took = (now - next.launchedNanos) / 1_000_000;
+            startupMs = startupMs == 0 ? took : (startupMs * 3 + took) / 4;
+        }
+
+        Launch old = onAir;
+        onAir = next;
+        pending = null;
+        sender.beginEpoch(position);
+        offsetMs = position;
+        startMs = System.currentTimeMillis();
+
+        String waited = "";
+        if (cutoverBegan != 0) {
+            long elapsed = now - cutoverBegan;
+            cutoverTimer.record(elapsed);
+            waited = " after " + elapsed / 1_000_000 + " ms";
+            cutoverBegan = 0;
+        }
+        if (old != null) old.encoder.stop();
 
-            System.out.println("[STREAM] FFmpeg started at " + bitrateKbps + " kbps");
+        log.info("On air at " + next.kbps + " kbps" + (next.warm ? " from the standby" : "") + waited);
+        supervisor.execute(this::afterCutover);
+    }
+
+    // After a cut: if the standby covered for a crash, go back to the
+    // requested rate; otherwise start a standby for the new rate
+    private synchronized void afterCutover() {
+        if (!streaming || sender == null) return;
+
+        int airKbps;
+        synchronized (sender) {
+            if (pending != null || onAir == null) return;
+            airKbps = onAir.kbps;
+        }
+        try {
+            if (airKbps != bitrateKbps) startPending(bitrateKbps);
+            else refreshStandby();
+        } catch (IOException e) {
+            log.error("Failed to launch FFmpeg after a cut: " + e.getMessage());
+        }
+    }
+
+    // Starts the standby for the current rate unless it is already running
+    private void refreshStandby() throws IOException {
+        if (standbyStepKbps <= 0 || !streaming) return;
+        int down = bitrateKbps - standbyStepKbps;
+        int kbps = down >= standbyMinKbps ? down : bitrateKbps + standbyStepKbps;
+
+        Launch old;
+        synchronized (sender) {
+            if (standby != null && standby.kbps == kbps) return;
+            old = standby;
+            standby = null;
+        }
+        if (old != null) old.encoder.stop();
+
+        Launch next = newLaunch(kbps, true);
+        synchronized (sender) {
+            standby = next;
+        }
+        try {
+            next.encoder.start();
+        } catch (IOException e) {
+            synchronized (sender) {
+                if (standby == next) standby = null;
+            }
+            throw e;
+        }
+        log.info("Warm standby at " + kbps + " kbps");
+    }
+
+    /**
+     * Supervisor callback, straight after a restart-mode FFmpeg exits on its
+     * own: forget it, and if it was on air with nothing pending, cut to the
+     * standby at its next keyframe. recover() does the rest after backoff.
+     *
+     * Reaching the end of the input is not a crash. The standby is at most
+     * a few seconds off, so it is dropped rather than used; a looping input
+     * starts over, any other stops the stream.
+     */
+    private synchronized void failover(Launch dead, long exitedNanos) {
+        if (!streaming || sender == null) return;
+
+        boolean ended = false;
+        Launch spent = null;
+        synchronized (sender) {
+            if (dead == standby) standby = null;
+            if (dead == pending) pending = null;
+            if (dead == onAir) {
+                onAir = null;
+                cutoverBegan = exitedNanos;
+                cutoverTimer = recovery;
+
+                if (dead.encoder.reachedEndOfInput()) {
+                    ended = true;
+                    cutoverBegan = 0;
+                    spent = standby;
+                    standby = null;
+                    wrapped = loop;
+                } else if (pending == null && standby != null) {
+                    log.info("Failing over to the " + standby.kbps + " kbps standby");
+                    pending = standby;
+                    standby = null;
+                }
+            }
+        }
+        if (spent != null) spent.encoder.stop();
+        if (ended && loop) log.info("End of " + inputFile + ", starting over");
+        else if (ended) endOfInput();
+    }
+
+    // Supervisor callback after the backoff: a cold start at the position
+    // viewers last got if nothing covers the requested rate, else a new
+    // standby if that is what died. Throwing makes the supervisor retry
+    private synchronized void recover(Launch dead) throws IOException {
+        if (!streaming || sender == null) return;
+        // Whatever else reached the end waits for the on-air one to wrap
+        if (dead.encoder.reachedEndOfInput() && !wrapped) return;
+
+        boolean cold;
+        boolean noStandby;
+        synchronized (sender) {
+            cold = pending == null && (onAir == null || onAir.kbps != bitrateKbps);
+            noStandby = pending == null && standby == null;
+        }
+        if (cold) startPending(bitrateKbps);
+        else if (noStandby) refreshStandby();
+    }
+
+    // A non-looping input has run out: nothing is left to send. A later
+    // start() plays it again from the beginning
+    private void endOfInput() {
+        log.info("End of " + inputFile + ", stopping");
+        stop();
+        offsetMs = 0;
+    }
+
+    private void stopLaunches() {
+        if (sender == null) return;
+
+        List<Launch> running = new ArrayList<>(3);
+        synchronized (sender) {
+            for (Launch l : new Launch[] { onAir, pending, standby }) {
+                if (l != null) running.add(l);
+            }
+            onAir = null;
+            pending = null;
+            standby = null;
+            cutoverBegan = 0;
+        }
+        for (Launch l : running) l.encoder.stop();
+    }
+
+    // -------------------------
+    // Cached playback
+    // -------------------------
+    private void play(int kbps) {
+        try {
+            if (sender == null) sender = new TsSender(multicastAddress, multicastPort);
+
+            player = new SegmentPlayer(encoderName(kbps), segmentCache, inputFile, kbps, offsetMs, sender);
+            player.setLoop(loop);
+            player.start();
+            streaming = true;
+            startMs = System.currentTimeMillis();
 
-            new Thread(() -> readFFmpeg(ffmpegProcess), "FFmpegReader").start();
+            log.info("Playing cached segments at " + kbps + " kbps");
 
         } catch (IOException e) {
-            System.err.println("Failed to launch FFmpeg: " + e.getMessage());
+            log.error("Failed to play cached segments: " + e.getMessage());
             streaming = false;
         }
     }
 
-    private void readFFmpeg(Process p) {
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(p.getInputStream()))) {
+    private void playGroups() {
+        try {
+            groupSenders = new TsSender[renditions.size()];
+            groupPlayers = new SegmentPlayer[renditions.size()];
+
+            for (int i = 0; i < groupPlayers.length; i++) {
+                Rendition r = renditions.get(i);
+                groupSenders[i] = new TsSender(r.getMulticastAddress(), r.getMulticastPort());
+                groupPlayers[i] = new SegmentPlayer(encoderName(r.getBitrateKbps()), segmentCache,
+                        inputFile, r.getBitrateKbps(), offsetMs, groupSenders[i]);
+                groupPlayers[i].setLoop(loop);
+            }
+            for (SegmentPlayer p : groupPlayers) p.start();
+
+            streaming = true;
+            startMs = System.currentTimeMillis();
 
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Only show startup and warnings due to -loglevel warning
-                System.out.println("[FFMPEG] " + line);
+            for (Rendition r : renditions) {
+                log.info("Publishing cached " + r);
             }
 
         } catch (IOException e) {
-            System.err.println("FFmpeg reader exception: " + e.getMessage());
+            log.error("Failed to play cached renditions: " + e.getMessage());
+            stop();
+        }
+    }
+
+    // -------------------------
+    // Seamless ladder
+    // -------------------------
+    private void launchLadder() {
+        try {
+            sender = new TsSender(multicastAddress, multicastPort);
+            sender.beginEpoch(offsetMs);
+
+            rungs = new FfmpegEncoder[ladderKbps.length];
+            splicer = new TsSplicer(rungs, rungFor(bitrateKbps), sender, offsetMs);
+
+            for (int i = 0; i < ladderKbps.length; i++) {
+                rungs[i] = newRung(i, offsetMs);
+            }
+            for (FfmpegEncoder rung : rungs) rung.start();
+
+            streaming = true;
+            startMs = System.currentTimeMillis();
+
+            log.info("FFmpeg ladder started at " +
+                    Arrays.toString(ladderKbps) + " kbps, active " +
+                    ladderKbps[splicer.getActive()] + " kbps");
+
+        } catch (IOException e) {
+            log.error("Failed to launch FFmpeg ladder: " + e.getMessage());
+            stop();
+        }
+    }
+
+    // -------------------------
+    // Multi-group ladder
+    // -------------------------
+    private void launchGroups() {
+        try {
+            groupSenders = new TsSender[renditions.size()];
+            rungs = new FfmpegEncoder[renditions.size()];
+
+            for (int i = 0; i < rungs.length; i++) {
+                Rendition r = renditions.get(i);
+                groupSenders[i] = new TsSender(r.getMulticastAddress(), r.getMulticastPort());
+                groupSenders[i].beginEpoch(offsetMs);
+                rungs[i] = newRung(i, offsetMs);
+            }
+            for (FfmpegEncoder rung : rungs) rung.start();
+
+            streaming = true;
+            startMs = System.currentTimeMillis();
+
+            for (Rendition r : renditions) {
+                log.info("Publishing " + r);
+            }
+
+        } catch (IOException e) {
+            log.error("Failed to launch FFmpeg renditions: " + e.getMessage());
+            stop();
+        }
+    }
+
+    // -------------------------
+    // Rungs (seamless and multi-group)
+    // -------------------------
+
+    // Rung i's encoder, not started, feeding the splicer or its own group
+    private FfmpegEncoder newRung(int i, long offsetMs) {
+        TsSender out = groupSenders != null ? groupSenders[i] : null;
+        FfmpegEncoder.PacketSink sink = splicer != null ? splicer : (enc, buf, off) -> out.send(buf, off);
+
+        FfmpegEncoder rung = new FfmpegEncoder(encoderName(ladderKbps[i]), ladderCommand(ladderKbps[i], offsetMs),
+                sink, readPool);
+        supervisor.watch(rung.getName(), rung,
+                (dead, at) -> {
+                    if (splicer != null) splicer.rungFailed(i);
+                },
+                (dead, at) -> recoverRung(i, dead));
+        return rung;
+    }
+
+    /**
+     * Supervisor callback: rung i's FFmpeg exited on its own. In seamless
+     * mode viewers were already cut to a neighbouring rung. The replacement
+     * starts where its output had got to; its timestamps no longer line up
+     * with the other rungs, so a later splice onto it is a discontinuity,
+     * like a restart, and the splicer starts a new epoch for it. At the end
+     * of a looping input it starts from 0; at the end of any other the
+     * stream stops once no rung is left running.
+     */
+    private synchronized void recoverRung(int i, FfmpegEncoder dead) throws IOException {
+        if (!streaming || rungs == null || rungs[i].isAlive()) return;
+
+        // At the end of the input: start over, or leave the rung ended
+        boolean ended = dead.reachedEndOfInput();
+        if (ended && !loop) {
+            log.info("End of " + inputFile + " on " + dead.getName());
+            for (FfmpegEncoder rung : rungs) {
+                if (rung.isAlive()) return;
+            }
+            endOfInput();
+            return;
+        }
+
+        TsSender out = groupSenders != null ? groupSenders[i] : sender;
+        long position = ended ? 0 : Math.max(0, out.getMediaPositionMs()) + startupMs;
+
+        FfmpegEncoder next = newRung(i, position);
+        if (splicer != null) splicer.replaceRung(i, next, position);
+        else rungs[i] = next;
+        if (groupSenders != null) groupSenders[i].beginEpoch(position);
+        next.start();
+        if (splicer != null) splicer.switchTo(rungFor(bitrateKbps));
+
+        log.info("FFmpeg " + next.getName() + " restarted from " + position / 1000.0 + " s");
+    }
+
+    private List<String> ladderCommand(int kbps, long offsetMs) {
+        List<String> seek = offsetMs > 0
+                ? List.of("-ss", BigDecimal.valueOf(offsetMs, 3).toPlainString())
+                : List.of();
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-hide_banner",
+                "-nostdin",
+                "-loglevel", "warning",
+                "-re"));
+        command.addAll(seek);
+        command.addAll(Playlist.inputArgs(inputFile));
+        command.addAll(List.of(
+                "-target", "ntsc-dvd",
+                "-b:v", kbps + "k",
+                // Fixed, closed GOPs so every rung has a cut point at the same frame
+                "-g", String.valueOf(GOP_FRAMES),
+                "-sc_threshold", "0",
+                "-flags", "+cgop",
+                "-f", "mpegts",
+                "pipe:1"));
+        return command;
+    }
+
+    // "1500k", or "news 1500k" on a named channel
+    private String encoderName(int kbps) {
+        return name != null ? name + " " + kbps + "k" : kbps + "k";
+    }
+
+    // Highest rung at or below kbps, or the lowest rung if kbps is below all of them
+    private int rungFor(int kbps) {
+        int best = 0;
+        for (int i = 0; i < ladderKbps.length; i++) {
+            if (ladderKbps[i] <= kbps) best = i;
         }
+        return best;
     }
 }
@@ -0,0 +1,240 @@
+package src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Announcements that let VlcMonitor find VLC instances without sweeping the
+ * subnet. Next to each VLC, a small agent sends one datagram per interval
+ * to a control multicast group:
+ *
+ *   VLC-RC <rc port> [name]
+ *
+ * and the monitor connects to the sender's address on that port as soon as
+ * it hears it. Anything that can send a UDP datagram can announce (see the
+ * README for a shell one-liner); a unicast datagram to the monitor's beacon
+ * port works too where multicast isn't routed.
+ *
+ * Run as an agent:
+ *
+ *   java -cp cis4930-project.jar src.VlcBeacon rcPort=5050 intervalMs=2000
+ *
+ * Options (key=value): rcPort, group (host:port), intervalMs, ttl, name.
+ */
+public class VlcBeacon {
+
+    private static final Logger LOG = Logger.get("BEACON");
+
+    // Organisation-local scope, so routers at the site edge drop it
+    public static final InetSocketAddress DEFAULT_GROUP = new InetSocketAddress("239.255.49.30", 4930);
+    public static final long DEFAULT_INTERVAL_MS = 2000;
+
+    private static final String PREFIX = "VLC-RC ";
+    private static final int MAX_DATAGRAM = 512;
+
+    public static byte[] encode(int rcPort, String name) {
+        String text = PREFIX + rcPort + (name == null || name.isEmpty() ? "" : " " + name);
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The RC port a beacon announces, or -1 if it isn't a beacon.
+     */
+    public static int parsePort(ByteBuffer datagram) {
+        int len = datagram.remaining();
+        if (len < PREFIX.length() + 1 || len > MAX_DATAGRAM) return -1;
+
+        int pos = datagram.position();
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (datagram.get(pos + i) != PREFIX.charAt(i)) return -1;
+        }
+
+        int port = 0;
+        int i = pos + PREFIX.length();
+        int end = pos + len;
+        int digits = 0;
+        while (i < end && datagram.get(i) >= '0' && datagram.get(i) <= '9' && digits < 6) {
+            port = port * 10 + (datagram.get(i) - '0');
+            i++;
+            digits++;
+        }
+        if (digits == 0 || port < 1 || port > 65535) return -1;
+        if (i < end && datagram.get(i) != ' ' && datagram.get(i) != '\n' && datagram.get(i) != '\r') return -1;
+        return port;
+    }
+
+    // "host:port", "default" for DEFAULT_GROUP, or null for an empty value
+    public static InetSocketAddress parseGroup(String value) {
+        if (value == null || value.isEmpty()) return null;
+        if (value.equals("default")) return DEFAULT_GROUP;
+        int colon = value.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Expected host:port, got: " + value);
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    // ----------------------------------------------------------------------
+    // Listener (monitor side)
+    // ----------------------------------------------------------------------
+
+    /**
+     * Receives beacons on the group's port, joined on every interface that
+     * is up and supports multicast, and reports each sender's RC endpoint.
+     * One blocking daemon thread; nothing is sent.
+     */
+    public static class Listener {
+        private final InetSocketAddress group;
+        private final Consumer<InetSocketAddress> onBeacon;
+        private DatagramChannel channel;
+        private Thread thread;
+
+        public Listener(InetSocketAddress group, Consumer<InetSocketAddress> onBeacon) {
+            this.group = group;
+            this.onBeacon = onBeacon;
+        }
+
+        public void start() throws IOException {
+            channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                    .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .bind(new InetSocketAddress(group.getPort()));
+
+            int joined = 0;
+            for (NetworkInterface nif : multicastInterfaces()) {
+                try {
+                    channel.join(group.getAddress(), nif);
+                    joined++;
+                } catch (IOException e) {
+                    LOG.debug("Cannot join " + group + " on " + nif.getName() + ": " + e.getMessage());
+                }
+            }
+            if (joined == 0) LOG.warn("No multicast interface joined; only unicast beacons will arrive");
+
+            thread = new Thread(this::receiveLoop, "VlcBeacon");
+            thread.setDaemon(true);
+            thread.start();
+            LOG.info("Listening for beacons on " + group.getHostString() + ":" + group.getPort()
+                    + " (" + joined + " interfaces)");
+        }
+
+        public void close() {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void receiveLoop() {
+            ByteBuffer buf = ByteBuffer.allocate(MAX_DATAGRAM + 1);
+            while (true) {
+                buf.clear();
+                InetSocketAddress from;
+                try {
+                    from = (InetSocketAddress) channel.receive(buf);
+                } catch (ClosedChannelException e) {
+                    return;
+                } catch (IOException e) {
+                    LOG.error("Receive failed: " + e.getMessage());
+                    return;
+                }
+                buf.flip();
+                int port = parsePort(buf);
+                if (port > 0) onBeacon.accept(new InetSocketAddress(from.getAddress(), port));
+            }
+        }
+    }
+
+    private static List<NetworkInterface> multicastInterfaces() throws SocketException {
+        return NetworkInterface.networkInterfaces().filter(nif -> {
+            try {
+                return nif.isUp() && (nif.supportsMulticast() || nif.isLoopback());
+            } catch (SocketException e) {
+                return false;
+            }
+        }).toList();
+    }
+
+    // ----------------------------------------------------------------------
+    // Announcer (agent side)
+    // ----------------------------------------------------------------------
+
+    /**
+     * Sends beacons to a group (or a unicast monitor address). The datagram
+     * leaves from the interface that owns `from`, if given, so the monitor
+     * sees the right source address on a multi-homed host.
+     */
+    public static class Announcer implements AutoCloseable {
+        private final DatagramChannel channel;
+        private final InetSocketAddress target;
+
+        public Announcer(InetSocketAddress target, InetAddress from, int ttl) throws IOException {
+            this.target = target;
+            this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            if (from != null) {
+                NetworkInterface nif = NetworkInterface.getByInetAddress(from);
+                if (nif != null) channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, nif);
+                channel.bind(new InetSocketAddress(from, 0));
+            }
+        }
+
+        public void announce(int rcPort, String name) throws IOException {
+            channel.send(ByteBuffer.wrap(encode(rcPort, name)), target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rcPort = VlcMonitor.DEFAULT_PORT;
+        InetSocketAddress group = DEFAULT_GROUP;
+        long intervalMs = DEFAULT_INTERVAL_MS;
+        int ttl = 1;
+        String name = null;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "rcPort" -> rcPort = Integer.parseInt(value);
+                case "group" -> group = parseGroup(value);
+                case "intervalMs" -> intervalMs = Long.parseLong(value);
+                case "ttl" -> ttl = Integer.parseInt(value);
+                case "name" -> name = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+
+        LOG.info("Announcing RC port " + rcPort + " to " + group.getHostString() + ":" + group.getPort()
+                + " every " + intervalMs + " ms");
+
+        // Jitter keeps a room of agents started together from beaconing in step
+        SplittableRandom random = new SplittableRandom();
+        try (Announcer announcer = new Announcer(group, null, ttl)) {
+            while (true) {
+                try {
+                    announcer.announce(rcPort, name);
+                } catch (IOException e) {
+                    LOG.warn("Send failed: " + e.getMessage());
+                }
+                Thread.sleep(intervalMs * 9 / 10 + random.nextLong(intervalMs / 5 + 1));
+            }
+        }
+    }
+}
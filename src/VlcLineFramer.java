@@ -0,0 +1,41 @@
+package src;
+
+/**
+ * Splits a byte stream into lines in one reusable array. Feed it whatever a
+ * read returned; it calls the sink once per complete line, without the
+ * "\n" or "\r\n" terminator. Lines longer than MAX_LINE are truncated.
+ */
+public class VlcLineFramer {
+
+    public interface LineSink {
+        // line[0 .. len) is only valid during the call
+        void onLine(byte[] line, int len);
+    }
+
+    private static final int INITIAL_LINE = 256;
+    // Nothing VLC prints on RC comes close
+    private static final int MAX_LINE = 8 * 1024;
+
+    private byte[] line = new byte[INITIAL_LINE];
+    private int lineLen = 0;
+
+    public void feed(byte[] data, int off, int n, LineSink sink) {
+        int end = off + n;
+        for (int i = off; i < end; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                // Strip the \r of a \r\n terminator
+                int len = lineLen > 0 && line[lineLen - 1] == '\r' ? lineLen - 1 : lineLen;
+                sink.onLine(line, len);
+                lineLen = 0;
+            } else if (lineLen < MAX_LINE) {
+                if (lineLen == line.length) {
+                    byte[] bigger = new byte[Math.min(MAX_LINE, line.length * 2)];
+                    System.arraycopy(line, 0, bigger, 0, lineLen);
+                    line = bigger;
+                }
+                line[lineLen++] = b;
+            }
+        }
+    }
+}
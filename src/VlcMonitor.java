@@ -2,79 +2,396 @@ package src;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * VlcMonitor discovers VLC RC instances on the subnet, keeps TCP connections
  * open, and actively polls them with the "stats" command. It also parses
  * passive log lines like "buffering 55%" and "cache: 42%" when VLC prints them.
  *
- * Client objects are created and registered with VideoStreamer when a new VLC
- * instance is detected, and removed when the RC socket closes.
+ * Client objects are added to the streamer's ClientRegistry (or the one it
+ * was given, e.g. ChannelEngine's) when a new VLC instance is detected, and removed when the RC socket closes or the
+ * session misses its heartbeat deadline: nothing received, not even a stats
+ * reply, for the heartbeat timeout. A client that drops that way is
+ * reconnected with exponential backoff before being left to discovery.
+ *
+ * As a ClientTuner it also switches a client between multicast renditions by
+ * sending "add udp://@group:port" over the same RC connection.
+ *
+ * Three I/O modes are available: THREADS runs a blocking reader thread per
+ * client, NIO multiplexes every RC session over a small pool of selector
+ * threads (see VlcSelector), and VIRTUAL keeps the simple blocking code but
+ * runs every reader, stats poll and discovery probe on its own virtual
+ * thread. Both NIO and VIRTUAL are meant for more than a few dozen viewers;
+ * VIRTUAL also probes the whole scan range concurrently, so a sweep takes
+ * about one connect timeout instead of one per host.
+ *
+ * Besides a subnet range, the monitor can watch a CIDR block or an explicit
+ * list of RC endpoints, e.g. many ports on loopback served by the bench
+ * module's VlcLoadGenerator. A client on a port other than 5050 is
+ * identified as "ip:port".
+ *
+ * In BEACON discovery, clients announce themselves with VlcBeacon and are
+ * connected as soon as their beacon arrives; the sweep still runs, but
+ * rarely, for hosts without an agent. Either way a host that keeps failing
+ * to connect is probed on fewer and fewer sweeps (up to one in eight) until
+ * it answers or announces itself.
  */
-public class VlcMonitor {
-
-    private final String subnetPrefix;
-    private final int startHost;
-    private final int endHost;
-    private final int port = 5050;
-
-    // Scan for new VLC instances every 5 seconds
-    private final int scanIntervalMs = 5000;
+public class VlcMonitor implements ClientTuner {
+
+    private static final Logger LOG = Logger.get("VLC");
+
+    public enum IoMode { THREADS, NIO, VIRTUAL }
+
+    // How new VLC instances are found:
+    //   SWEEP  - probe every endpoint each sweep interval (5 s)
+    //   BEACON - connect when a VlcBeacon arrives, sweep at a slow fallback interval
+    public enum Discovery { SWEEP, BEACON }
+
+    // VLC's RC port as the clients are launched in the README
+    public static final int DEFAULT_PORT = 5050;
+
+    // Every RC endpoint a scan probes, and how to describe them in the log
+    private final List<InetSocketAddress> endpoints;
+    private final String scanDescription;
+    // Beacons are only accepted from hosts in the scan range
+    private final Set<InetAddress> scanHosts;
+    private final Map<InetSocketAddress, Integer> endpointIndex;
+
+    // Sweeps skipped before the next probe of each endpoint, and its
+    // consecutive failures; a host's skip doubles per failure, up to
+    // PROBE_MAX_SKIP. Written by sweep probes (one virtual thread each in
+    // VIRTUAL mode) and reset by beacons, hence atomic
+    private final AtomicIntegerArray probeSkip;
+    private final AtomicIntegerArray probeFailures;
+    private static final int PROBE_MAX_SKIP = 7;
+    // With beacons, give agents two of their intervals before the first sweep
+    private static final long BEACON_FIRST_SWEEP_MS = 2 * VlcBeacon.DEFAULT_INTERVAL_MS;
+
+    // Scan for new VLC instances every 5 seconds, or every sweepIntervalMs with beacons
+    private volatile long scanIntervalMs = 5000;
+    private Discovery discovery = Discovery.SWEEP;
+    private InetSocketAddress beaconGroup = VlcBeacon.DEFAULT_GROUP;
+    private VlcBeacon.Listener beaconListener;
     // Stats polling interval – aligned with ExpertSystem's typical iteration
     private final int statsIntervalMs = 5000;
 
-    private final VideoStreamer streamer;
+    // A session silent this long is dead: two missed polls plus slack, and
+    // under TelemetryAggregator.STALE_MS so a dead peer is evicted before it
+    // counts as missing telemetry
+    private volatile long heartbeatTimeoutMs = 2L * statsIntervalMs + 2000;
+    private static final long HEARTBEAT_CHECK_MS = 1000;
+
+    // After an unexpected disconnect: retry in 0.5 s, doubling up to 16 s,
+    // then leave the host to discovery. A session that is still answering
+    // stats a heartbeat timeout after connecting resets the count
+    private static final long RECONNECT_BASE_MS = 500;
+    private static final int RECONNECT_MAX_ATTEMPTS = 6;
+    private final Map<String, Integer> reconnectAttempts = new ConcurrentHashMap<>();
+
+    // Per-reader buffer in THREADS and VIRTUAL modes
+    private static final int READ_BUFFER = 4 * 1024;
+
+    private final ClientRegistry clients;
 
     private volatile boolean running = false;
+    private Thread scanThread;
 
     // Per-client connection state keyed by IP address
     private final Map<String, ClientConnection> connections = new ConcurrentHashMap<>();
 
-    private final ScheduledExecutorService scheduler =
-            Executors.newScheduledThreadPool(2);
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(2);
+
+    // Owns every client's stats schedule; created in start()
+    private StatsPoller.Mode pollMode = StatsPoller.Mode.BATCHED;
+    private int pollSlots = 10;
+    private StatsPoller poller;
+    private ExecutorService virtualPolls;
+
+    private IoMode ioMode = IoMode.THREADS;
+    private int selectorThreads = 1;
+    private VlcSelector[] selectors;
+    private int nextSelector = 0;
+
+    // Logging every RC line costs far more than parsing it
+    private volatile boolean echoLines = true;
+
+    // Time from sending "stats" to the end of its reply, across all clients
+    private final LatencyHistogram pollRtt = new LatencyHistogram();
+    // RC lines with a known key but no value, across all clients
+    private final LongAdder parseErrors = new LongAdder();
+    // Discovery traffic: TCP probes sent, and beacons heard
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder beacons = new LongAdder();
+    // Sessions closed for missing the heartbeat deadline, and reconnect attempts
+    private final LongAdder heartbeatTimeouts = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    // Endpoints with a connect in flight, so a sweep and a beacon don't both connect
+    private final Set<String> connecting = ConcurrentHashMap.newKeySet();
 
     public VlcMonitor(String subnetPrefix, int startHost, int endHost, VideoStreamer streamer) {
-        this.subnetPrefix = subnetPrefix;
-        this.startHost = startHost;
-        this.endHost = endHost;
-        this.streamer = streamer;
+        this(subnetPrefix, startHost, endHost, streamer.getClients());
+    }
+
+    public VlcMonitor(String subnetPrefix, int startHost, int endHost, ClientRegistry clients) {
+        this(subnetRange(subnetPrefix, startHost, endHost),
+                subnetPrefix + startHost + "-" + endHost, clients);
+    }
+
+    /**
+     * Watches exactly these RC endpoints instead of a subnet range.
+     */
+    public VlcMonitor(List<InetSocketAddress> endpoints, VideoStreamer streamer) {
+        this(endpoints, streamer.getClients());
+    }
+
+    public VlcMonitor(List<InetSocketAddress> endpoints, ClientRegistry clients) {
+        this(endpoints, endpoints.size() + " endpoints", clients);
+    }
+
+    private VlcMonitor(List<InetSocketAddress> endpoints, String scanDescription, ClientRegistry clients) {
+        this.endpoints = List.copyOf(endpoints);
+        this.scanDescription = scanDescription;
+        this.clients = clients;
+
+        this.scanHosts = new HashSet<>();
+        this.endpointIndex = new HashMap<>();
+        for (int i = 0; i < this.endpoints.size(); i++) {
+            InetSocketAddress endpoint = this.endpoints.get(i);
+            if (endpoint.getAddress() != null) scanHosts.add(endpoint.getAddress());
+            endpointIndex.put(endpoint, i);
+        }
+        this.probeSkip = new AtomicIntegerArray(this.endpoints.size());
+        this.probeFailures = new AtomicIntegerArray(this.endpoints.size());
+
+        // Cancelled client schedules leave the queue right away
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private static List<InetSocketAddress> subnetRange(String prefix, int startHost, int endHost) {
+        List<InetSocketAddress> range = new ArrayList<>();
+        for (int host = startHost; host <= endHost; host++) {
+            range.add(new InetSocketAddress(prefix + host, DEFAULT_PORT));
+        }
+        return range;
+    }
+
+    /**
+     * Every host address in an IPv4 CIDR block such as "10.0.30.0/23", at
+     * the given RC port. The network and broadcast addresses are left out
+     * for blocks larger than /31. At most a /16.
+     */
+    public static List<InetSocketAddress> cidrRange(String cidr, int port) {
+        int slash = cidr.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("Expected address/prefix, got: " + cidr);
+
+        int prefix = Integer.parseInt(cidr.substring(slash + 1).trim());
+        if (prefix < 16 || prefix > 32) throw new IllegalArgumentException("Prefix must be /16 to /32: " + cidr);
+
+        InetAddress base;
+        try {
+            base = InetAddress.getByName(cidr.substring(0, slash).trim());
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Bad address in " + cidr, e);
+        }
+        if (!(base instanceof Inet4Address)) throw new IllegalArgumentException("IPv4 only: " + cidr);
+
+        byte[] b = base.getAddress();
+        long mask = (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+        long network = ((b[0] & 0xFFL) << 24 | (b[1] & 0xFFL) << 16 | (b[2] & 0xFFL) << 8 | (b[3] & 0xFFL)) & mask;
+        long size = 1L << (32 - prefix);
+
+        long first = size > 2 ? network + 1 : network;
+        long last = size > 2 ? network + size - 2 : network + size - 1;
+
+        List<InetSocketAddress> range = new ArrayList<>((int) (last - first + 1));
+        for (long a = first; a <= last; a++) {
+            byte[] addr = { (byte) (a >>> 24), (byte) (a >>> 16), (byte) (a >>> 8), (byte) a };
+            try {
+                range.add(new InetSocketAddress(InetAddress.getByAddress(addr), port));
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return range;
+    }
+
+    // Client id for an endpoint: the IP, plus the port if it isn't the default
+    static String keyOf(InetSocketAddress endpoint) {
+        String ip = endpoint.getHostString();
+        return endpoint.getPort() == DEFAULT_PORT ? ip : ip + ":" + endpoint.getPort();
+    }
+
+    /**
+     * Round trip of every answered "stats" poll since start.
+     */
+    public LatencyHistogram getPollRtt() {
+        return pollRtt;
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.gauge("vlc_clients_connected", "VLC clients with an open RC session", connections::size);
+        metrics.histogram("vlc_poll_rtt_seconds", "Time from sending stats to the end of the reply", pollRtt);
+        metrics.counter("vlc_parse_errors_total", "RC lines with a known key but no value", parseErrors::sum);
+        metrics.counter("vlc_discovery_probes_total", "TCP connects attempted by discovery and reconnects", probes::sum);
+        metrics.counter("vlc_beacons_total", "Discovery beacons received from the scan range", beacons::sum);
+        metrics.counter("vlc_heartbeat_timeouts_total", "RC sessions closed for sending nothing within the heartbeat timeout",
+                heartbeatTimeouts::sum);
+        metrics.counter("vlc_reconnects_total", "Reconnect attempts after a client dropped", reconnects::sum);
+    }
+
+    /**
+     * Chooses how RC sessions are serviced; call before start(). In NIO mode
+     * sessions are spread round-robin across selectorThreads selectors.
+     */
+    public void setIoMode(IoMode mode, int selectorThreads) {
+        this.ioMode = mode;
+        this.selectorThreads = Math.max(1, selectorThreads);
+    }
+
+    /**
+     * Chooses how stats polls are scheduled; call before start(). BATCHED
+     * spreads all clients over `slots` ticks per interval.
+     */
+    public void setPollMode(StatsPoller.Mode mode, int slots) {
+        this.pollMode = mode;
+        this.pollSlots = slots;
+    }
+
+    /**
+     * Turns the "[VLC ip] line" echo of everything VLC prints on or off.
+     */
+    public void setEchoLines(boolean echoLines) {
+        this.echoLines = echoLines;
+    }
+
+    /**
+     * Chooses how new VLC instances are found; call before start(). In
+     * BEACON mode the monitor listens on `group` (VlcBeacon.DEFAULT_GROUP
+     * if null) and only sweeps every sweepIntervalMs.
+     */
+    public void setDiscovery(Discovery mode, InetSocketAddress group, long sweepIntervalMs) {
+        this.discovery = mode;
+        if (group != null) this.beaconGroup = group;
+        this.scanIntervalMs = Math.max(1000, sweepIntervalMs);
+    }
+
+    /**
+     * How long a session may send nothing before it is closed and its client
+     * evicted. Keep it above the stats interval (5 s) and, so dead peers
+     * don't count as missing telemetry, below TelemetryAggregator.STALE_MS.
+     */
+    public void setHeartbeatTimeoutMs(long timeoutMs) {
+        this.heartbeatTimeoutMs = Math.max(1000, timeoutMs);
     }
 
     public void start() {
         running = true;
 
-        Thread scanThread = new Thread(this::scanLoop, "VlcScan");
+        if (ioMode == IoMode.NIO) {
+            selectors = new VlcSelector[selectorThreads];
+            for (int i = 0; i < selectors.length; i++) {
+                try {
+                    selectors[i] = new VlcSelector("VlcSelector-" + i);
+                } catch (IOException e) {
+                    LOG.warn("Cannot open selector, falling back to threads: " + e.getMessage());
+                    ioMode = IoMode.THREADS;
+                    selectors = null;
+                    break;
+                }
+            }
+        }
+
+        // Blocking writes in VIRTUAL mode each get their own virtual thread
+        if (ioMode == IoMode.VIRTUAL) virtualPolls = Executors.newVirtualThreadPerTaskExecutor();
+        poller = new StatsPoller(scheduler, statsIntervalMs, pollMode, pollSlots, virtualPolls);
+        poller.start();
+        scheduler.scheduleWithFixedDelay(this::checkHeartbeats,
+                HEARTBEAT_CHECK_MS, HEARTBEAT_CHECK_MS, TimeUnit.MILLISECONDS);
+
+        if (discovery == Discovery.BEACON) {
+            beaconListener = new VlcBeacon.Listener(beaconGroup, this::onBeacon);
+            try {
+                beaconListener.start();
+            } catch (IOException e) {
+                LOG.warn("Cannot listen for beacons, sweeping only: " + e.getMessage());
+                beaconListener = null;
+            }
+        }
+
+        scanThread = new Thread(this::scanLoop, "VlcScan");
         scanThread.setDaemon(true);
         scanThread.start();
 
-        System.out.println("[VLC] Monitor scanning " +
-                subnetPrefix + startHost + "-" + endHost);
+        LOG.info("Monitor scanning " + scanDescription + " every " + scanIntervalMs / 1000 + " s");
     }
 
     public void stop() {
         running = false;
+        if (beaconListener != null) beaconListener.close();
+        if (scanThread != null) scanThread.interrupt();
 
-        for (ClientConnection conn : connections.values()) {
+        // Forget the connections before closing them, so their readers
+        // don't each report a removal on the way down
+        List<ClientConnection> open = new ArrayList<>(connections.values());
+        connections.clear();
+        for (ClientConnection conn : open) {
             conn.close();
         }
-        connections.clear();
 
+        if (poller != null) poller.stop();
         scheduler.shutdownNow();
+        if (virtualPolls != null) virtualPolls.shutdownNow();
+
+        if (selectors != null) {
+            for (VlcSelector sel : selectors) sel.close();
+        }
     }
 
     // ----------------------------------------------------------------------
     // Discovery
     // ----------------------------------------------------------------------
     private void scanLoop() {
+        if (beaconListener != null) {
+            try {
+                Thread.sleep(BEACON_FIRST_SWEEP_MS);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
         while (running) {
-            for (int host = startHost; host <= endHost; host++) {
-                String ip = subnetPrefix + host;
-                checkHost(ip);
+            if (ioMode == IoMode.VIRTUAL) {
+                // One virtual thread per probe; close() waits for the sweep
+                try (ExecutorService sweep = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int i = 0; i < endpoints.size(); i++) {
+                        if (!running) break;
+                        int index = i;
+                        if (due(index)) sweep.submit(() -> probe(index));
+                    }
+                }
+            } else {
+                for (int i = 0; i < endpoints.size(); i++) {
+                    if (!running) break;
+                    if (due(i)) probe(i);
+                }
             }
 
             try {
@@ -84,66 +401,290 @@ public class VlcMonitor {
         }
     }
 
-    private void checkHost(String ip) {
+    // Whether this sweep should probe the endpoint, counting down its skip
+    private boolean due(int i) {
+        return probeSkip.getAndUpdate(i, skip -> Math.max(0, skip - 1)) == 0;
+    }
+
+    private void probe(int i) {
+        InetSocketAddress endpoint = endpoints.get(i);
+        if (checkHost(endpoint)) {
+            probeFailures.set(i, 0);
+        } else {
+            // Skip 0, 1, 3, then 7 sweeps between probes
+            int failures = probeFailures.updateAndGet(i, f -> Math.min(f + 1, 4));
+            probeSkip.set(i, Math.min(PROBE_MAX_SKIP, (1 << (failures - 1)) - 1));
+        }
+    }
+
+    // A beacon from the scan range: connect now, and stop backing off the host
+    private void onBeacon(InetSocketAddress endpoint) {
+        if (!running || !scanHosts.contains(endpoint.getAddress())) return;
+        beacons.increment();
+
+        Integer i = endpointIndex.get(endpoint);
+        if (i != null) {
+            probeSkip.set(i, 0);
+            probeFailures.set(i, 0);
+        }
+
+        String ip = keyOf(endpoint);
+        ClientConnection existing = connections.get(ip);
+        if (existing != null && existing.isAlive()) return;
+        if (connecting.contains(ip)) return;
+
+        // Off the listener thread, so a slow connect doesn't hold up other beacons
+        Thread.ofVirtual().name("VlcBeaconConnect").start(() -> checkHost(endpoint));
+    }
+
+    /**
+     * Connects to the endpoint unless it is already connected. Returns
+     * whether there is (or is about to be) a live connection.
+     */
+    private boolean checkHost(InetSocketAddress endpoint) {
+        String ip = keyOf(endpoint);
         ClientConnection existing = connections.get(ip);
         if (existing != null) {
-            if (!existing.isAlive()) {
-                removeConnection(ip);
-            }
-            return;
+            if (existing.isAlive()) return true;
+            // Still open but not alive means it missed its heartbeat
+            removeConnection(existing, existing.isOpen());
         }
 
+        // Someone else is already connecting to it
+        if (!connecting.add(ip)) return true;
+
         // Try to connect to VLC RC
         try {
-            Socket socket = new Socket();
-            socket.connect(new InetSocketAddress(ip, port), 150);
-
-            System.out.println("[VLC] Connected: " + ip);
+            // A connect that finished between the lookup above and add()
+            // has already registered itself
+            existing = connections.get(ip);
+            if (existing != null && existing.isAlive()) return true;
 
+            probes.increment();
+            ClientConnection conn;
             Client client = new Client(ip);
-            streamer.addClient(client);
 
-            ClientConnection conn = new ClientConnection(ip, socket, client);
+            if (ioMode == IoMode.NIO) {
+                SocketChannel channel = SocketChannel.open();
+                try {
+                    // Blocking connect with a timeout, then hand off to a selector
+                    channel.socket().connect(endpoint, 150);
+                    channel.socket().setKeepAlive(true);
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+                conn = new NioConnection(ip, endpoint, channel, client);
+            } else {
+                Socket socket = new Socket();
+                socket.connect(endpoint, 150);
+                socket.setKeepAlive(true);
+                // The reader gives up on its own after the heartbeat timeout
+                socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, heartbeatTimeoutMs));
+                conn = new BlockingConnection(ip, endpoint, socket, client);
+            }
+
+            // stop() may have run while we were connecting
+            if (!running) {
+                conn.close();
+                return false;
+            }
+
+            LOG.info("Connected: " + ip);
+
+            clients.add(client);
             connections.put(ip, conn);
 
             conn.start();
+            // Its "new input" line says which stream, and so which channel, it is on
+            conn.sendCommand("status");
+            return true;
 
         } catch (IOException ignored) {
             // No VLC at this IP:port
+            return false;
+        } finally {
+            connecting.remove(ip);
         }
     }
 
-    private void removeConnection(String ip) {
-        ClientConnection conn = connections.remove(ip);
-        if (conn != null) {
-            System.out.println("[VLC] Removing client " + ip);
-            conn.close();
-            streamer.removeClient(conn.client);
+    // ----------------------------------------------------------------------
+    // Tuning
+    // ----------------------------------------------------------------------
+    @Override
+    public void tune(Client client, Rendition rendition) {
+        ClientConnection conn = connections.get(client.getIpAddress());
+        if (conn == null) return;
+
+        // "add" queues the new group and starts playing it immediately
+        conn.sendCommand("add " + rendition.getUrl());
+    }
+
+    /**
+     * Closes the connection and evicts its client, unless it was already
+     * replaced. While the monitor runs, the host is then reconnected with
+     * backoff. Safe to call from any thread, any number of times.
+     */
+    private void removeConnection(ClientConnection conn, boolean timedOut) {
+        if (!connections.remove(conn.ip, conn)) return;
+
+        if (timedOut) {
+            heartbeatTimeouts.increment();
+            LOG.info("Removing client " + conn.ip + ": nothing received for "
+                    + heartbeatTimeoutMs / 1000 + " s");
+        } else {
+            LOG.info("Removing client " + conn.ip);
+        }
+        poller.remove(conn.ip);
+        conn.close();
+        clients.remove(conn.client);
+
+        if (running) scheduleReconnect(conn.endpoint);
+    }
+
+    // ----------------------------------------------------------------------
+    // Health
+    // ----------------------------------------------------------------------
+
+    // Evicts every session past its heartbeat deadline; NIO sessions have no
+    // read timeout of their own
+    private void checkHeartbeats() {
+        long now = System.currentTimeMillis();
+        for (ClientConnection conn : connections.values()) {
+            if (conn.expired(now)) removeConnection(conn, true);
+        }
+    }
+
+    private void scheduleReconnect(InetSocketAddress endpoint) {
+        String ip = keyOf(endpoint);
+        int attempt = reconnectAttempts.merge(ip, 1, Integer::sum);
+        if (attempt > RECONNECT_MAX_ATTEMPTS) {
+            reconnectAttempts.remove(ip);
+            LOG.info("Giving up on " + ip + " until discovery finds it again");
+            return;
+        }
+
+        // ±20%, so clients dropped together (a switch restarting) don't all come back at once
+        long delay = RECONNECT_BASE_MS << (attempt - 1);
+        delay += ThreadLocalRandom.current().nextLong(-delay / 5, delay / 5 + 1);
+        try {
+            scheduler.schedule(() -> reconnect(endpoint), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Stopped
         }
     }
 
+    private void reconnect(InetSocketAddress endpoint) {
+        if (!running) return;
+        reconnects.increment();
+        if (!checkHost(endpoint)) scheduleReconnect(endpoint);
+    }
+
     // ----------------------------------------------------------------------
     // Per-client connection
     // ----------------------------------------------------------------------
-    private class ClientConnection {
+    private abstract class ClientConnection implements StatsPoller.Target, VlcLineFramer.LineSink {
         final String ip;
-        final Socket socket;
+        final InetSocketAddress endpoint;
         final Client client;
+        final VlcTelemetryParser parser;
+        // "[VLC ip] line" echo, rate limited per client
+        final Logger lineLog;
+
+        // When the last "stats" went out, 0 once its reply has been timed
+        private volatile long pollSentNanos = 0;
+        // Set on the first stats reply once the session has lasted a heartbeat
+        // timeout; written only by the reading thread
+        private final long connectedMs = System.currentTimeMillis();
+        private boolean settled = false;
+
+        ClientConnection(String ip, InetSocketAddress endpoint, Client client) {
+            this.ip = ip;
+            this.endpoint = endpoint;
+            this.client = client;
+            this.parser = new VlcTelemetryParser(client, parseErrors);
+            this.lineLog = Logger.get("VLC " + ip);
+        }
+
+        abstract void start();
+
+        // Whether the socket is still open; says nothing about the peer
+        abstract boolean isOpen();
+
+        boolean isAlive() {
+            return isOpen() && !expired(System.currentTimeMillis());
+        }
+
+        // Clients here use Clock.SYSTEM, so their update times are wall clock
+        boolean expired(long nowMs) {
+            return nowMs - client.getLastUpdateMs() > heartbeatTimeoutMs;
+        }
+
+        abstract void close();
+
+        abstract void sendCommand(String command);
+
+        void startPolling() {
+            poller.add(ip, this);
+        }
+
+        @Override
+        public void poll() {
+            pollSentNanos = System.nanoTime();
+            sendStatsCommand();
+        }
+
+        private void sendStatsCommand() {
+            sendCommand("stats");
+        }
+
+        @Override
+        public void onLine(byte[] line, int len) {
+            // Heartbeat on any line received
+            client.markUpdated();
+            if (echoLines && lineLog.isEnabled(AsyncLog.Level.INFO)) {
+                lineLog.info(new String(line, 0, len, StandardCharsets.ISO_8859_1));
+            }
+
+            if (parser.parseLine(line, 0, len)) {
+                long sent = pollSentNanos;
+                if (sent != 0) {
+                    pollRtt.record(System.nanoTime() - sent);
+                    pollSentNanos = 0;
+                }
+                // A session that has stayed up, so the next drop starts the
+                // backoff afresh. One that answers and then dies keeps backing off
+                if (!settled && System.currentTimeMillis() - connectedMs >= heartbeatTimeoutMs) {
+                    settled = true;
+                    reconnectAttempts.remove(ip);
+                }
+            }
+        }
+    }
 
-        private BufferedReader reader;
+    // Thread-per-client connection using blocking socket I/O; the reader is a
+    // platform thread in THREADS mode and a virtual thread in VIRTUAL mode
+    private class BlockingConnection extends ClientConnection {
+        final Socket socket;
+
+        private InputStream in;
         private BufferedWriter writer;
 
+        // A lock rather than synchronized so a blocked write doesn't pin a
+        // virtual thread to its carrier
+        private final ReentrantLock writeLock = new ReentrantLock();
+
         private volatile boolean closed = false;
 
-        ClientConnection(String ip, Socket socket, Client client) {
-            this.ip = ip;
+        BlockingConnection(String ip, InetSocketAddress endpoint, Socket socket, Client client) {
+            super(ip, endpoint, client);
             this.socket = socket;
-            this.client = client;
         }
 
+        @Override
         void start() {
             try {
-                reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                in = socket.getInputStream();
                 writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
             } catch (IOException e) {
                 close();
@@ -151,23 +692,27 @@ public class VlcMonitor {
             }
 
             // Reader thread: handles both passive VLC logs and "stats" output
-            Thread t = new Thread(this::readLoop, "VlcRC-" + ip);
-            t.setDaemon(true);
-            t.start();
+            if (ioMode == IoMode.VIRTUAL) {
+                Thread.ofVirtual().name("VlcRC-" + ip).start(this::readLoop);
+            } else {
+                Thread t = new Thread(this::readLoop, "VlcRC-" + ip);
+                t.setDaemon(true);
+                t.start();
+            }
 
-            // Stats polling: request "stats" every statsIntervalMs
-            scheduler.scheduleAtFixedRate(this::sendStatsCommand,
-                    0, statsIntervalMs, TimeUnit.MILLISECONDS);
+            startPolling();
         }
 
-        boolean isAlive() {
+        @Override
+        boolean isOpen() {
             return !closed && socket.isConnected() && !socket.isClosed();
         }
 
+        @Override
         void close() {
             closed = true;
             try {
-                if (reader != null) reader.close();
+                if (in != null) in.close();
             } catch (IOException ignored) {
             }
             try {
@@ -180,117 +725,100 @@ public class VlcMonitor {
             }
         }
 
-        private void sendStatsCommand() {
+        @Override
+        void sendCommand(String command) {
             if (closed) return;
+            writeLock.lock();
             try {
-                synchronized (this) {
-                    writer.write("stats\n");
-                    writer.flush();
-                }
+                writer.write(command);
+                writer.write('\n');
+                writer.flush();
             } catch (IOException e) {
                 // Treat this as a disconnect
-                removeConnection(ip);
+                removeConnection(this, false);
+            } finally {
+                writeLock.unlock();
             }
         }
 
         private void readLoop() {
+            // Lines are framed straight out of the read buffer, no String per line
+            byte[] buf = new byte[READ_BUFFER];
+            VlcLineFramer framer = new VlcLineFramer();
+            boolean timedOut = false;
             try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-
-                    // Heartbeat on any line received
-                    client.markUpdated();
-                    System.out.println("[VLC " + ip + "] " + line);
-
-                    String trimmed = line.trim();
-                    if (trimmed.isEmpty()) continue;
-
-                    // First go through passive telemetry
-                    if (parsePassive(trimmed)) continue;
-
-                    // Then stats-based telemetry
-                    parseStats(trimmed);
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    framer.feed(buf, 0, n, this);
                 }
+            } catch (SocketTimeoutException e) {
+                // Nothing at all for the heartbeat timeout: a half-open or hung peer
+                timedOut = true;
             } catch (IOException ignored) {
             }
 
-            removeConnection(ip);
+            removeConnection(this, timedOut);
         }
+    }
 
-        // Parses lines like "buffering 54%", "cache: 42%", "drop: 3", "playing"
-        private boolean parsePassive(String line) {
-
-            if (line.contains("buffering")) {
-                client.setIsBuffering(true);
-                return true;
-            }
+    // Non-blocking connection serviced by one of the shared selectors
+    private class NioConnection extends ClientConnection implements VlcSelector.Handler {
+        final SocketChannel channel;
+        private VlcSelector.Session session;
 
-            if (line.startsWith("cache:")) {
-                int percent = parsePercent(line);
-                client.setCachePercent(percent);
-                return true;
-            }
+        NioConnection(String ip, InetSocketAddress endpoint, SocketChannel channel, Client client) {
+            super(ip, endpoint, client);
+            this.channel = channel;
+        }
 
-            if (line.startsWith("drop:")) {
-                int drops = parseInt(line);
-                client.setDroppedFrames(drops);
-                return true;
+        @Override
+        void start() {
+            VlcSelector selector;
+            synchronized (VlcMonitor.this) {
+                selector = selectors[nextSelector];
+                nextSelector = (nextSelector + 1) % selectors.length;
             }
 
-            if (line.contains("playing")) {
-                client.setIsBuffering(false);
-                return true;
+            try {
+                session = selector.register(channel, this);
+            } catch (IOException e) {
+                removeConnection(this, false);
+                return;
             }
 
-            return false;
+            startPolling();
         }
 
-        // Parses relevant lines from "stats" output
-        private void parseStats(String line) {
-
-            // Typical stats output has sections like:
-            // input bitrate       : 1300 kb/s
-            // lost packets        : 0
-            // lost pictures       : 4
+        @Override
+        boolean isOpen() {
+            return session != null && session.isOpen();
+        }
 
-            if (line.startsWith("input bitrate")) {
-                int bitrate = parseInt(line);
-                // If input bitrate is zero for stats, treat that as buffering
-                if (bitrate <= 0) {
-                    client.setIsBuffering(true);
-                    client.setCachePercent(0);
-                } else {
-                    client.setIsBuffering(false);
-                    client.setCachePercent(100);
+        @Override
+        void close() {
+            if (session != null) session.close();
+            else {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
                 }
-                return;
-            }
-
-            if (line.startsWith("lost pictures")) {
-                int lost = parseInt(line);
-                client.setDroppedFrames(lost);
-                return;
             }
         }
 
-        private int parsePercent(String s) {
+        @Override
+        void sendCommand(String command) {
+            if (session == null) return;
             try {
-                String num = s.replaceAll("\\D+", "");
-                if (num.isEmpty()) return 0;
-                return Integer.parseInt(num);
-            } catch (Exception e) {
-                return 0;
+                session.write(command);
+            } catch (IOException e) {
+                // Treat this as a disconnect
+                removeConnection(this, false);
             }
         }
 
-        private int parseInt(String s) {
-            try {
-                String num = s.replaceAll("\\D+", "");
-                if (num.isEmpty()) return 0;
-                return Integer.parseInt(num);
-            } catch (Exception e) {
-                return 0;
-            }
+        @Override
+        public void onClosed() {
+            removeConnection(this, false);
         }
     }
 }
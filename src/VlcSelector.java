@@ -0,0 +1,214 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * VlcSelector runs many non-blocking RC sessions on one thread. Reads go
+ * through a single buffer shared by every session on this selector, and
+ * each session frames lines in its own small reusable byte array, so the
+ * cost per idle client is a few hundred bytes instead of a thread.
+ */
+public class VlcSelector {
+
+    private static final Logger LOG = Logger.get("VLC");
+
+    // onLine gets one line without its terminator, only valid during the call
+    public interface Handler extends VlcLineFramer.LineSink {
+        void onClosed();
+    }
+
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final String name;
+    private final Selector selector;
+    private final Thread thread;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER);
+    private final Queue<Session> pending = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+
+    public VlcSelector(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.thread = new Thread(this::selectLoop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Hands a connected channel to this selector. Safe to call from any
+     * thread; the channel is switched to non-blocking mode here.
+     */
+    public Session register(SocketChannel channel, Handler handler) throws IOException {
+        channel.configureBlocking(false);
+        Session s = new Session(channel, handler);
+        pending.add(s);
+        selector.wakeup();
+        return s;
+    }
+
+    public int sessionCount() {
+        return selector.keys().size();
+    }
+
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // ----------------------------------------------------------------------
+    // Selector thread
+    // ----------------------------------------------------------------------
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOG.error(name + " select failed: " + e.getMessage());
+                break;
+            }
+
+            Session s;
+            while ((s = pending.poll()) != null) {
+                try {
+                    s.key = s.channel.register(selector, SelectionKey.OP_READ, s);
+                    // A command may have been queued before the key existed
+                    if (s.hasPendingWrite()) s.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } catch (ClosedChannelException e) {
+                    s.closed();
+                }
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+
+                Session session = (Session) key.attachment();
+                if (!key.isValid()) {
+                    session.closed();
+                    continue;
+                }
+
+                try {
+                    if (key.isReadable()) session.read();
+                    if (key.isValid() && key.isWritable()) session.flushWrites();
+                } catch (IOException e) {
+                    session.close();
+                }
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((Session) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Session
+    // ----------------------------------------------------------------------
+    public final class Session {
+        private final SocketChannel channel;
+        private final Handler handler;
+        private volatile SelectionKey key;
+
+        private final VlcLineFramer framer = new VlcLineFramer();
+
+        // Outbound bytes not yet accepted by the socket, guarded by itself
+        private final ByteBuffer out = ByteBuffer.allocate(1024);
+
+        private volatile boolean closed = false;
+
+        private Session(SocketChannel channel, Handler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        public boolean isOpen() {
+            return !closed && channel.isOpen();
+        }
+
+        /**
+         * Sends one command line. Written straight to the socket when it has
+         * room (the usual case for a few bytes), otherwise the rest is queued
+         * and flushed by the selector thread.
+         */
+        public void write(String command) throws IOException {
+            if (closed) throw new ClosedChannelException();
+
+            synchronized (out) {
+                if (out.remaining() < command.length() + 1) {
+                    throw new IOException("RC write backlog full");
+                }
+                for (int i = 0; i < command.length(); i++) {
+                    out.put((byte) command.charAt(i));
+                }
+                out.put((byte) '\n');
+
+                out.flip();
+                channel.write(out);
+                out.compact();
+
+                if (out.position() > 0 && key != null) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    selector.wakeup();
+                }
+            }
+        }
+
+        private boolean hasPendingWrite() {
+            synchronized (out) {
+                return out.position() > 0;
+            }
+        }
+
+        private void flushWrites() throws IOException {
+            synchronized (out) {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                if (out.position() == 0) key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void read() throws IOException {
+            ByteBuffer buf = readBuffer;
+            buf.clear();
+
+            int n = channel.read(buf);
+            if (n < 0) {
+                close();
+                return;
+            }
+
+            framer.feed(buf.array(), 0, n, handler);
+        }
+
+        public void close() {
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            closed();
+        }
+
+        private synchronized void closed() {
+            if (closed) return;
+            closed = true;
+            handler.onClosed();
+        }
+    }
+}
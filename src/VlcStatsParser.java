@@ -0,0 +1,105 @@
+package src;
+
+/**
+ * Turns lines from one VLC RC session into Client telemetry: passive log
+ * lines like "buffering 54%" and "cache: 42%", and the relevant rows of the
+ * "stats" command output.
+ *
+ * VlcMonitor uses the allocation-free VlcTelemetryParser; this String
+ * version is kept as the reference it is benchmarked against.
+ */
+public class VlcStatsParser {
+
+    private final Client client;
+
+    public VlcStatsParser(Client client) {
+        this.client = client;
+    }
+
+    public void parseLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) return;
+
+        // First go through passive telemetry
+        if (parsePassive(trimmed)) return;
+
+        // Then stats-based telemetry
+        parseStats(trimmed);
+    }
+
+    // Parses lines like "buffering 54%", "cache: 42%", "drop: 3", "playing"
+    private boolean parsePassive(String line) {
+
+        if (line.contains("buffering")) {
+            client.setIsBuffering(true);
+            return true;
+        }
+
+        if (line.startsWith("cache:")) {
+            int percent = parsePercent(line);
+            client.setCachePercent(percent);
+            return true;
+        }
+
+        if (line.startsWith("drop:")) {
+            int drops = parseInt(line);
+            client.setDroppedFrames(drops);
+            return true;
+        }
+
+        if (line.contains("playing")) {
+            client.setIsBuffering(false);
+            return true;
+        }
+
+        return false;
+    }
+
+    // Parses relevant lines from "stats" output
+    private void parseStats(String line) {
+
+        // Typical stats output has sections like:
+        // input bitrate       : 1300 kb/s
+        // lost packets        : 0
+        // lost pictures       : 4
+
+        if (line.startsWith("input bitrate")) {
+            int bitrate = parseInt(line);
+            // If input bitrate is zero for stats, treat that as buffering
+            if (bitrate <= 0) {
+                client.setIsBuffering(true);
+                client.setCachePercent(0);
+            } else {
+                client.setIsBuffering(false);
+                client.setCachePercent(100);
+            }
+            return;
+        }
+
+        if (line.startsWith("lost pictures")) {
+            int lost = parseInt(line);
+            client.setDroppedFrames(lost);
+            return;
+        }
+    }
+
+    private int parsePercent(String s) {
+        try {
+            String num = s.replaceAll("\\D+", "");
+            if (num.isEmpty()) return 0;
+            return Integer.parseInt(num);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private int parseInt(String s) {
+        try {
+            String num = s.replaceAll("\\D+", "");
+            if (num.isEmpty()) return 0;
+            return Integer.parseInt(num);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte-level parser for VLC RC output. Works directly on the bytes of one
+ * line as framed from the socket buffer: no String per line, no regex, and
+ * numbers are parsed in place. Dispatch is a switch on the first significant
+ * byte, so most lines are rejected after one comparison.
+ *
+ * Semantics follow VlcStatsParser (kept as the String-based reference):
+ * "buffering" anywhere marks the client buffering, then "cache:", "drop:",
+ * "playing", and the "input bitrate" / "lost pictures" rows of "stats".
+ * The URL in a "( new input: ... )" line, as VLC prints it for "status" and
+ * on every change of input, becomes the client's input.
+ * Leading "|" and "+" framing that VLC puts in front of stats rows is
+ * skipped along with whitespace, and a value is the first run of digits
+ * after the key rather than every digit on the line glued together.
+ *
+ * The input bitrate and lost packets are also kept as numbers for the
+ * client's BandwidthEstimator, and the closing line of each stats reply
+ * records one sample into the client's history.
+ *
+ * A line that matches a key but carries no number is counted as a parse
+ * error and applied as 0, as before.
+ */
+public class VlcTelemetryParser {
+
+    private static final byte[] BUFFERING = ascii("buffering");
+    private static final byte[] PLAYING = ascii("playing");
+    private static final byte[] CACHE = ascii("cache:");
+    private static final byte[] DROP = ascii("drop:");
+    private static final byte[] INPUT_BITRATE = ascii("input bitrate");
+    private static final byte[] LOST_PICTURES = ascii("lost pictures");
+    private static final byte[] LOST_PACKETS = ascii("lost packets");
+    private static final byte[] END_OF_STATS = ascii("end of stat");
+    private static final byte[] NEW_INPUT = ascii("new input:");
+
+    private final Client client;
+    // Shared by every client's parser, see VlcMonitor
+    private final LongAdder errors;
+
+    public VlcTelemetryParser(Client client) {
+        this(client, new LongAdder());
+    }
+
+    public VlcTelemetryParser(Client client, LongAdder errors) {
+        this.client = client;
+        this.errors = errors;
+    }
+
+    /**
+     * Applies one line to the client. Returns true if it closed a stats
+     * reply, so the caller can time the round trip.
+     */
+    public boolean parseLine(byte[] b, int off, int len) {
+        int start = off;
+        int end = off + len;
+
+        // Trim, including the "| " / "+-" framing of stats output
+        while (start < end && (b[start] <= ' ' || b[start] == '|' || b[start] == '+')) start++;
+        while (end > start && b[end - 1] <= ' ') end--;
+        if (start == end) return false;
+
+        // Passive telemetry first, same precedence as the String parser
+        if (contains(b, start, end, BUFFERING)) {
+            client.setIsBuffering(true);
+            return false;
+        }
+
+        // "status change: ( new input: udp://@230.0.0.0:4446 )", or the bare
+        // "( new input: ... )" of a status reply; rare, so a String is fine
+        if ((b[start] == 's' || b[start] == '(') && contains(b, start, end, NEW_INPUT)) {
+            client.setInput(inputUrl(b, start, end));
+            return false;
+        }
+
+        switch (b[start]) {
+            case 'c':
+                if (startsWith(b, start, end, CACHE)) {
+                    client.setCachePercent(number(b, start + CACHE.length, end));
+                    return false;
+                }
+                break;
+            case 'd':
+                if (startsWith(b, start, end, DROP)) {
+                    client.setDroppedFrames(number(b, start + DROP.length, end));
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (contains(b, start, end, PLAYING)) {
+            client.setIsBuffering(false);
+            return false;
+        }
+
+        // Then stats-based telemetry
+        switch (b[start]) {
+            case 'i':
+                if (startsWith(b, start, end, INPUT_BITRATE)) {
+                    int bitrate = number(b, start + INPUT_BITRATE.length, end);
+                    client.setInputBitrateKbps(bitrate);
+                    // If input bitrate is zero for stats, treat that as buffering
+                    if (bitrate <= 0) {
+                        client.setIsBuffering(true);
+                        client.setCachePercent(0);
+                    } else {
+                        client.setIsBuffering(false);
+                        client.setCachePercent(100);
+                    }
+                }
+                break;
+            case 'l':
+                if (startsWith(b, start, end, LOST_PICTURES)) {
+                    client.setDroppedFrames(number(b, start + LOST_PICTURES.length, end));
+                } else if (startsWith(b, start, end, LOST_PACKETS)) {
+                    client.setLostPackets(number(b, start + LOST_PACKETS.length, end));
+                }
+                break;
+            case '-':
+                // "+----[ end of statistical info ]": the reply is complete
+                if (contains(b, start, end, END_OF_STATS)) {
+                    client.recordSample();
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    // ----------------------------------------------------------------------
+    // Byte helpers
+    // ----------------------------------------------------------------------
+    private static boolean startsWith(byte[] b, int start, int end, byte[] key) {
+        if (end - start < key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (b[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(byte[] b, int start, int end, byte[] key) {
+        int last = end - key.length;
+        byte first = key[0];
+        for (int i = start; i <= last; i++) {
+            if (b[i] != first) continue;
+            int j = 1;
+            while (j < key.length && b[i + j] == key[j]) j++;
+            if (j == key.length) return true;
+        }
+        return false;
+    }
+
+    // The URL after "new input:", without the closing " )"
+    private static String inputUrl(byte[] b, int start, int end) {
+        int i = start;
+        while (!startsWith(b, i, end, NEW_INPUT)) i++;
+        i += NEW_INPUT.length;
+        while (i < end && b[i] == ' ') i++;
+        int j = end;
+        while (j > i && (b[j - 1] == ')' || b[j - 1] == ' ')) j--;
+        return new String(b, i, j - i, StandardCharsets.ISO_8859_1);
+    }
+
+    // Value after a recognised key; a missing number counts as a parse error
+    private int number(byte[] b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (b[i] >= '0' && b[i] <= '9') return firstInt(b, i, end);
+        }
+        errors.increment();
+        return 0;
+    }
+
+    // First run of digits in [start, end), 0 if none; saturates instead of overflowing
+    static int firstInt(byte[] b, int start, int end) {
+        int i = start;
+        while (i < end && (b[i] < '0' || b[i] > '9')) i++;
+
+        long value = 0;
+        while (i < end && b[i] >= '0' && b[i] <= '9') {
+            value = value * 10 + (b[i] - '0');
+            if (value > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+            i++;
+        }
+        return (int) value;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] out = new byte[s.length()];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) s.charAt(i);
+        return out;
+    }
+}
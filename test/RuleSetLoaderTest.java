@@ -0,0 +1,106 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RuleSetLoaderTest {
+
+    private static final int ITERATION_MS = 2000;
+
+    private static Properties rules(String text) throws IOException {
+        Properties p = new Properties();
+        p.load(new StringReader(text));
+        return p;
+    }
+
+    // The message of the IllegalArgumentException compiling `text` fails with
+    private static String error(String text) throws IOException {
+        Properties p = rules(text);
+        return assertThrows(IllegalArgumentException.class, () -> RuleSetLoader.compile(p, ITERATION_MS))
+                .getMessage();
+    }
+
+    @Test
+    void loadsTheBuiltInRules() {
+        RulePlan plan = RuleSetLoader.defaults(ITERATION_MS);
+        assertEquals(11, plan.size());
+        assertEquals("bufferingHigh", plan.name(0));
+        assertEquals(5000, plan.getCooldownMs());
+    }
+
+    @Test
+    void loadsAFileInListOrder(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("rules.properties");
+        Files.writeString(file, String.join("\n",
+                "cooldownMs = 8000",
+                "rules = second, first",
+                "rule.first.when = percentBuffering > 40 && avgCache < 20",
+                "rule.first.then = lower",
+                "rule.second.forMs = 6000",
+                "rule.second.then = log [EXPERT] Bitrate {bitrate}"));
+
+        RulePlan plan = RuleSetLoader.load(file, ITERATION_MS);
+        assertEquals(2, plan.size());
+        assertEquals("second", plan.name(0));
+        assertEquals("first", plan.name(1));
+        assertEquals(8000, plan.getCooldownMs());
+    }
+
+    @Test
+    void rejectsARuleSetWithoutARulesList() throws IOException {
+        assertEquals("No \"rules\" list in rule set", error("rule.a.then = lower"));
+        assertEquals("No \"rules\" list in rule set", error("rules = \nrule.a.then = lower"));
+    }
+
+    @Test
+    void namesTheRuleWithAnUnknownMetric() throws IOException {
+        assertEquals("Rule a: Unknown metric: bufering",
+                error("rules = a\nrule.a.when = bufering > 40\nrule.a.then = lower"));
+    }
+
+    @Test
+    void namesTheRuleWithAnUnknownOperator() throws IOException {
+        assertEquals("Rule a: unknown operator \"=>\"",
+                error("rules = a\nrule.a.when = avgCache => 40\nrule.a.then = lower"));
+    }
+
+    @Test
+    void rejectsAMalformedCondition() throws IOException {
+        assertEquals("Rule a: expected \"metric op number\", got \"avgCache<40\"",
+                error("rules = a\nrule.a.when = avgCache<40\nrule.a.then = lower"));
+    }
+
+    @Test
+    void rejectsARuleWithoutAnAction() throws IOException {
+        assertEquals("Rule a: missing \"then\"", error("rules = a\nrule.a.when = avgCache < 40"));
+    }
+
+    @Test
+    void rejectsAnUnknownAction() throws IOException {
+        assertEquals("Rule a: unknown action \"drop\"", error("rules = a\nrule.a.then = drop everything"));
+    }
+
+    @Test
+    void rejectsAMisspelledKey() throws IOException {
+        assertEquals("Unknown key \"rule.a.cooldwn\"",
+                error("rules = a\nrule.a.cooldwn = true\nrule.a.then = lower"));
+        assertEquals("Unknown key \"cooldown\"", error("rules = a\ncooldown = 10\nrule.a.then = lower"));
+    }
+
+    @Test
+    void ignoresRulesLeftOutOfTheList() throws IOException {
+        RulePlan plan = RuleSetLoader.compile(
+                rules("rules = a\nrule.a.then = lower\nrule.off.then = raise"), ITERATION_MS);
+        assertEquals(1, plan.size());
+        assertEquals("a", plan.name(0));
+    }
+}
@@ -0,0 +1,146 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TelemetryAggregatorTest {
+
+    private long now = 1_000_000;
+    private final Clock clock = () -> now;
+    private final ClientRegistry clients = new ClientRegistry();
+    private final TelemetryAggregator aggregator = new TelemetryAggregator(clients);
+
+    private Client client(String ip, int cache, boolean buffering) {
+        Client c = new Client(ip, clock);
+        c.setCachePercent(cache);
+        c.setIsBuffering(buffering);
+        clients.add(c);
+        return c;
+    }
+
+    private TelemetryAggregator.Sample sample() {
+        return aggregator.sample(now);
+    }
+
+    @Test
+    void countsClientsAsTheyAreAdded() {
+        client("10.0.0.1", 80, false);
+        client("10.0.0.2", 40, true);
+
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(2, s.total);
+        assertEquals(2, s.active);
+        assertEquals(1, s.buffering);
+        assertEquals(120, s.sumCache);
+        assertEquals(60, s.avgCache());
+        assertEquals(50, s.percentBuffering());
+    }
+
+    @Test
+    void recountsAClientAfterItPublishes() {
+        Client a = client("10.0.0.1", 80, false);
+        client("10.0.0.2", 40, true);
+        sample();
+
+        a.setCachePercent(20);
+        a.setIsBuffering(true);
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(2, s.buffering);
+        assertEquals(60, s.sumCache);
+
+        // Setting what it already has publishes nothing and changes nothing
+        a.setCachePercent(20);
+        assertEquals(60, sample().sumCache);
+    }
+
+    @Test
+    void removingAClientTakesOutWhatItAdded() {
+        Client a = client("10.0.0.1", 80, true);
+        Client b = client("10.0.0.2", 40, false);
+        sample();
+
+        a.setCachePercent(10);
+        clients.remove(a);
+        // Changes after it left are not counted
+        a.setCachePercent(90);
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(1, s.total);
+        assertEquals(1, s.active);
+        assertEquals(0, s.buffering);
+        assertEquals(40, s.sumCache);
+
+        clients.remove(b);
+        s = sample();
+        assertEquals(0, s.total);
+        assertEquals(0, s.active);
+        assertEquals(0, s.sumCache);
+    }
+
+    @Test
+    void aClientThatRejoinsIsCountedOnce() {
+        Client a = client("10.0.0.1", 80, false);
+        sample();
+        clients.remove(a);
+        a.setCachePercent(50);
+        clients.add(a);
+
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(1, s.total);
+        assertEquals(1, s.active);
+        assertEquals(50, s.sumCache);
+    }
+
+    @Test
+    void leavesNewClientsOutUntilTheirGracePeriodEnds() {
+        aggregator.setGracePeriodMs(5000);
+        client("10.0.0.1", 80, false);
+
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(1, s.total);
+        assertEquals(0, s.active);
+        assertEquals(0, s.sumCache);
+
+        now += 5000;
+        s = sample();
+        assertEquals(1, s.active);
+        assertEquals(80, s.sumCache);
+    }
+
+    @Test
+    void countsSilentClientsAsMissingUntilHeardAgain() {
+        Client a = client("10.0.0.1", 80, false);
+        client("10.0.0.2", 40, false).markUpdated();
+        sample();
+
+        now += TelemetryAggregator.STALE_MS;
+        assertEquals(2, sample().missing);
+
+        a.markUpdated();
+        TelemetryAggregator.Sample s = sample();
+        assertEquals(1, s.missing);
+        assertEquals(50, s.percentMissing());
+    }
+
+    @Test
+    void wakesUpWhenAnActiveClientGetsWorse() {
+        AtomicInteger wakeups = new AtomicInteger();
+        aggregator.setWakeup(wakeups::incrementAndGet);
+        Client a = client("10.0.0.1", 80, false);
+
+        // Still in no total: nothing to react to
+        a.setIsBuffering(true);
+        a.setIsBuffering(false);
+        assertEquals(0, wakeups.get());
+
+        sample();
+        a.setCachePercent(75);
+        assertEquals(0, wakeups.get());
+        a.setCachePercent(75 - TelemetryAggregator.SHARP_CACHE_DROP);
+        assertEquals(1, wakeups.get());
+        a.setIsBuffering(true);
+        assertEquals(2, wakeups.get());
+    }
+}
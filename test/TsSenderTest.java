@@ -0,0 +1,95 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TsSenderTest {
+
+    private static final long WRAP = 1L << 33;
+
+    private TsTestStreams.Receiver receiver;
+    private TsSender sender;
+    private int cc = 0;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        receiver = new TsTestStreams.Receiver();
+        sender = receiver.sender();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    // One frame in a datagram of its own, once it has gone out
+    private void sendFrame(long pts) throws Exception {
+        sender.send(TsTestStreams.videoPes(pts % WRAP, false, cc++, 0), 0);
+        sender.flush();
+        receiver.receive(1);
+    }
+
+    // The pacer records the position just after the write the receiver saw
+    private void assertPosition(long expectedMs) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sender.getMediaPositionMs() != expectedMs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expectedMs, sender.getMediaPositionMs());
+    }
+
+    @Test
+    void noPositionBeforeAnythingIsSent() {
+        assertEquals(-1, sender.getMediaPositionMs());
+    }
+
+    @Test
+    void positionAdvancesWithPts() throws Exception {
+        sender.beginEpoch(10_000);
+        sendFrame(900_000);
+        assertPosition(10_000);
+        sendFrame(900_000 + 2 * TsPacket.PTS_HZ);
+        assertPosition(12_000);
+    }
+
+    @Test
+    void unwrapsThe33BitCounter() throws Exception {
+        sender.beginEpoch(0);
+        sendFrame(WRAP - TsPacket.PTS_HZ);
+        // Half a second past the wrap: 1.5 s on, not a rewind of ~26 hours
+        sendFrame(WRAP + TsPacket.PTS_HZ / 2);
+        assertPosition(1500);
+        sendFrame(WRAP + 3 * TsPacket.PTS_HZ);
+        assertPosition(4000);
+    }
+
+    @Test
+    void earlierFramesMoveTheStartNotThePosition() throws Exception {
+        sender.beginEpoch(0);
+        sendFrame(90_000);
+        sendFrame(180_000);
+        assertPosition(1000);
+        // A B-frame from before the first one seen: that was the true start
+        sendFrame(45_000);
+        assertPosition(1500);
+    }
+
+    @Test
+    void newEpochRestartsFromItsMediaStart() throws Exception {
+        sender.beginEpoch(0);
+        sendFrame(5_000_000);
+        sendFrame(5_000_000 + 10 * TsPacket.PTS_HZ);
+        assertPosition(10_000);
+
+        // A relaunch with -ss 60 starts its PTS over near zero
+        sender.beginEpoch(60_000);
+        sendFrame(0);
+        assertPosition(60_000);
+        sendFrame(TsPacket.PTS_HZ);
+        assertPosition(61_000);
+    }
+}
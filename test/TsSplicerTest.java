@@ -0,0 +1,164 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TsSplicerTest {
+
+    private TsTestStreams.Receiver receiver;
+    private TsSender sender;
+    private FfmpegEncoder low;
+    private FfmpegEncoder high;
+    private FfmpegEncoder[] rungs;
+    private TsSplicer splicer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        receiver = new TsTestStreams.Receiver();
+        sender = receiver.sender();
+        // Never started: the test feeds their packets itself
+        low = encoder("low");
+        high = encoder("high");
+        rungs = new FfmpegEncoder[] { low, high };
+        splicer = new TsSplicer(rungs, 0, sender, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    private static FfmpegEncoder encoder(String name) {
+        return new FfmpegEncoder(name, List.of(), (enc, buf, off) -> {}, new TsBufferPool(1, TsPacket.SIZE));
+    }
+
+    private List<ByteBuffer> sent(int n) throws Exception {
+        sender.flush();
+        return receiver.receive(n);
+    }
+
+    // One frame from `from` that is expected on air, once it has gone out
+    private void onAir(FfmpegEncoder from, long pts, boolean keyframe) throws Exception {
+        splicer.onPacket(from, TsTestStreams.videoPes(pts, keyframe, 0, 0), 0);
+        sent(1);
+    }
+
+    // The pacer records the position just after the write the receiver saw
+    private void assertPosition(long expectedMs) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sender.getMediaPositionMs() != expectedMs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expectedMs, sender.getMediaPositionMs());
+    }
+
+    @Test
+    void cutsOnlyAtTheTargetsKeyframe() throws Exception {
+        splicer.onPacket(low, TsTestStreams.packet(0x100, 0, 1), 0);
+        splicer.switchTo(1);
+
+        // Until the high rung starts a GOP, the low rung stays on air
+        splicer.onPacket(high, TsTestStreams.videoPes(9000, false, 0, 2), 0);
+        splicer.onPacket(low, TsTestStreams.packet(0x100, 1, 1), 0);
+        assertEquals(0, splicer.getActive());
+
+        splicer.onPacket(high, TsTestStreams.videoPes(12000, true, 1, 2), 0);
+        assertEquals(1, splicer.getActive());
+        splicer.onPacket(low, TsTestStreams.packet(0x100, 2, 1), 0);
+        splicer.onPacket(high, TsTestStreams.packet(0x100, 2, 2), 0);
+
+        List<ByteBuffer> out = sent(4);
+        assertEquals(1, TsTestStreams.marker(out.get(0)));
+        assertEquals(1, TsTestStreams.marker(out.get(1)));
+        assertEquals(2, TsTestStreams.marker(out.get(2)));
+        assertEquals(2, TsTestStreams.marker(out.get(3)));
+    }
+
+    @Test
+    void rewritesContinuityAcrossTheCut() throws Exception {
+        splicer.onPacket(low, TsTestStreams.packet(0x100, 5, 1), 0);
+        splicer.onPacket(low, TsTestStreams.packet(0x100, 6, 1), 0);
+        splicer.switchTo(1);
+        // The other encoder's counter is somewhere else entirely
+        splicer.onPacket(high, TsTestStreams.videoPes(0, true, 11, 2), 0);
+        splicer.onPacket(high, TsTestStreams.packet(0x100, 12, 2), 0);
+        splicer.onPacket(high, TsTestStreams.packet(0x100, 13, 2), 0);
+
+        List<ByteBuffer> out = sent(5);
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals(i, TsPacket.continuityCounter(out.get(i), 0));
+        }
+    }
+
+    @Test
+    void dropsPacketsFromAReplacedEncoder() throws Exception {
+        FfmpegEncoder relaunched = encoder("high relaunched");
+        splicer.replaceRung(1, relaunched, 0);
+
+        // The old process's last keyframe must neither cut nor throw, with
+        // no switch pending and with one pending
+        splicer.onPacket(high, TsTestStreams.videoPes(0, true, 0, 2), 0);
+        splicer.switchTo(1);
+        splicer.onPacket(high, TsTestStreams.videoPes(0, true, 0, 2), 0);
+        assertEquals(0, splicer.getActive());
+
+        splicer.onPacket(relaunched, TsTestStreams.videoPes(0, true, 0, 3), 0);
+        assertEquals(1, splicer.getActive());
+
+        List<ByteBuffer> out = sent(1);
+        assertEquals(3, TsTestStreams.marker(out.get(0)));
+    }
+
+    @Test
+    void startsANewEpochOnACutToARelaunchedRung() throws Exception {
+        sender.beginEpoch(0);
+        onAir(low, 900_000, true);
+        onAir(low, 900_000 + 10 * TsPacket.PTS_HZ, false);
+        assertPosition(10_000);
+
+        // Relaunched with -ss 60: its timestamps start over near zero
+        FfmpegEncoder relaunched = encoder("high relaunched");
+        splicer.replaceRung(1, relaunched, 60_000);
+        splicer.switchTo(1);
+        splicer.onPacket(relaunched, TsTestStreams.videoPes(0, false, 0, 0), 0);
+        onAir(relaunched, 2 * TsPacket.PTS_HZ, true);
+        assertPosition(62_000);
+        onAir(relaunched, 3 * TsPacket.PTS_HZ, false);
+        assertPosition(63_000);
+
+        // And back onto the original timebase
+        splicer.switchTo(0);
+        onAir(low, 900_000 + 64 * TsPacket.PTS_HZ, true);
+        assertPosition(64_000);
+    }
+
+    @Test
+    void staysOnTheSameEpochBetweenOriginalRungs() throws Exception {
+        sender.beginEpoch(0);
+        onAir(low, 900_000, true);
+        splicer.onPacket(high, TsTestStreams.videoPes(900_000, true, 0, 0), 0);
+        splicer.switchTo(1);
+        onAir(high, 900_000 + 5 * TsPacket.PTS_HZ, true);
+        assertPosition(5_000);
+    }
+
+    @Test
+    void replacingTheRungOnAirWaitsForTheNewKeyframe() throws Exception {
+        sender.beginEpoch(0);
+        onAir(low, 900_000, true);
+
+        FfmpegEncoder relaunched = encoder("low relaunched");
+        splicer.replaceRung(0, relaunched, 30_000);
+        splicer.onPacket(relaunched, TsTestStreams.videoPes(0, false, 0, 4), 0);
+        onAir(relaunched, TsPacket.PTS_HZ / 2, true);
+        assertEquals(0, splicer.getActive());
+        assertPosition(30_500);
+    }
+}
@@ -0,0 +1,106 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds synthetic TS packets for the tests, and receives what a TsSender
+ * pointed at loopback actually sends. Packets carry no PCR, so the sender
+ * sends them as soon as they are queued.
+ */
+final class TsTestStreams {
+
+    static final int VIDEO_PID = 0x100;
+
+    private TsTestStreams() {}
+
+    // A payload-only packet; `marker` fills the payload so tests can tell sources apart
+    static ByteBuffer packet(int pid, int cc, int marker) {
+        ByteBuffer b = ByteBuffer.allocate(TsPacket.SIZE);
+        b.put(0, TsPacket.SYNC);
+        b.put(1, (byte) (pid >> 8 & 0x1F));
+        b.put(2, (byte) pid);
+        b.put(3, (byte) (0x10 | cc & 0x0F));
+        for (int i = 4; i < TsPacket.SIZE; i++) b.put(i, (byte) marker);
+        return b;
+    }
+
+    // The start of a video PES with a PTS, flagged random-access if `keyframe`
+    static ByteBuffer videoPes(long pts, boolean keyframe, int cc, int marker) {
+        ByteBuffer b = packet(VIDEO_PID, cc, marker);
+        b.put(1, (byte) (0x40 | VIDEO_PID >> 8 & 0x1F));
+        b.put(3, (byte) (0x30 | cc & 0x0F));
+        // Adaptation field: one flags byte
+        b.put(4, (byte) 1);
+        b.put(5, (byte) (keyframe ? 0x40 : 0x00));
+        int p = 6;
+        byte[] pes = {
+                0, 0, 1, (byte) 0xE0, 0, 0, (byte) 0x80, (byte) 0x80, 5,
+                (byte) (0x21 | (pts >> 29 & 0x0E)),
+                (byte) (pts >> 22),
+                (byte) ((pts >> 14 & 0xFE) | 1),
+                (byte) (pts >> 7),
+                (byte) ((pts << 1 & 0xFE) | 1),
+        };
+        for (int i = 0; i < pes.length; i++) b.put(p + i, pes[i]);
+        return b;
+    }
+
+    static int marker(ByteBuffer packet) {
+        return packet.get(TsPacket.SIZE - 1) & 0xFF;
+    }
+
+    /** A loopback socket a TsSender can be pointed at. */
+    static final class Receiver implements Closeable {
+        final DatagramSocket socket;
+
+        Receiver() throws IOException {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            socket.setSoTimeout(2000);
+        }
+
+        TsSender sender() throws IOException {
+            return new TsSender(InetAddress.getLoopbackAddress().getHostAddress(), socket.getLocalPort());
+        }
+
+        // Every packet of the next datagram, or an empty list after the timeout
+        List<ByteBuffer> receive() throws IOException {
+            byte[] data = new byte[TsPacket.DATAGRAM_SIZE];
+            DatagramPacket d = new DatagramPacket(data, data.length);
+            try {
+                socket.receive(d);
+            } catch (SocketTimeoutException e) {
+                return List.of();
+            }
+            List<ByteBuffer> packets = new ArrayList<>();
+            for (int off = 0; off + TsPacket.SIZE <= d.getLength(); off += TsPacket.SIZE) {
+                packets.add(ByteBuffer.wrap(Arrays.copyOfRange(data, off, off + TsPacket.SIZE)));
+            }
+            return packets;
+        }
+
+        // Exactly n packets, failing if they don't arrive
+        List<ByteBuffer> receive(int n) throws IOException {
+            List<ByteBuffer> packets = new ArrayList<>();
+            while (packets.size() < n) {
+                List<ByteBuffer> next = receive();
+                if (next.isEmpty()) throw new AssertionError("Got " + packets.size() + " of " + n + " packets");
+                packets.addAll(next);
+            }
+            return packets;
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
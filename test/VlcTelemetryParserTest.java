@@ -0,0 +1,81 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class VlcTelemetryParserTest {
+
+    private final Client stringClient = new Client("10.0.30.1");
+    private final Client byteClient = new Client("10.0.30.2");
+    private final VlcStatsParser stringParser = new VlcStatsParser(stringClient);
+    private final VlcTelemetryParser byteParser = new VlcTelemetryParser(byteClient);
+
+    private boolean parse(String line) {
+        byte[] b = line.getBytes(StandardCharsets.ISO_8859_1);
+        return byteParser.parseLine(b, 0, b.length);
+    }
+
+    // Both parsers fed the same line, then the client state they share compared
+    private void assertSameAs(String line) {
+        stringParser.parseLine(line);
+        parse(line);
+        assertEquals(stringClient.isBuffering(), byteClient.isBuffering(), line);
+        assertEquals(stringClient.getCachePercent(), byteClient.getCachePercent(), line);
+        assertEquals(stringClient.getDroppedFrames(), byteClient.getDroppedFrames(), line);
+    }
+
+    @Test
+    void agreesWithTheStringParserOnUnframedLines() {
+        String[] lines = {
+                "buffering 54%",
+                "cache: 42%",
+                "drop: 5",
+                "status change: ( play state: 3 ): playing",
+                "input bitrate    :     1317 kb/s",
+                "lost pictures    :        3",
+                "  cache: 7%  ",
+                "input bitrate    :        0 kb/s",
+                "",
+                "demux bitrate    :     1289 kb/s",
+                "playing",
+        };
+        for (String line : lines) assertSameAs(line);
+    }
+
+    @Test
+    void readsFramedStatsRowsTheStringParserMisses() {
+        byteClient.setIsBuffering(true);
+        parse("| input bitrate    :     1317 kb/s");
+        parse("| lost pictures    :        3");
+        assertFalse(byteClient.isBuffering());
+        assertEquals(100, byteClient.getCachePercent());
+        assertEquals(3, byteClient.getDroppedFrames());
+        assertEquals(1317, byteClient.getTelemetry().getInputBitrateKbps());
+
+        stringParser.parseLine("| lost pictures    :        3");
+        assertEquals(0, stringClient.getDroppedFrames());
+    }
+
+    @Test
+    void takesTheFirstNumberNotEveryDigit() {
+        parse("lost pictures : 3 (of 452)");
+        assertEquals(3, byteClient.getDroppedFrames());
+    }
+
+    @Test
+    void endOfStatsClosesTheReply() {
+        assertFalse(parse("+----[ begin of statistical info ]"));
+        assertTrue(parse("+----[ end of statistical info ]"));
+    }
+
+    @Test
+    void newInputBecomesTheClientsInput() {
+        parse("status change: ( new input: udp://@230.0.1.0:4446 )");
+        assertEquals("udp://@230.0.1.0:4446", byteClient.getInput());
+    }
+}